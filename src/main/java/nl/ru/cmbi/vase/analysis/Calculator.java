@@ -15,74 +15,268 @@
  */
 package nl.ru.cmbi.vase.analysis;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.log4j.Logger;
 
 import nl.ru.cmbi.vase.data.stockholm.Alignment;
+import nl.ru.cmbi.vase.tools.util.Config;
 
 public class Calculator {
 
 	/** logger. */
 	private static final Logger LOG = Logger.getLogger(Calculator.class);
 
+	static final ForkJoinPool pool = new ForkJoinPool();
+
+	// the smallest number of residues to give a fork/join task
+	private static final int minResiduesPerTask = 1 << 16;
+
+	// histogram index for every byte in an alignment, -1 for gaps and ambiguous residues
+	private static final int[] residueIndices = new int[256];
+	static {
+		for (int b = 0; b < 256; b++) {
+
+			char oneLetterCode = Character.toUpperCase( (char) b );
+			if( oneLetterCode < 'A' || oneLetterCode > 'Z' ||
+				oneLetterCode == 'X' || oneLetterCode== 'Z' || 
+				oneLetterCode == 'B' || oneLetterCode== 'J' ||
+				oneLetterCode == 'U' || oneLetterCode== 'O' ) {
+				
+				residueIndices[b] = -1;
+			}
+			else residueIndices[b] = oneLetterCode - 'A';
+		}
+	}
+
 	public static MutationDataObject generateCorrelatedMutationAndEntropyVariabilityData( Alignment alignment ) {
+
+		return generateCorrelatedMutationAndEntropyVariabilityData( alignment, Config.getParallelScoringThreshold() );
+	}
+
+	/**
+	 * @param parallelThreshold above this number of residues, the columns are scored on multiple threads.
+	 * Negative means never.
+	 */
+	public static MutationDataObject generateCorrelatedMutationAndEntropyVariabilityData( Alignment alignment,
+			long parallelThreshold ) {
 		
 		MutationDataObject cmdo = new MutationDataObject();
 
-		List<Double> entropyScores = new ArrayList<Double>();
-		List<Integer> variabilityScores = new ArrayList<Integer>();
-		for (int i = 0; i < alignment.countColumns(); i++) {
+		int nseqs = alignment.countAlignedSeqs(),
+			ncolumns = alignment.countColumns();
 
-			Map<Character, Double> residueOccurrences = new HashMap<Character, Double>();
-			
-			int n=0;
-			for (String label : alignment.getLabels()) {
-				
-				char oneLetterCode = Character.toUpperCase( alignment.getAlignedSeq(label).charAt(i) );
-				if( !Character.isLetter(oneLetterCode) ||
-					oneLetterCode == 'X' || oneLetterCode== 'Z' || 
-					oneLetterCode == 'B' || oneLetterCode== 'J' ||
-					oneLetterCode == 'U' || oneLetterCode== 'O' ) {
-					
-					continue;
+		ColumnScores scores = new ColumnScores(alignment);
+
+		if (parallelThreshold >= 0 && (long) nseqs * ncolumns > parallelThreshold) {
+
+			LOG.debug("scoring " + ncolumns + " columns of " + nseqs + " sequences in parallel");
+
+			pool.invoke(new ScoringTask(scores, 0, ncolumns));
+		}
+		else scoreColumns(scores, 0, ncolumns);
+		
+		cmdo.setEntropyScores(scores.entropyScores);
+		cmdo.setWeightedEntropyScores(scores.weightedEntropyScores);
+		cmdo.setVariabilityScores(scores.variabilityScores);
+		return cmdo;
+	}
+
+	/**
+	 * Position-based sequence weights (Henikoff & Henikoff, 1994): in every column, each residue type
+	 * gets an equal share and the sequences having that type divide it among them.
+	 * This takes one pass through the alignment, instead of comparing all pairs of sequences.
+	 * 
+	 * Sequences that differ from the others get high weights, sets of near-identical sequences
+	 * share their weight. Gaps and ambiguous residues are not counted.
+	 * 
+	 * @return one weight per sequence, adding up to 1.0
+	 */
+	public static double[] calculateSequenceWeights( Alignment alignment ) {
+
+		int nseqs = alignment.countAlignedSeqs(),
+			ncolumns = alignment.countColumns();
+
+		byte[] columns = alignment.getColumnMajorResidues();
+
+		double[] weights = new double[nseqs];
+		int[] histogram = new int[26];
+
+		for (int i = 0; i < ncolumns; i++) {
+
+			int ntypes = 0;
+			for (int row = i * nseqs; row < (i + 1) * nseqs; row++) {
+
+				int index = residueIndices[columns[row] & 0xff];
+				if (index >= 0 && histogram[index]++ == 0) {
+
+					ntypes++;
 				}
-				
-				if(!residueOccurrences.containsKey(oneLetterCode)) {
-					
-					residueOccurrences.put(oneLetterCode, 1.0);
+			}
+
+			for (int row = 0; row < nseqs; row++) {
+
+				int index = residueIndices[columns[i * nseqs + row] & 0xff];
+				if (index >= 0) {
+
+					weights[row] += 1.0 / (ntypes * histogram[index]);
 				}
-				else {
-					residueOccurrences.put(oneLetterCode, residueOccurrences.get(oneLetterCode) + 1.0);
+			}
+
+			for (int index = 0; index < histogram.length; index++) {
+				histogram[index] = 0;
+			}
+		}
+
+		double total = 0.0;
+		for (double weight : weights) {
+			total += weight;
+		}
+		for (int row = 0; row < nseqs; row++) {
+
+			weights[row] = total > 0.0 ? weights[row] / total : 1.0 / nseqs;
+		}
+
+		return weights;
+	}
+
+	/**
+	 * The input and output of column scoring.
+	 */
+	private static class ColumnScores {
+
+		// the residues, column after column, as made by {@link Alignment#getColumnMajorResidues()}
+		private final byte[] columns;
+		private final int nseqs;
+
+		private final double[] nLogN, sequenceWeights;
+
+		private final double[] entropyScores, weightedEntropyScores;
+		private final int[] variabilityScores;
+
+		public ColumnScores(Alignment alignment) {
+
+			nseqs = alignment.countAlignedSeqs();
+			columns = alignment.getColumnMajorResidues();
+			nLogN = getNLogNTable(nseqs);
+			sequenceWeights = alignment.getSequenceWeights();
+
+			entropyScores = new double[alignment.countColumns()];
+			weightedEntropyScores = new double[alignment.countColumns()];
+			variabilityScores = new int[alignment.countColumns()];
+		}
+	}
+
+	/**
+	 * Splits the column range in halves until the parts are small enough to score.
+	 * Columns are independent, so every task writes its own part of the result arrays.
+	 */
+	private static class ScoringTask extends RecursiveAction {
+
+		private final ColumnScores scores;
+		private final int start, end;
+
+		public ScoringTask(ColumnScores scores, int start, int end) {
+
+			this.scores = scores;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (end - start < 2 || (long) (end - start) * scores.nseqs <= minResiduesPerTask) {
+
+				scoreColumns(scores, start, end);
+			}
+			else {
+				int middle = (start + end) / 2;
+
+				invokeAll(new ScoringTask(scores, start, middle),
+						  new ScoringTask(scores, middle, end));
+			}
+		}
+	}
+
+	/**
+	 * @return n * ln(n) for every n from 0 up to and including max
+	 */
+	private static double[] getNLogNTable(int max) {
+
+		double[] nLogN = new double[max + 1];
+		for (int n = 1; n <= max; n++) {
+
+			nLogN[n] = n * Math.log(n);
+		}
+		return nLogN;
+	}
+
+	/**
+	 * Scores the columns from 'start' up to 'end'.
+	 * 
+	 * With c the count of a residue type and n the total count, the entropy
+	 * -sum( c/n * ln(c/n) ) equals ( n*ln(n) - sum( c*ln(c) ) ) / n,
+	 * so the logarithms can be taken from a table.
+	 * 
+	 * The weighted entropy is the same, but with the sum of the sequence weights instead of counts.
+	 */
+	private static void scoreColumns(ColumnScores scores, int start, int end) {
+
+		byte[] columns = scores.columns;
+		int nseqs = scores.nseqs;
+		double[] nLogN = scores.nLogN,
+				 sequenceWeights = scores.sequenceWeights;
+
+		int[] histogram = new int[26];
+		double[] weightHistogram = new double[26];
+
+		for (int i = start; i < end; i++) {
+
+			int n=0;
+			double totalWeight = 0.0;
+			for (int row = 0; row < nseqs; row++) {
+
+				int index = residueIndices[columns[i * nseqs + row] & 0xff];
+				if (index >= 0) {
+
+					histogram[index]++;
+					n++;
+
+					weightHistogram[index] += sequenceWeights[row];
+					totalWeight += sequenceWeights[row];
 				}
-				n++;
 			}
 
-			double entropyScore = 0.0;
+			double sumCLogC = 0.0, weightedEntropyScore = 0.0;
 			int variabilityScore = 0;
-			for (Character oneLetterCode : residueOccurrences.keySet()) {
+			for (int index = 0; index < histogram.length; index++) {
 
-				// min 0.0, max 1.0
-				double relativeOccurrence = residueOccurrences.get(oneLetterCode) / (1.0 * n );
-				
-				if(relativeOccurrence > 0.0) {
-					entropyScore -= relativeOccurrence * Math.log(relativeOccurrence);
-				}
-				
-				if (relativeOccurrence > 0.005) {
-					variabilityScore++;
+				int c = histogram[index];
+				if (c > 0) {
+
+					sumCLogC += nLogN[c];
+
+					// min 0.0, max 1.0
+					double relativeOccurrence = c / (1.0 * n );
+					if (relativeOccurrence > 0.005) {
+						variabilityScore++;
+					}
+
+					double relativeWeight = weightHistogram[index] / totalWeight;
+					if (relativeWeight > 0.0) {
+						weightedEntropyScore -= relativeWeight * Math.log(relativeWeight);
+					}
+
+					histogram[index] = 0;
+					weightHistogram[index] = 0.0;
 				}
 			}
-			entropyScores.add(entropyScore);
-			variabilityScores.add(variabilityScore);
-			
+
+			scores.entropyScores[i] = n > 0 ? (nLogN[n] - sumCLogC) / n : 0.0;
+			scores.weightedEntropyScores[i] = weightedEntropyScore;
+			scores.variabilityScores[i] = variabilityScore;
 		}
-		
-		cmdo.setEntropyScores(entropyScores);
-		cmdo.setVariabilityScores(variabilityScores);
-		return cmdo;
 	}
 }
@@ -0,0 +1,296 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.log4j.Logger;
+
+import nl.ru.cmbi.vase.data.stockholm.Alignment;
+
+/**
+ * Correlated mutation analysis: scores pairs of alignment columns by their
+ * mutual information, corrected by the average product (APC, Dunn et al. 2008).
+ * 
+ * Only the best scoring pairs are kept. To avoid storing a score for every pair,
+ * the mutual information is calculated twice: once to get the averages for the
+ * correction and once to select the best corrected scores.
+ */
+public class CorrelatedMutationCalculator {
+
+	/** logger. */
+	private static final Logger LOG = Logger.getLogger(CorrelatedMutationCalculator.class);
+
+	// the 20 amino acids, everything else (gaps, ambiguous residues) is one more state
+	private static final String aminoAcids = "ACDEFGHIKLMNPQRSTVWY";
+	private static final int nStates = aminoAcids.length() + 1;
+
+	private static final byte[] states = new byte[256];
+	static {
+		for (int b = 0; b < 256; b++) {
+
+			int index = aminoAcids.indexOf(Character.toUpperCase( (char) b ));
+			states[b] = (byte) (index >= 0 ? index : nStates - 1);
+		}
+	}
+
+	// columns are paired block by block, so that a block's residues stay in the cpu cache
+	private static final int blockSize = 32;
+
+	/**
+	 * @param k the maximum number of scores to return
+	 * @return the k highest scoring column pairs, best first.
+	 * Residue numbers in the scores are alignment positions, starting at 1.
+	 */
+	public static List<CmaScore> getTopScores(Alignment alignment, int k) {
+
+		int nseqs = alignment.countAlignedSeqs(),
+			ncolumns = alignment.countColumns();
+
+		if (k <= 0 || nseqs == 0 || ncolumns < 2) {
+
+			return new ArrayList<CmaScore>();
+		}
+
+		LOG.debug("correlated mutation analysis on " + ncolumns + " columns of " + nseqs + " sequences");
+
+		PairScorer scorer = new PairScorer(alignment, k);
+
+		Calculator.pool.invoke(new PairTask(scorer, false, 0, scorer.nblocks));
+
+		scorer.prepareCorrection();
+
+		Calculator.pool.invoke(new PairTask(scorer, true, 0, scorer.nblocks));
+
+		List<CmaScore> scores = new ArrayList<CmaScore>(scorer.topScores);
+		Collections.sort(scores, Collections.reverseOrder());
+		return scores;
+	}
+
+	/**
+	 * Holds the alignment in column order, as states, and collects the results of the tasks.
+	 */
+	private static class PairScorer {
+
+		private final int nseqs, ncolumns, nblocks, k;
+
+		// column after column
+		private final byte[] columnStates;
+
+		// n * ln(n) for every count that can occur
+		private final double[] nLogN;
+
+		// sum of c * ln(c) over the state counts of each column
+		private final double[] columnCLogC;
+
+		private final double[] sumsPerColumn;
+
+		private double[] averagePerColumn;
+
+		private double average;
+
+		private final PriorityQueue<CmaScore> topScores;
+
+		public PairScorer(Alignment alignment, int k) {
+
+			this.k = k;
+
+			nseqs = alignment.countAlignedSeqs();
+			ncolumns = alignment.countColumns();
+			nblocks = (ncolumns + blockSize - 1) / blockSize;
+
+			nLogN = new double[nseqs + 1];
+			for (int n = 1; n <= nseqs; n++) {
+
+				nLogN[n] = n * Math.log(n);
+			}
+
+			byte[] residues = alignment.getColumnMajorResidues();
+			columnStates = new byte[residues.length];
+			columnCLogC = new double[ncolumns];
+
+			int[] counts = new int[nStates];
+			for (int i = 0; i < ncolumns; i++) {
+
+				for (int s = i * nseqs; s < (i + 1) * nseqs; s++) {
+
+					columnStates[s] = states[residues[s] & 0xff];
+					counts[columnStates[s]]++;
+				}
+				for (int state = 0; state < nStates; state++) {
+
+					columnCLogC[i] += nLogN[counts[state]];
+					counts[state] = 0;
+				}
+			}
+
+			sumsPerColumn = new double[ncolumns];
+			topScores = new PriorityQueue<CmaScore>(k);
+		}
+
+		/**
+		 * @param pairCounts nStates * nStates zeros, left zero when done
+		 */
+		public double mutualInformation(int i, int j, int[] pairCounts) {
+
+			int offsetI = i * nseqs, offsetJ = j * nseqs;
+			for (int s = 0; s < nseqs; s++) {
+
+				pairCounts[columnStates[offsetI + s] * nStates + columnStates[offsetJ + s]]++;
+			}
+
+			double pairCLogC = 0.0;
+			for (int s = 0; s < nseqs; s++) {
+
+				int pair = columnStates[offsetI + s] * nStates + columnStates[offsetJ + s];
+				if (pairCounts[pair] > 0) {
+
+					pairCLogC += nLogN[pairCounts[pair]];
+					pairCounts[pair] = 0;
+				}
+			}
+
+			// sum over pairs of p(a,b) ln( p(a,b) / (p(a) p(b)) ), written in counts
+			return (pairCLogC - columnCLogC[i] - columnCLogC[j] + nLogN[nseqs]) / nseqs;
+		}
+
+		public synchronized void addSums(double[] sums) {
+
+			for (int i = 0; i < ncolumns; i++) {
+
+				sumsPerColumn[i] += sums[i];
+			}
+		}
+
+		public void prepareCorrection() {
+
+			averagePerColumn = new double[ncolumns];
+
+			double total = 0.0;
+			for (int i = 0; i < ncolumns; i++) {
+
+				averagePerColumn[i] = sumsPerColumn[i] / (ncolumns - 1);
+				total += sumsPerColumn[i];
+			}
+			average = total / ((double) ncolumns * (ncolumns - 1));
+		}
+
+		public double correct(int i, int j, double mutualInformation) {
+
+			if (average > 0.0)
+				return mutualInformation - averagePerColumn[i] * averagePerColumn[j] / average;
+			else
+				return mutualInformation;
+		}
+
+		/**
+		 * Only keeps a score if it's among the k best so far.
+		 */
+		public static void offer(PriorityQueue<CmaScore> heap, int k, int i, int j, double score) {
+
+			if (heap.size() < k || heap.peek().getScore() < score) {
+
+				CmaScore cma = new CmaScore();
+				cma.setResidue1(i + 1);
+				cma.setResidue2(j + 1);
+				cma.setScore(score);
+
+				heap.add(cma);
+				if (heap.size() > k) {
+					heap.poll();
+				}
+			}
+		}
+
+		public synchronized void addTopScores(PriorityQueue<CmaScore> heap) {
+
+			for (CmaScore cma : heap) {
+
+				offer(topScores, k, cma.getResidue1() - 1, cma.getResidue2() - 1, cma.getScore());
+			}
+		}
+	}
+
+	/**
+	 * Scores all pairs with a first column in the given range of blocks.
+	 * Splits the range until it's one block.
+	 */
+	private static class PairTask extends RecursiveAction {
+
+		private final PairScorer scorer;
+
+		private final boolean corrected;
+
+		private final int startBlock, endBlock;
+
+		public PairTask(PairScorer scorer, boolean corrected, int startBlock, int endBlock) {
+
+			this.scorer = scorer;
+			this.corrected = corrected;
+			this.startBlock = startBlock;
+			this.endBlock = endBlock;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (endBlock - startBlock > 1) {
+
+				int middle = (startBlock + endBlock) / 2;
+
+				invokeAll(new PairTask(scorer, corrected, startBlock, middle),
+						  new PairTask(scorer, corrected, middle, endBlock));
+				return;
+			}
+
+			int[] pairCounts = new int[nStates * nStates];
+			double[] sums = corrected ? null : new double[scorer.ncolumns];
+			PriorityQueue<CmaScore> heap = corrected ? new PriorityQueue<CmaScore>(scorer.k) : null;
+
+			int iStart = startBlock * blockSize,
+				iEnd = Math.min(iStart + blockSize, scorer.ncolumns);
+
+			for (int jStart = iStart; jStart < scorer.ncolumns; jStart += blockSize) {
+
+				int jEnd = Math.min(jStart + blockSize, scorer.ncolumns);
+
+				for (int i = iStart; i < iEnd; i++) {
+					for (int j = Math.max(i + 1, jStart); j < jEnd; j++) {
+
+						double mi = scorer.mutualInformation(i, j, pairCounts);
+						if (corrected) {
+
+							PairScorer.offer(heap, scorer.k, i, j, scorer.correct(i, j, mi));
+						}
+						else {
+							sums[i] += mi;
+							sums[j] += mi;
+						}
+					}
+				}
+			}
+
+			if (corrected)
+				scorer.addTopScores(heap);
+			else
+				scorer.addSums(sums);
+		}
+	}
+}
@@ -16,30 +16,37 @@
 package nl.ru.cmbi.vase.analysis;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
 
 public class MutationDataObject implements Serializable {
-	private List<Double> entropyScores;
-	private List<Integer> variabilityScores;
+	private double[] entropyScores;
+	private double[] weightedEntropyScores;
+	private int[] variabilityScores;
 
-	public List<Integer> getVariabilityScores() {
+	public int[] getVariabilityScores() {
 		return variabilityScores;
 	}
 
-	public List<Double> getEntropyScores() {
+	public double[] getEntropyScores() {
 		return entropyScores;
 	}
 
-	public void setEntropyScores(List<Double> entropyScores) {
+	public void setEntropyScores(double[] entropyScores) {
 		this.entropyScores = entropyScores;
 	}
 
-	public List<Integer> getVariabiltyScores() {
+	public double[] getWeightedEntropyScores() {
+		return weightedEntropyScores;
+	}
+
+	public void setWeightedEntropyScores(double[] weightedEntropyScores) {
+		this.weightedEntropyScores = weightedEntropyScores;
+	}
+
+	public int[] getVariabiltyScores() {
 		return variabilityScores;
 	}
 
-	public void setVariabilityScores(List<Integer> variabilityScores) {
+	public void setVariabilityScores(int[] variabilityScores) {
 		this.variabilityScores = variabilityScores;
 	}
 }
\ No newline at end of file
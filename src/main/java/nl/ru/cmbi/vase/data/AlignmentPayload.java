@@ -0,0 +1,127 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+import nl.ru.cmbi.vase.data.TableData.ColumnInfo;
+import nl.ru.cmbi.vase.data.stockholm.Alignment;
+
+/**
+ * Everything that the alignment page shows, except for the aligned sequences, which are
+ * fetched in {@link AlignmentTile}s. The table is stored column by column, and the plots
+ * refer to the table's columns, so nothing is sent twice.
+ *
+ * Residue numbers start at 1, they're the alignment's column numbers.
+ */
+@Data
+public class AlignmentPayload {
+
+	@Data
+	public static class Column {
+
+		private final String id, title;
+
+		// INTEGER, DOUBLE or STRING, null if the column has no values
+		private final String type;
+
+		private final boolean hidden, mouseOver;
+
+		// one per table row: a number, a string, or null for empty cells
+		private final List<Object> values = new ArrayList<Object>();
+	}
+
+	@Data
+	public static class Plot {
+
+		private final String title;
+
+		// the ids of the columns on the axes
+		private final String x, y;
+	}
+
+	private final String title, pdbID;
+
+	private final int rowCount, columnCount, maxLabelLength;
+
+	private final int tileRows = AlignmentTile.ROWS, tileColumns = AlignmentTile.COLUMNS;
+
+	// the pdb residue of each alignment column, in jmol notation, "" for gaps
+	private final List<String> pdbResidues = new ArrayList<String>();
+
+	// the alignment column of each table row
+	private final List<Integer> residueNumbers = new ArrayList<Integer>();
+
+	private final List<Column> columns = new ArrayList<Column>();
+
+	private final List<Plot> plots = new ArrayList<Plot>();
+
+	public static AlignmentPayload get(VASEDataObject data) {
+
+		Alignment alignment = data.getAlignment();
+		TableData table = data.getTable();
+
+		int maxLabelLength = 0;
+		for(String label : alignment.getLabels()) {
+
+			maxLabelLength = Math.max(maxLabelLength, label.length());
+		}
+
+		AlignmentPayload payload = new AlignmentPayload(data.getTitle(), data.getPdbID(),
+				alignment.countAlignedSeqs(), alignment.countColumns(), maxLabelLength);
+
+		for(int residueNumber = 1; residueNumber <= alignment.countColumns(); residueNumber++) {
+
+			payload.pdbResidues.add(table.getPDBResidueForResidueNumber(residueNumber));
+		}
+
+		int nrows = table.getNumberOfRows();
+		for(int row = 0; row < nrows; row++) {
+
+			payload.residueNumbers.add(table.getResidueNumber(row));
+		}
+
+		for(int i = 0; i < table.getColumnInfos().size(); i++) {
+
+			ColumnInfo ci = table.getColumnInfo(i);
+
+			Column column = new Column(ci.getId(), ci.getTitle(),
+					ci.getType()==null ? null : ci.getType().name(), ci.isHidden(), ci.isMouseOver());
+
+			for(int row = 0; row < nrows; row++) {
+
+				Object value = table.hasValue(i, row) ? table.getValue(i, row) : null;
+
+				// json has no NaN
+				if(value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite()))
+					value = null;
+
+				column.values.add(value);
+			}
+			payload.columns.add(column);
+		}
+
+		for(VASEDataObject.PlotDescription pd : data.getPlots()) {
+
+			payload.plots.add(new Plot(pd.getPlotTitle(), pd.getXAxisColumnID(), pd.getYAxisColumnID()));
+		}
+
+		return payload;
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+import nl.ru.cmbi.vase.data.stockholm.Alignment;
+
+/**
+ * A block of rows and columns from an alignment, so that a browser can show a deep
+ * alignment by only getting the part that's in view.
+ *
+ * Tiles are numbered from 0, tile (i, j) holds rows i * ROWS up to (i + 1) * ROWS and
+ * columns j * COLUMNS up to (j + 1) * COLUMNS. The last ones can be smaller.
+ */
+@Data
+public class AlignmentTile {
+
+	public static final int ROWS = 50, COLUMNS = 100;
+
+	// the first row and column in the tile
+	private final int row, column;
+
+	private final List<String> labels = new ArrayList<String>();
+
+	// the url for each label, null for labels without one
+	private final List<String> references = new ArrayList<String>();
+
+	// sequences can be shorter than the tile is wide
+	private final List<String> sequences = new ArrayList<String>();
+
+	public static int countTileRows(Alignment alignment) {
+
+		return (alignment.countAlignedSeqs() + ROWS - 1) / ROWS;
+	}
+
+	public static int countTileColumns(Alignment alignment) {
+
+		return (alignment.countColumns() + COLUMNS - 1) / COLUMNS;
+	}
+
+	/**
+	 * @return the tile, or null if it's outside the alignment
+	 */
+	public static AlignmentTile get(VASEDataObject data, int tileRow, int tileColumn) {
+
+		Alignment alignment = data.getAlignment();
+		if(tileRow < 0 || tileColumn < 0
+			|| tileRow >= countTileRows(alignment) || tileColumn >= countTileColumns(alignment))
+			return null;
+
+		AlignmentTile tile = new AlignmentTile(tileRow * ROWS, tileColumn * COLUMNS);
+
+		int endRow = Math.min(tile.row + ROWS, alignment.countAlignedSeqs());
+		for(int row = tile.row; row < endRow; row++) {
+
+			String label = alignment.getLabel(row);
+			URL ref = data.getSequenceReferenceURLs().get(label);
+
+			tile.labels.add(label);
+			tile.references.add(ref==null ? null : ref.toString());
+			tile.sequences.add(alignment.getAlignedSeq(row, tile.column, tile.column + COLUMNS));
+		}
+		return tile;
+	}
+}
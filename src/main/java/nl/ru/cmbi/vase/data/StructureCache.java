@@ -0,0 +1,451 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import lombok.Data;
+
+import nl.ru.cmbi.vase.tools.util.CacheFiles;
+import nl.ru.cmbi.vase.tools.util.Config;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps downloaded structure files on disk, gzipped, so that viewing a structure again
+ * doesn't download it again.
+ *
+ * A stored file is used as it is for a while. After that, the upstream is asked whether it
+ * changed, using the ETag and Last-Modified date it sent along with the file. If the upstream
+ * can't be reached, the stored file is used anyway.
+ *
+ * When several threads ask for the same structure, only one of them downloads it.
+ * When the files take more space than allowed, the least recently used ones are deleted.
+ */
+public class StructureCache {
+
+	static Logger log = LoggerFactory.getLogger(StructureCache.class);
+
+	private static final StructureCache instance = Config.structureCacheEnabled() ?
+			new StructureCache(Config.getStructureCacheDir(), createUpstream(Config.getStructureUpstream()),
+					Config.getStructureCacheSize(), Config.getStructureMaxAge()) : null;
+
+	/**
+	 * @return null if no structure cache is configured
+	 */
+	public static StructureCache getInstance() {
+
+		return instance;
+	}
+
+	/**
+	 * @param location a url or a directory
+	 */
+	public static Upstream createUpstream(String location) {
+
+		if(location.matches("^[a-z]+://.*"))
+
+			return new HttpUpstream(location);
+		else
+			return new DirectoryUpstream(new File(location));
+	}
+
+	/**
+	 * A structure file as the upstream sent it.
+	 */
+	@Data
+	public static class Download {
+
+		// must be closed by the receiver
+		private final InputStream content;
+
+		private final boolean gzipped;
+
+		// null or 0 if the upstream didn't send them
+		private final String etag;
+		private final long lastModified;
+	}
+
+	/**
+	 * Where the structure files come from.
+	 */
+	public interface Upstream {
+
+		/**
+		 * @param etag of the stored file, null if there's none
+		 * @param lastModified of the stored file, 0 if there's none
+		 * @return null if the stored file is still up to date
+		 * @throws FileNotFoundException if the upstream doesn't have the structure
+		 */
+		public Download fetch(String pdbID, String etag, long lastModified) throws IOException;
+	}
+
+	/**
+	 * Downloads pdb files from a web server, for example https://files.rcsb.org/view
+	 */
+	public static class HttpUpstream implements Upstream {
+
+		private static final int connectTimeout = 10000, readTimeout = 60000;
+
+		private final String baseURL;
+
+		public HttpUpstream(String baseURL) {
+
+			this.baseURL = baseURL;
+		}
+
+		@Override
+		public Download fetch(String pdbID, String etag, long lastModified) throws IOException {
+
+			URL url = new URL(String.format("%s/%s.pdb", baseURL, pdbID));
+
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+			connection.setRequestProperty("Accept-Encoding", "gzip");
+			if(etag!=null)
+				connection.setRequestProperty("If-None-Match", etag);
+			if(lastModified>0)
+				connection.setIfModifiedSince(lastModified);
+
+			int code = connection.getResponseCode();
+			if(code==HttpURLConnection.HTTP_NOT_MODIFIED) {
+
+				connection.disconnect();
+				return null;
+			}
+			else if(code==HttpURLConnection.HTTP_NOT_FOUND) {
+
+				connection.disconnect();
+				throw new FileNotFoundException(url.toString());
+			}
+			else if(code!=HttpURLConnection.HTTP_OK) {
+
+				connection.disconnect();
+				throw new IOException("got " + code + " from " + url);
+			}
+
+			return new Download(connection.getInputStream(), "gzip".equals(connection.getContentEncoding()),
+					connection.getHeaderField("ETag"), connection.getLastModified());
+		}
+	}
+
+	/**
+	 * Reads pdb files from a local mirror: &lt;dir&gt;/&lt;id&gt;.pdb or &lt;dir&gt;/&lt;id&gt;.pdb.gz
+	 */
+	public static class DirectoryUpstream implements Upstream {
+
+		private final File dir;
+
+		public DirectoryUpstream(File dir) {
+
+			this.dir = dir;
+		}
+
+		@Override
+		public Download fetch(String pdbID, String etag, long lastModified) throws IOException {
+
+			File file = new File(dir, pdbID + ".pdb");
+			boolean gzipped = false;
+			if(!file.isFile()) {
+
+				file = new File(dir, pdbID + ".pdb.gz");
+				gzipped = true;
+			}
+			if(!file.isFile()) {
+
+				throw new FileNotFoundException(new File(dir, pdbID + ".pdb").toString());
+			}
+
+			if(file.lastModified()==lastModified)
+				return null;
+
+			return new Download(new FileInputStream(file), gzipped, null, file.lastModified());
+		}
+	}
+
+	private static final String extension = ".pdb.gz", metaExtension = ".meta";
+
+	private final File dir;
+
+	private final Upstream upstream;
+
+	private final long maxSize, maxAge;
+
+	private final Map<String,FutureTask<File>> fetching = new HashMap<String,FutureTask<File>>();
+
+	private long downloads = 0;
+
+	/**
+	 * @param maxSize in bytes
+	 * @param maxAge how long a stored file is used without asking the upstream, in milliseconds
+	 */
+	public StructureCache(File dir, Upstream upstream, long maxSize, long maxAge) {
+
+		this.dir = dir;
+		this.upstream = upstream;
+		this.maxSize = maxSize;
+		this.maxAge = maxAge;
+	}
+
+	private static String getName(String pdbID) {
+
+		return pdbID.toLowerCase();
+	}
+
+	/**
+	 * What the upstream said about the stored file, and when it was last asked.
+	 */
+	private static class Meta {
+
+		String etag = null;
+		long lastModified = 0, checked = 0;
+	}
+
+	private Meta readMeta(String name) {
+
+		Meta meta = new Meta();
+
+		File file = new File(dir, name + metaExtension);
+		if(!file.isFile())
+			return meta;
+
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+			try {
+				String etag = reader.readLine();
+				meta.etag = etag==null || etag.isEmpty() ? null : etag;
+				meta.lastModified = Long.parseLong(reader.readLine());
+				meta.checked = Long.parseLong(reader.readLine());
+			}
+			finally {
+				reader.close();
+			}
+		} catch(Exception e) {
+
+			// then it will be checked
+			log.warn("unreadable " + file + ": " + e.getMessage());
+		}
+		return meta;
+	}
+
+	private void writeMeta(String name, Meta meta) throws IOException {
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(new File(dir, name + metaExtension)), StandardCharsets.UTF_8);
+		try {
+			writer.write((meta.etag==null ? "" : meta.etag) + "\n" + meta.lastModified + "\n" + meta.checked + "\n");
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * @return the structure file, gzipped
+	 * @throws FileNotFoundException if there's no such structure
+	 */
+	public File getFile(final String pdbID) throws IOException {
+
+		final String name = getName(pdbID);
+
+		FutureTask<File> task;
+		boolean mustFetch = false;
+		synchronized(fetching) {
+
+			task = fetching.get(name);
+			if(task==null) {
+
+				task = new FutureTask<File>(new Callable<File>() {
+
+					@Override
+					public File call() throws Exception {
+
+						return update(pdbID, name);
+					}
+				});
+				fetching.put(name, task);
+				mustFetch = true;
+			}
+		}
+
+		if(mustFetch) {
+
+			try {
+				task.run();
+			}
+			finally {
+				synchronized(fetching) {
+
+					fetching.remove(name);
+				}
+			}
+		}
+
+		try {
+			File file = task.get();
+
+			file.setLastModified(System.currentTimeMillis());
+
+			return file;
+
+		} catch(InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for " + pdbID, e);
+
+		} catch(ExecutionException e) {
+
+			if(e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			else
+				throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the decompressed structure file
+	 */
+	public InputStream open(String pdbID) throws IOException {
+
+		return new GZIPInputStream(new FileInputStream(getFile(pdbID)));
+	}
+
+	private File update(String pdbID, String name) throws IOException {
+
+		File file = new File(dir, name + extension);
+		Meta meta = readMeta(name);
+
+		long now = System.currentTimeMillis();
+		boolean stored = file.isFile();
+		if(stored && now - meta.checked < maxAge)
+			return file;
+
+		Download download;
+		try {
+			download = upstream.fetch(pdbID, stored ? meta.etag : null, stored ? meta.lastModified : 0);
+
+		} catch(FileNotFoundException e) {
+
+			throw e;
+
+		} catch(IOException e) {
+
+			if(stored) {
+
+				log.warn("cannot check " + pdbID + ", using the stored file: " + e.getMessage());
+				return file;
+			}
+			throw e;
+		}
+
+		if(download!=null) {
+
+			store(file, download);
+
+			meta.etag = download.getEtag();
+			meta.lastModified = download.getLastModified();
+
+			synchronized(this) {
+
+				downloads++;
+			}
+		}
+
+		meta.checked = now;
+		writeMeta(name, meta);
+
+		if(download!=null)
+			cleanUp();
+
+		return file;
+	}
+
+	private void store(File file, Download download) throws IOException {
+
+		File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+		try {
+			InputStream in = download.getContent();
+			try {
+				OutputStream out = new FileOutputStream(tmp);
+				if(!download.isGzipped())
+					out = new GZIPOutputStream(out);
+				try {
+					IOUtils.copy(in, out);
+				}
+				finally {
+					out.close();
+				}
+			}
+			finally {
+				in.close();
+			}
+
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * @return how many times a structure was downloaded
+	 */
+	public synchronized long getDownloads() {
+
+		return downloads;
+	}
+
+	/**
+	 * Deletes the least recently used structures until the total size is within bounds.
+	 */
+	public synchronized void cleanUp() {
+
+		CacheFiles.trim(dir, extension, maxSize, new CacheFiles.DeleteListener() {
+
+			@Override
+			public void deleted(File file) {
+
+				String name = file.getName().substring(0, file.getName().length() - extension.length());
+
+				new File(dir, name + metaExtension).delete();
+			}
+		});
+	}
+}
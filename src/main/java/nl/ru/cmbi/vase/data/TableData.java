@@ -15,7 +15,11 @@
  */
 package nl.ru.cmbi.vase.data;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +33,22 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.AccessLevel;
 
+/**
+ * Stores its values column by column, in primitive arrays:
+ * int[] for integer columns, double[] for double columns and
+ * codes into a list of distinct strings for string columns.
+ * 
+ * A column's type is detected from the values put in it, unless it's set in its {@link ColumnInfo}.
+ * Integer columns become double columns when a double is put in them, numeric columns become
+ * string columns when a non-numerical string is put in them.
+ * 
+ * Cells that were never set are empty. Their value is "".
+ * 
+ * Indexed columns ({@link ColumnInfo#isIndexed()}) keep a map from value to row, so that
+ * {@link #getRowIndex(String, Object)} doesn't have to search. The residue number and pdb residue
+ * columns are always indexed. Call {@link #buildIndexes()} before a table is shared between threads,
+ * so that lookups don't have to build the indexes then.
+ */
 public class TableData {
 	
 	Logger log = LoggerFactory.getLogger(TableData.class);
@@ -45,6 +65,15 @@ public class TableData {
 		return getRowIndex(residueNumberID, new Integer(residueNumber));
 	}
 	
+	/**
+	 * 
+	 * @return the rowIndex or -1 if the given pdb residue is not in the table
+	 */
+	public int getRowIndexForPDBResidue(String pdbResidue) {
+		
+		return getRowIndex(pdbResidueID, pdbResidue);
+	}
+	
 	public String getPDBResidueForResidueNumber(int residueNumber) {
 		
 		int rowIndex = getRowIndexForResidueNumber( residueNumber );
@@ -56,12 +85,12 @@ public class TableData {
 	
 	public int getResidueNumber(int row) {
 		
-		return (Integer) getRowValues(row).get(residueNumberID);
+		return getInt(getColumnIndexByID(residueNumberID), row);
 	}
 	
 	public String getPDBResidue(int row) {
 
-		return (String) getRowValues(row).get(pdbResidueID);
+		return getValue(getColumnIndexByID(pdbResidueID), row).toString();
 	}
 	
 	public enum ColumnDataType { 
@@ -85,9 +114,9 @@ public class TableData {
 			
 			switch(this) {
 			case INTEGER:
-				return Integer.parseInt(s);
+				return Integer.parseInt(s.trim());
 			case DOUBLE:
-				return Double.parseDouble(s);
+				return Double.parseDouble(s.trim());
 			default:
 				return new String(s);
 			}
@@ -104,6 +133,55 @@ public class TableData {
 			}
 		}
 		
+		/**
+		 * Does the same as matching the regular expressions, from INTEGER to STRING, but faster.
+		 * 
+		 * @return the most specific type that the string can be parsed to
+		 */
+		public static ColumnDataType detect(String s) {
+			
+			int i=0, n=s.length();
+			while(i<n && Character.isWhitespace(s.charAt(i))) i++;
+			while(n>i && Character.isWhitespace(s.charAt(n-1))) n--;
+			
+			if(i<n && s.charAt(i)=='-') i++;
+			
+			int digits = countDigits(s, i, n);
+			if(digits==0)
+				return STRING;
+			i+=digits;
+			
+			if(i==n)
+				return INTEGER;
+			
+			if(s.charAt(i)=='.') {
+				
+				digits = countDigits(s, i+1, n);
+				if(digits==0)
+					return STRING;
+				i+=1+digits;
+			}
+			if(i<n && s.charAt(i)=='e') {
+				
+				i++;
+				if(i<n && s.charAt(i)=='-') i++;
+				
+				digits = countDigits(s, i, n);
+				if(digits==0)
+					return STRING;
+				i+=digits;
+			}
+			
+			return i==n ? DOUBLE : STRING;
+		}
+		
+		private static int countDigits(String s, int start, int end) {
+			
+			int i=start;
+			while(i<end && s.charAt(i)>='0' && s.charAt(i)<='9') i++;
+			return i-start;
+		}
+		
 		private ColumnDataType(String regexp) {
 			this.regexp=regexp;
 		}
@@ -115,39 +193,475 @@ public class TableData {
 		private String title="", id;
 
 		private boolean hidden = false, mouseOver = false;
+		
+		// null until the first value is set, if not set beforehand
+		private ColumnDataType type = null;
+		
+		private boolean indexed = false;
 	}
 	
-	public boolean columnIsOfType(String columnID, ColumnDataType type) {
+	/**
+	 * Maps int values to rows, by open addressing. Keeps the lowest row for every value.
+	 */
+	private static class IntRowIndex {
+		
+		private int[] keys = new int[16], rows = new int[16];
+		
+		private int size = 0;
 		
-		int columnIndex = this.getColumnIndexByID(columnID);
-		for(int rowIndex =0; rowIndex<matrix.size(); rowIndex++) {
+		public IntRowIndex() {
 			
-			if( !type.matchesByClass( matrix.get(rowIndex).get(columnIndex) ) ) {
+			Arrays.fill(rows, -1);
+		}
+		
+		private int slot(int key, int[] keys, int[] rows) {
+			
+			int hash = key * 0x9E3779B9,
+				mask = keys.length - 1,
+				i = (hash ^ (hash >>> 16)) & mask;
+			
+			while(rows[i]!=-1 && keys[i]!=key) {
 				
-				return false;
+				i = (i + 1) & mask;
 			}
+			return i;
+		}
+		
+		/**
+		 * @return the row, or -1 if the value isn't in the index
+		 */
+		public int get(int key) {
+			
+			return rows[slot(key, keys, rows)];
+		}
+		
+		public void put(int key, int row) {
+			
+			int i = slot(key, keys, rows);
+			if(rows[i]==-1) {
+				
+				keys[i] = key;
+				rows[i] = row;
+				
+				if(++size * 2 > keys.length)
+					grow();
+			}
+			else if(row < rows[i]) {
+				
+				rows[i] = row;
+			}
+		}
+		
+		private void grow() {
+			
+			int[] newKeys = new int[keys.length * 2], newRows = new int[keys.length * 2];
+			Arrays.fill(newRows, -1);
+			
+			for(int i=0; i<keys.length; i++) {
+				
+				if(rows[i]!=-1) {
+					
+					int j = slot(keys[i], newKeys, newRows);
+					newKeys[j] = keys[i];
+					newRows[j] = rows[i];
+				}
+			}
+			keys = newKeys;
+			rows = newRows;
 		}
-		return true;
 	}
 	
-	public boolean columnIsNumber(String columnID) {
+	/**
+	 * The values of one column. Only one of the arrays is in use, depending on the type.
+	 */
+	private static class Column {
+		
+		private final ColumnInfo info;
+		
+		private boolean[] present = new boolean[0];
+		
+		private int[] ints;
+		
+		private double[] doubles;
 		
-		int columnIndex = this.getColumnIndexByID(columnID);
-		for(int rowIndex =0; rowIndex<matrix.size(); rowIndex++) {
+		// for string columns: indices in 'strings'
+		private int[] codes;
+		private List<String> strings;
+		private Map<String,Integer> stringCodes;
+		
+		// for indexed columns: an IntRowIndex for integer columns, a map for other types.
+		// A rebuilt index is published by setting indexStale to false.
+		private IntRowIndex intIndex;
+		private Map<Object,Integer> valueIndex;
+		private volatile boolean indexStale = true;
+		
+		public Column(ColumnInfo info) {
 			
-			if( !ColumnDataType.DOUBLE.matchesByClass( matrix.get(rowIndex).get(columnIndex) )
-				&& !ColumnDataType.INTEGER.matchesByClass( matrix.get(rowIndex).get(columnIndex) ) ) {
+			this.info = info;
+			if(info.getType()!=null) {
 				
-				return false;
+				allocate(info.getType(), 0);
 			}
 		}
-		return true;
+		
+		public ColumnDataType getType() {
+			
+			return info.getType();
+		}
+		
+		public boolean isPresent(int row) {
+			
+			return row<present.length && present[row];
+		}
+		
+		private void allocate(ColumnDataType type, int capacity) {
+			
+			ints = null; doubles = null; codes = null; strings = null; stringCodes = null;
+			
+			switch(type) {
+			case INTEGER:
+				ints = new int[capacity];
+				break;
+			case DOUBLE:
+				doubles = new double[capacity];
+				break;
+			default:
+				codes = new int[capacity];
+				strings = new ArrayList<String>();
+				stringCodes = new HashMap<String,Integer>();
+			}
+			info.setType(type);
+		}
+		
+		private void ensureCapacity(int rows) {
+			
+			if(rows<=present.length)
+				return;
+			
+			int capacity = Math.max(rows, present.length * 2);
+			
+			present = Arrays.copyOf(present, capacity);
+			if(ints!=null) ints = Arrays.copyOf(ints, capacity);
+			if(doubles!=null) doubles = Arrays.copyOf(doubles, capacity);
+			if(codes!=null) codes = Arrays.copyOf(codes, capacity);
+		}
+		
+		/**
+		 * @return "" for empty cells, otherwise an Integer, Double or String, depending on the type
+		 */
+		public Object get(int row) {
+			
+			if(!isPresent(row))
+				return "";
+			
+			switch(getType()) {
+			case INTEGER:
+				return ints[row];
+			case DOUBLE:
+				return doubles[row];
+			default:
+				return strings.get(codes[row]);
+			}
+		}
+		
+		/**
+		 * @param value an Integer, Double or String
+		 */
+		public void set(int row, Object value) {
+			
+			if(!info.isIndexed()) {
+				
+				store(row, value);
+				indexStale = true; // in case the column gets indexed later
+				return;
+			}
+			
+			Object oldValue = get(row);
+			
+			store(row, value);
+			
+			if(indexStale)
+				return; // will be rebuilt on the next lookup
+			
+			Object newValue = get(row);
+			if(oldValue.equals(newValue))
+				return;
+			
+			if(!"".equals(oldValue) && findRow(oldValue)==row) {
+				
+				// Another row might have the old value too, so it's easier to rebuild the index.
+				indexStale = true;
+			}
+			else addToIndex(newValue, row, intIndex, valueIndex);
+		}
+		
+		private void addToIndex(Object value, int row, IntRowIndex intIndex, Map<Object,Integer> valueIndex) {
+			
+			if("".equals(value))
+				return; // empty cells are not indexed
+			
+			if(getType()==ColumnDataType.INTEGER) {
+				
+				intIndex.put((Integer) value, row);
+			}
+			else {
+				Integer indexedRow = valueIndex.get(value);
+				if(indexedRow==null || row < indexedRow)
+					valueIndex.put(value, row);
+			}
+		}
+		
+		/**
+		 * Threads that look up rows at the same time wait for each other here,
+		 * the others see the new index once indexStale is false.
+		 */
+		private synchronized void rebuildIndex() {
+			
+			if(!indexStale)
+				return;
+			
+			IntRowIndex newIntIndex = new IntRowIndex();
+			Map<Object,Integer> newValueIndex = new HashMap<Object,Integer>();
+			
+			for(int row=0; row<present.length; row++) {
+				
+				if(present[row])
+					addToIndex(get(row), row, newIntIndex, newValueIndex);
+			}
+			intIndex = newIntIndex;
+			valueIndex = newValueIndex;
+			indexStale = false;
+		}
+		
+		/**
+		 * Uses the index, so only for indexed columns.
+		 * 
+		 * @return the first row with the given value, or -1 if no row has it
+		 */
+		public int findRow(Object value) {
+			
+			if(indexStale)
+				rebuildIndex();
+			
+			if(getType()==ColumnDataType.INTEGER) {
+				
+				if(!(value instanceof Integer))
+					return -1;
+				
+				return intIndex.get((Integer) value);
+			}
+			else {
+				Integer row = valueIndex.get(value);
+				return row==null ? -1 : row;
+			}
+		}
+		
+		private void store(int row, Object value) {
+			
+			if("".equals(value) && getType()!=ColumnDataType.STRING) {
+				
+				// empty cell
+				if(row<present.length)
+					present[row] = false;
+				return;
+			}
+			
+			ColumnDataType valueType = value instanceof Integer ? ColumnDataType.INTEGER
+									: value instanceof Double ? ColumnDataType.DOUBLE : ColumnDataType.STRING;
+			if(getType()==null) {
+				
+				allocate(valueType, present.length);
+			}
+			else if(getType()==ColumnDataType.INTEGER && valueType==ColumnDataType.DOUBLE) {
+				
+				convert(ColumnDataType.DOUBLE);
+			}
+			else if(getType()!=ColumnDataType.STRING && valueType==ColumnDataType.STRING) {
+				
+				convert(ColumnDataType.STRING);
+			}
+			
+			ensureCapacity(row + 1);
+			present[row] = true;
+			
+			switch(getType()) {
+			case INTEGER:
+				ints[row] = (Integer) value;
+				break;
+			case DOUBLE:
+				doubles[row] = ((Number) value).doubleValue();
+				break;
+			default:
+				String s = value.toString();
+				Integer code = stringCodes.get(s);
+				if(code==null) {
+					
+					code = strings.size();
+					strings.add(s);
+					stringCodes.put(s, code);
+				}
+				codes[row] = code;
+			}
+		}
+		
+		public long estimateSize() {
+			
+			long size = present.length;
+			if(ints!=null)
+				size += 4L * ints.length;
+			if(doubles!=null)
+				size += 8L * doubles.length;
+			if(codes!=null) {
+				
+				size += 4L * codes.length;
+				for(String s : strings) {
+					
+					size += 96 + 2 * s.length(); // the string and its entry in stringCodes
+				}
+			}
+			if(info.isIndexed())
+				size += 32L * present.length;
+			
+			return size;
+		}
+		
+		/**
+		 * Writes the values of the first nrows rows, for a {@link VASESnapshot}.
+		 */
+		public void writeSnapshot(DataOutput out, int nrows) throws IOException {
+			
+			for(int row=0; row<nrows; row++) {
+				
+				out.writeBoolean(isPresent(row));
+			}
+			
+			if(getType()==null)
+				return;
+			
+			switch(getType()) {
+			case INTEGER:
+				for(int row=0; row<nrows; row++) {
+					
+					out.writeInt(isPresent(row) ? ints[row] : 0);
+				}
+				break;
+			case DOUBLE:
+				for(int row=0; row<nrows; row++) {
+					
+					out.writeDouble(isPresent(row) ? doubles[row] : 0.0);
+				}
+				break;
+			default:
+				out.writeInt(strings.size());
+				for(String s : strings) {
+					
+					VASESnapshot.writeString(out, s);
+				}
+				for(int row=0; row<nrows; row++) {
+					
+					out.writeInt(isPresent(row) ? codes[row] : 0);
+				}
+			}
+		}
+		
+		/**
+		 * Reads what {@link #writeSnapshot(DataOutput, int)} wrote, with the column's type already set.
+		 */
+		public void readSnapshot(ByteBuffer in, int nrows) {
+			
+			present = new boolean[nrows];
+			for(int row=0; row<nrows; row++) {
+				
+				present[row] = in.get()!=0;
+			}
+			indexStale = true;
+			
+			if(getType()==null)
+				return;
+			
+			allocate(getType(), nrows);
+			
+			switch(getType()) {
+			case INTEGER:
+				in.asIntBuffer().get(ints);
+				in.position(in.position() + 4 * nrows);
+				break;
+			case DOUBLE:
+				in.asDoubleBuffer().get(doubles);
+				in.position(in.position() + 8 * nrows);
+				break;
+			default:
+				int nstrings = in.getInt();
+				for(int i=0; i<nstrings; i++) {
+					
+					String s = VASESnapshot.readString(in);
+					strings.add(s);
+					stringCodes.put(s, i);
+				}
+				in.asIntBuffer().get(codes);
+				in.position(in.position() + 4 * nrows);
+			}
+		}
+		
+		private void convert(ColumnDataType type) {
+			
+			Object[] values = new Object[present.length];
+			for(int row=0; row<present.length; row++) {
+				
+				if(present[row])
+					values[row] = get(row);
+			}
+			
+			allocate(type, present.length);
+			
+			for(int row=0; row<present.length; row++) {
+				
+				if(present[row])
+					store(row, values[row]);
+			}
+			
+			indexStale = true;
+		}
 	}
-
-	private List<List<Object>> matrix = new ArrayList<List<Object>>();
+	
+	private int nrows = 0;
 	
 	private List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
 	
+	private List<Column> columnData = new ArrayList<Column>();
+	
+	private Map<String,Integer> columnIndices = new HashMap<String,Integer>();
+	
+	public boolean columnIsOfType(String columnID, ColumnDataType type) {
+		
+		Column column = columnData.get(this.getColumnIndexByID(columnID));
+		
+		if(type==ColumnDataType.STRING) {
+			
+			// empty cells count as strings
+			return column.getType()==null || column.getType()==ColumnDataType.STRING;
+		}
+		else return column.getType()==type && isComplete(column);
+	}
+	
+	public boolean columnIsNumber(String columnID) {
+		
+		Column column = columnData.get(this.getColumnIndexByID(columnID));
+		
+		return (column.getType()==ColumnDataType.INTEGER || column.getType()==ColumnDataType.DOUBLE)
+				&& isComplete(column);
+	}
+	
+	private boolean isComplete(Column column) {
+		
+		for(int rowIndex =0; rowIndex<nrows; rowIndex++) {
+			
+			if(!column.isPresent(rowIndex))
+				return false;
+		}
+		return true;
+	}
+	
 	public TableData(List<ColumnInfo> cs) {
 		
 		for(ColumnInfo ci : cs) {
@@ -156,7 +670,92 @@ public class TableData {
 			}
 		}
 		
-		this.columns.addAll(cs);
+		for(ColumnInfo ci : cs) {
+			
+			addColumn(ci);
+		}
+	}
+	
+	/**
+	 * @return a rough estimate of the number of bytes on the heap used by this table
+	 */
+	public long estimateSize() {
+		
+		long size = 0;
+		for(Column column : columnData) {
+			
+			size += 128 + column.estimateSize();
+		}
+		return size;
+	}
+	
+	/**
+	 * Writes the table's section of a {@link VASESnapshot}.
+	 */
+	void writeSnapshot(DataOutput out) throws IOException {
+		
+		out.writeInt(nrows);
+		out.writeInt(columns.size());
+		
+		for(int i=0; i<columns.size(); i++) {
+			
+			ColumnInfo ci = columns.get(i);
+			
+			VASESnapshot.writeString(out, ci.getId());
+			VASESnapshot.writeString(out, ci.getTitle());
+			out.writeBoolean(ci.isHidden());
+			out.writeBoolean(ci.isMouseOver());
+			out.writeBoolean(ci.isIndexed());
+			out.writeByte(ci.getType()==null ? -1 : ci.getType().ordinal());
+			
+			columnData.get(i).writeSnapshot(out, nrows);
+		}
+	}
+	
+	/**
+	 * Reads what {@link #writeSnapshot(DataOutput)} wrote.
+	 */
+	static TableData readSnapshot(ByteBuffer in) {
+		
+		TableData tableData = new TableData(new ArrayList<ColumnInfo>());
+		
+		int nrows = in.getInt(),
+			ncolumns = in.getInt();
+		
+		for(int i=0; i<ncolumns; i++) {
+			
+			ColumnInfo ci = new ColumnInfo();
+			ci.setId(VASESnapshot.readString(in));
+			ci.setTitle(VASESnapshot.readString(in));
+			ci.setHidden(in.get()!=0);
+			ci.setMouseOver(in.get()!=0);
+			ci.setIndexed(in.get()!=0);
+			
+			int type = in.get();
+			if(type!=-1) {
+				
+				ci.setType(ColumnDataType.values()[type]);
+			}
+			
+			tableData.addColumn(ci);
+			tableData.columnData.get(i).readSnapshot(in, nrows);
+		}
+		tableData.nrows = nrows;
+		tableData.buildIndexes();
+		
+		return tableData;
+	}
+	
+	/**
+	 * Builds the indexes of the indexed columns that are out of date.
+	 */
+	public void buildIndexes() {
+		
+		for(int i=0; i<columns.size(); i++) {
+			
+			if(columns.get(i).isIndexed())
+				columnData.get(i).rebuildIndex();
+		}
 	}
 	
 	public List<ColumnInfo> getColumnInfos() {
@@ -185,12 +784,11 @@ public class TableData {
 	 */
 	public ColumnInfo getColumnByID(String id) {
 		
-		for(ColumnInfo ci : columns) {
-			
-			if(ci.getId().equals(id))
-				return ci;
-		}
-		return null;
+		int i = getColumnIndexByID(id);
+		if(i==-1)
+			return null;
+		
+		return columns.get(i);
 	}
 	/**
 	 * 
@@ -198,12 +796,11 @@ public class TableData {
 	 */
 	public int getColumnIndexByID(String id) {
 		
-		for(int i=0; i<columns.size(); i++) {
-			
-			if(columns.get(i).getId().equals(id))
-				return i;
-		}
-		return -1;
+		Integer i = columnIndices.get(id);
+		if(i==null)
+			return -1;
+		
+		return i;
 	}
 
 	/**
@@ -219,9 +816,9 @@ public class TableData {
 		
 		Map<Object,Integer> valueOccurence = new HashMap<Object,Integer>();
 		List<Object> duplicates = new ArrayList<Object>();
-		for(List<Object> row : matrix) {
+		for(int rowIndex=0; rowIndex<nrows; rowIndex++) {
 			
-			Object value = row.get(columnIndex);
+			Object value = getValue(columnIndex, rowIndex);
 			if(!valueOccurence.containsKey(value)) {
 				valueOccurence.put(value,0);
 			}
@@ -252,11 +849,11 @@ public class TableData {
 	
 	public List<Object> getColumnValues(int columnIndex) {
 		
-		List<Object> columnValues = new ArrayList<Object>();
+		List<Object> columnValues = new ArrayList<Object>(nrows);
 		
-		for(List<Object> row : matrix) {
+		for(int rowIndex=0; rowIndex<nrows; rowIndex++) {
 			
-			columnValues.add(row.get(columnIndex));
+			columnValues.add(getValue(columnIndex, rowIndex));
 		}
 		
 		return columnValues;
@@ -269,9 +866,15 @@ public class TableData {
 	public int getRowIndex(String columnID, Object value) {
 		
 		int columnIndex = getColumnIndexByID(columnID);
-		for(int rowIndex=0; rowIndex<matrix.size();rowIndex++) {
+		
+		if(columns.get(columnIndex).isIndexed() && !"".equals(value)) {
+			
+			return columnData.get(columnIndex).findRow(value);
+		}
+		
+		for(int rowIndex=0; rowIndex<nrows;rowIndex++) {
 			
-			if( matrix.get(rowIndex).get(columnIndex).equals(value) ) {
+			if( getValue(columnIndex, rowIndex).equals(value) ) {
 				
 				return rowIndex;
 			}
@@ -290,7 +893,7 @@ public class TableData {
 		
 		for(int j=0; j<columns.size(); j++) {
 			
-			row.put(columns.get(j).getId(), matrix.get(i).get(j));
+			row.put(columns.get(j).getId(), getValue(j, i));
 		}
 		
 		return row;
@@ -298,14 +901,74 @@ public class TableData {
 	
 	public int getNumberOfRows() {
 		
-		return matrix.size();
+		return nrows;
+	}
+	
+	/**
+	 * @return an Integer, Double or String, depending on the column's type. "" if the cell is empty.
+	 */
+	public Object getValue(int columnIndex, int rowIndex) {
+		
+		return columnData.get(columnIndex).get(rowIndex);
+	}
+	
+	public boolean hasValue(int columnIndex, int rowIndex) {
+		
+		return columnData.get(columnIndex).isPresent(rowIndex);
+	}
+	
+	/**
+	 * @return the value in a numerical column, NaN if the cell is empty
+	 */
+	public double getDouble(int columnIndex, int rowIndex) {
+		
+		Column column = columnData.get(columnIndex);
+		if(!column.isPresent(rowIndex))
+			return Double.NaN;
+		
+		switch(column.getType()) {
+		case INTEGER:
+			return column.ints[rowIndex];
+		case DOUBLE:
+			return column.doubles[rowIndex];
+		default:
+			throw new RuntimeException(columns.get(columnIndex).getId()+" is not a numerical column");
+		}
+	}
+	
+	/**
+	 * @return the value in an integer column
+	 */
+	public int getInt(int columnIndex, int rowIndex) {
+		
+		Column column = columnData.get(columnIndex);
+		if(column.getType()!=ColumnDataType.INTEGER)
+			throw new RuntimeException(columns.get(columnIndex).getId()+" is not an integer column");
+		
+		if(!column.isPresent(rowIndex))
+			throw new RuntimeException(columns.get(columnIndex).getId()+" has no value in row "+rowIndex);
+		
+		return column.ints[rowIndex];
+	}
+	
+	/**
+	 * @return the value as a string, "" if the cell is empty
+	 */
+	public String getString(int columnIndex, int rowIndex) {
+		
+		return getValue(columnIndex, rowIndex).toString();
 	}
 	
 	public boolean columnHasValue(int columnIndex, Object value) {
 		
-		for(int rowIndex =0; rowIndex<matrix.size(); rowIndex++) {
+		if(columns.get(columnIndex).isIndexed() && !"".equals(value)) {
+			
+			return columnData.get(columnIndex).findRow(value)!=-1;
+		}
+		
+		for(int rowIndex =0; rowIndex<nrows; rowIndex++) {
 			
-			if(matrix.get(rowIndex).get(columnIndex).equals(value))
+			if(getValue(columnIndex, rowIndex).equals(value))
 				return true;
 		}
 		return false;
@@ -320,9 +983,8 @@ public class TableData {
 	public String getValueAsString(String columnID, int rowIndex) {
 
 		int columnIndex = getColumnIndexByID(columnID);
-		ColumnInfo ci = columns.get(columnIndex);
 		
-		Object value = matrix.get(rowIndex).get(columnIndex);
+		Object value = getValue(columnIndex, rowIndex);
 		
 		if(ColumnDataType.INTEGER.matchesByClass(value))
 			
@@ -330,9 +992,9 @@ public class TableData {
 		
 		else if(ColumnDataType.DOUBLE.matchesByClass(value))
 			
-			return String.format(Locale.ENGLISH,"%.2f", matrix.get(rowIndex).get(columnIndex));
+			return String.format(Locale.ENGLISH,"%.2f", value);
 		else
-			return matrix.get(rowIndex).get(columnIndex).toString();
+			return value.toString();
 	}
 	
 	/**
@@ -340,19 +1002,20 @@ public class TableData {
 	 */
 	public int addColumn(ColumnInfo toAdd) {
 		
-		for(ColumnInfo ci : columns) {
+		if(columnIndices.containsKey(toAdd.getId())) {
 			
-			if(ci.getId().equals(toAdd.getId())) {
-				throw new RuntimeException(ci.getId()+": a column with that ID already exists");
-			}
+			throw new RuntimeException(toAdd.getId()+": a column with that ID already exists");
 		}
 		
-		columns.add(toAdd);
-		for(List<Object> row : matrix) {
+		if(toAdd.getId().equals(residueNumberID) || toAdd.getId().equals(pdbResidueID)) {
 			
-			row.add(null);
+			toAdd.setIndexed(true);
 		}
 		
+		columns.add(toAdd);
+		columnData.add(new Column(toAdd));
+		columnIndices.put(toAdd.getId(), columns.size() - 1);
+		
 		return columns.size() - 1;
 	}
 	
@@ -363,14 +1026,7 @@ public class TableData {
 	 */
 	public void setValue(String columnID, int rowIndex, Object v) {
 		
-		while(matrix.size()<(rowIndex+1)) {
-			
-			List<Object> emptyRow = new ArrayList<Object>();
-			for(ColumnInfo ci : columns) {
-				emptyRow.add( "" );
-			}
-			matrix.add(emptyRow);
-		}
+		nrows = Math.max(nrows, rowIndex + 1);
 		
 		int columnIndex = getColumnIndexByID(columnID);
 		if(columnIndex == -1) {
@@ -381,29 +1037,24 @@ public class TableData {
 			columnIndex = addColumn(nci);
 		}
 		
-		ColumnInfo ci = columns.get(columnIndex);
-
-		Object value = null;
-		for(ColumnDataType type : 
-			new ColumnDataType[] {	ColumnDataType.INTEGER, // order matters here !
-									ColumnDataType.DOUBLE,
-									ColumnDataType.STRING }) {
+		Object value;
+		if(ColumnDataType.INTEGER.matchesByClass(v) || ColumnDataType.DOUBLE.matchesByClass(v)) {
 			
-			if ( type.matchesByClass(v) ) {
-
-				value = v;
-				break;
-				
-			} else if( String.class.isInstance(v) && ((String)v).matches(type.regexp) ) {
-
+			value = v;
+		}
+		else if(String.class.isInstance(v)) {
+			
+			ColumnDataType type = ColumnDataType.detect((String)v);
+			try {
 				value = type.fromString((String)v);
-				break;
+				
+			} catch(NumberFormatException e) { // integer too large
+				
+				value = ColumnDataType.DOUBLE.fromString((String)v);
 			}
 		}
-		if(value==null) {
-			value = v.toString();
-		}
+		else value = v.toString();
 		
-		matrix.get(rowIndex).set(columnIndex, value);
+		columnData.get(columnIndex).set(rowIndex, value);
 	}
 }
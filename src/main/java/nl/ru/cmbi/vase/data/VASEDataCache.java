@@ -0,0 +1,276 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import lombok.Data;
+
+import nl.ru.cmbi.vase.tools.util.Config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps recently used data objects in memory, up to a total estimated size.
+ * The least recently used ones are dropped first.
+ *
+ * When several threads ask for the same missing entry at the same time,
+ * only one of them loads it. The others wait for it.
+ *
+ * The data objects are shared by everyone who gets them from the cache, so they must not be modified.
+ * Their tables' indexes are built before they're handed out, so that lookups don't modify them either.
+ * Their alignments still make some views on first use, see {@link nl.ru.cmbi.vase.data.stockholm.Alignment},
+ * but those are only published once they're complete.
+ */
+public class VASEDataCache {
+
+	static Logger log = LoggerFactory.getLogger(VASEDataCache.class);
+
+	private static final VASEDataCache instance = new VASEDataCache(Config.getDataCacheSize());
+
+	public static VASEDataCache getInstance() {
+
+		return instance;
+	}
+
+	/**
+	 * Entries for the same structure and chain, but with another modification time
+	 * of the source file, are out of date.
+	 */
+	@Data
+	public static class Key {
+
+		private final String structureID;
+
+		// null if the data isn't per chain
+		private final Character chainID;
+
+		// of the file that the data was made from, 0 if there's no local file
+		private final long sourceModified;
+
+		public boolean isSameData(Key other) {
+
+			return structureID.equals(other.structureID)
+				&& (chainID==null ? other.chainID==null : chainID.equals(other.chainID));
+		}
+	}
+
+	public interface Loader {
+
+		public VASEDataObject load() throws Exception;
+	}
+
+	private static class Entry {
+
+		private final VASEDataObject data;
+
+		private final long size;
+
+		public Entry(VASEDataObject data, long size) {
+
+			this.data = data;
+			this.size = size;
+		}
+	}
+
+	private final long maxSize;
+
+	private long size = 0;
+
+	// in access order, least recently used first
+	private final LinkedHashMap<Key,Entry> entries = new LinkedHashMap<Key,Entry>(16, 0.75f, true);
+
+	private final Map<Key,FutureTask<VASEDataObject>> loading = new HashMap<Key,FutureTask<VASEDataObject>>();
+
+	private long hits = 0, misses = 0, waits = 0, evictions = 0;
+
+	/**
+	 * @param maxSize in bytes, as estimated by {@link #estimateSize(VASEDataObject)}
+	 */
+	public VASEDataCache(long maxSize) {
+
+		this.maxSize = maxSize;
+	}
+
+	public static long estimateSize(VASEDataObject data) {
+
+		return 1024 + data.getAlignment().estimateSize() + data.getTable().estimateSize();
+	}
+
+	/**
+	 * @return the cached data for the key, or the data from the loader if it's not cached
+	 */
+	public VASEDataObject get(Key key, final Loader loader) throws Exception {
+
+		FutureTask<VASEDataObject> task;
+		boolean mustLoad = false;
+
+		synchronized(this) {
+
+			Entry entry = entries.get(key);
+			if(entry!=null) {
+
+				hits++;
+				return entry.data;
+			}
+
+			task = loading.get(key);
+			if(task==null) {
+
+				misses++;
+				task = new FutureTask<VASEDataObject>(new Callable<VASEDataObject>() {
+
+					@Override
+					public VASEDataObject call() throws Exception {
+
+						VASEDataObject data = loader.load();
+						if(data!=null && data.getTable()!=null)
+							data.getTable().buildIndexes();
+
+						return data;
+					}
+				});
+				loading.put(key, task);
+				mustLoad = true;
+			}
+			else waits++;
+		}
+
+		if(mustLoad) {
+
+			try {
+				task.run();
+
+				VASEDataObject data = getResult(task);
+				put(key, data);
+
+				return data;
+			}
+			finally {
+				synchronized(this) {
+
+					loading.remove(key);
+				}
+			}
+		}
+		else return getResult(task);
+	}
+
+	private static VASEDataObject getResult(FutureTask<VASEDataObject> task) throws Exception {
+
+		try {
+			return task.get();
+
+		} catch(ExecutionException e) {
+
+			if(e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			else
+				throw e;
+		}
+	}
+
+	private synchronized void put(Key key, VASEDataObject data) {
+
+		long entrySize = estimateSize(data);
+		if(entrySize > maxSize) {
+
+			log.info("not caching " + key + ", its size is " + entrySize);
+			return;
+		}
+
+		// older versions won't be asked for anymore
+		Iterator<Map.Entry<Key,Entry>> it = entries.entrySet().iterator();
+		while(it.hasNext()) {
+
+			Map.Entry<Key,Entry> old = it.next();
+			if(old.getKey().isSameData(key)) {
+
+				size -= old.getValue().size;
+				it.remove();
+			}
+		}
+
+		entries.put(key, new Entry(data, entrySize));
+		size += entrySize;
+
+		it = entries.entrySet().iterator();
+		while(size > maxSize) {
+
+			Map.Entry<Key,Entry> eldest = it.next();
+
+			size -= eldest.getValue().size;
+			it.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized void clear() {
+
+		entries.clear();
+		size = 0;
+	}
+
+	public synchronized int countEntries() {
+
+		return entries.size();
+	}
+
+	/**
+	 * @return the estimated size of all entries, in bytes
+	 */
+	public synchronized long getSize() {
+
+		return size;
+	}
+
+	public synchronized long getHits() {
+
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+
+		return misses;
+	}
+
+	/**
+	 * @return how many times a thread waited for another thread that was loading the same entry
+	 */
+	public synchronized long getWaits() {
+
+		return waits;
+	}
+
+	public synchronized long getEvictions() {
+
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+
+		return String.format("%d entries, %d bytes, %d hits, %d misses, %d waits, %d evictions",
+				entries.size(), size, hits, misses, waits, evictions);
+	}
+}
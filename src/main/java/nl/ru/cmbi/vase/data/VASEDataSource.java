@@ -0,0 +1,193 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import nl.ru.cmbi.vase.parse.StockholmParser;
+import nl.ru.cmbi.vase.parse.StructureCatalogue;
+import nl.ru.cmbi.vase.parse.VASEXMLParser;
+import nl.ru.cmbi.vase.tools.util.Config;
+import nl.ru.cmbi.vase.tools.util.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gets the data objects for the alignment page and the rest calls that go with it,
+ * through the {@link VASEDataCache}, so that they all share the same objects.
+ */
+public class VASEDataSource {
+
+	static Logger log = LoggerFactory.getLogger(VASEDataSource.class);
+
+	/**
+	 * @return the cached xml file for the given structure, or null if there's none
+	 */
+	public static File getXmlFile(String structureID) {
+
+		File	xmlFile = new File(Config.getCacheDir(), structureID + ".xml"),
+				gzXmlFile = new File(Config.getCacheDir(), structureID + ".xml.gz");
+		if(xmlFile.isFile())
+			return xmlFile;
+		else if(gzXmlFile.isFile())
+			return gzXmlFile;
+		else
+			return null;
+	}
+
+	/**
+	 * @return the data from the structure's xml file, or null if there's no such file
+	 */
+	public static VASEDataObject getXmlData(final String structureID) throws Exception {
+
+		final File xmlFile = getXmlFile(structureID);
+		if(xmlFile==null)
+			return null;
+
+		VASEDataCache.Key key = new VASEDataCache.Key(structureID, null, xmlFile.lastModified());
+
+		return VASEDataCache.getInstance().get(key, new VASEDataCache.Loader() {
+
+			@Override
+			public VASEDataObject load() throws Exception {
+
+				return readXml(structureID, xmlFile);
+			}
+		});
+	}
+
+	/**
+	 * The xml is only parsed the first time. After that, the data is read from
+	 * a snapshot next to the xml file, until the xml file changes.
+	 */
+	private static VASEDataObject readXml(String structureID, File xmlFile) throws Exception {
+
+		File snapshotFile = new File(xmlFile.getParentFile(), structureID + VASESnapshot.extension);
+		if(snapshotFile.isFile() && snapshotFile.lastModified() >= xmlFile.lastModified()) {
+
+			try {
+				return VASESnapshot.read(snapshotFile);
+
+			} catch(IOException e) {
+
+				log.warn("unreadable snapshot " + snapshotFile + ": " + e.getMessage());
+			}
+		}
+
+		InputStream xmlIn = new FileInputStream(xmlFile);
+		VASEDataObject data;
+		try {
+			if(xmlFile.getName().endsWith(".gz")) {
+
+				xmlIn = new GZIPInputStream(xmlIn);
+			}
+			data = VASEXMLParser.parse(xmlIn);
+		}
+		finally {
+			xmlIn.close();
+		}
+
+		try {
+			VASESnapshot.write(data, snapshotFile);
+
+		} catch(IOException e) {
+
+			log.warn("could not write snapshot " + snapshotFile + ": " + e.getMessage());
+		}
+
+		return data;
+	}
+
+	/**
+	 * Computes the data from the structure's stockholm and pdb file, or takes it from the
+	 * {@link VASEDiskCache} if it was computed before.
+	 *
+	 * @throws FileNotFoundException if the structure's pdb file can't be found
+	 */
+	public static VASEDataObject getStockholmData(final String structureID, final char chainID) throws Exception {
+
+		final File hsspFile = Utils.getStockholmFile(structureID);
+		VASEDataCache.Key key = new VASEDataCache.Key(structureID, chainID,
+				hsspFile==null ? 0 : hsspFile.lastModified());
+
+		return VASEDataCache.getInstance().get(key, new VASEDataCache.Loader() {
+
+			@Override
+			public VASEDataObject load() throws Exception {
+
+				// Only results from local files can be checked for changes.
+				VASEDiskCache diskCache = hsspFile==null ? null : VASEDiskCache.getInstance();
+				if(diskCache!=null) {
+
+					VASEDataObject stored = diskCache.get(structureID, chainID, hsspFile);
+					if(stored!=null)
+						return stored;
+				}
+
+				InputStream pdbIn = Utils.getPdbInputStream(structureID);
+				if(pdbIn == null) {
+
+					throw new FileNotFoundException("Unable to resolve PDB URL for: " + structureID);
+				}
+
+				InputStream stockholmInputStream = Utils.getStockholmInputStream(structureID, chainID);
+
+				VASEDataObject data =
+					StockholmParser.parseStockHolm(stockholmInputStream, pdbIn, structureID, chainID);
+
+				if(diskCache!=null) {
+
+					try {
+						diskCache.put(structureID, chainID, hsspFile, data);
+
+					} catch(IOException e) {
+
+						log.warn("could not store the result for " + structureID + ": " + e.getMessage());
+					}
+				}
+
+				return data;
+			}
+		});
+	}
+
+	/**
+	 * @param chainID ignored for xml entries
+	 * @return the data that the alignment page shows, or null if there's no such structure or chain
+	 */
+	public static VASEDataObject get(String structureID, char chainID) throws Exception {
+
+		VASEDataObject data = getXmlData(structureID);
+		if(data!=null)
+			return data;
+
+		if(Config.isXmlOnly())
+			return null;
+
+		StructureCatalogue.Entry catalogueEntry = Utils.getCatalogueEntry(structureID);
+		if(catalogueEntry!=null ? !catalogueEntry.getChains().contains(chainID)
+				: !structureID.matches(StockholmParser.pdbAcPattern))
+			return null;
+
+		return getStockholmData(structureID, chainID);
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import nl.ru.cmbi.vase.tools.util.CacheFiles;
+import nl.ru.cmbi.vase.tools.util.Config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores computed data objects on disk, as {@link VASESnapshot}s, so that they survive a restart.
+ *
+ * A file's name is made from the structure, the chain and a hash of everything the data was
+ * computed from: the source file's path, size and modification time, and the settings that
+ * change the outcome. When the source file changes, the old file is simply not found anymore.
+ * It's deleted when the new one is stored, or else by the cleanup.
+ *
+ * Reading an entry updates its modification time. When the files take more space than allowed,
+ * a background thread deletes the least recently used ones.
+ */
+public class VASEDiskCache {
+
+	static Logger log = LoggerFactory.getLogger(VASEDiskCache.class);
+
+	private static final VASEDiskCache instance = Config.resultCacheEnabled() ?
+			new VASEDiskCache(Config.getResultCacheDir(), Config.getResultCacheSize()) : null;
+
+	/**
+	 * @return null if no result cache is configured
+	 */
+	public static VASEDiskCache getInstance() {
+
+		return instance;
+	}
+
+	private static final long cleanupIntervalMinutes = 10;
+
+	private final File dir;
+
+	private final long maxSize;
+
+	private ScheduledExecutorService cleaner = null;
+
+	/**
+	 * @param maxSize in bytes
+	 */
+	public VASEDiskCache(File dir, long maxSize) {
+
+		this.dir = dir;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Starts cleaning up in the background, every few minutes.
+	 */
+	public synchronized void startCleaner() {
+
+		if(cleaner!=null)
+			return;
+
+		cleaner = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+
+				Thread thread = new Thread(r, "vase-disk-cache-cleanup");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		cleaner.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+
+				try {
+					cleanUp();
+
+				} catch(Exception e) {
+
+					log.error("cleaning up " + dir + ": " + e.getMessage(), e);
+				}
+			}
+		}, 0, cleanupIntervalMinutes, TimeUnit.MINUTES);
+	}
+
+	public synchronized void stopCleaner() {
+
+		if(cleaner!=null) {
+
+			cleaner.shutdownNow();
+			cleaner = null;
+		}
+	}
+
+	private static String getPrefix(String structureID, char chainID) {
+
+		return structureID.toLowerCase() + "_" + chainID + "_";
+	}
+
+	/**
+	 * @param source the file that the data is computed from
+	 */
+	public File getFile(String structureID, char chainID, File source) {
+
+		String inputs = source.getAbsolutePath() + "\n" + source.length() + "\n" + source.lastModified() + "\n"
+				+ VASESnapshot.version + "\n" + Config.getCmaTopScores();
+
+		return new File(dir, getPrefix(structureID, chainID) + CacheFiles.sha1Hex(inputs) + VASESnapshot.extension);
+	}
+
+	/**
+	 * @return null if there's no up to date entry
+	 */
+	public VASEDataObject get(String structureID, char chainID, File source) {
+
+		File file = getFile(structureID, chainID, source);
+		if(!file.isFile())
+			return null;
+
+		try {
+			VASEDataObject data = VASESnapshot.read(file);
+
+			file.setLastModified(System.currentTimeMillis());
+
+			return data;
+
+		} catch(IOException e) {
+
+			log.warn("removing unreadable " + file + ": " + e.getMessage());
+			file.delete();
+
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the data and removes older entries for the same structure and chain.
+	 */
+	public void put(String structureID, char chainID, File source, VASEDataObject data) throws IOException {
+
+		final File file = getFile(structureID, chainID, source);
+		final String prefix = getPrefix(structureID, chainID);
+
+		VASESnapshot.write(data, file);
+
+		File[] outdated = dir.listFiles(new FilenameFilter() {
+
+			@Override
+			public boolean accept(File d, String name) {
+
+				return name.startsWith(prefix) && name.endsWith(VASESnapshot.extension)
+						&& !name.equals(file.getName());
+			}
+		});
+		if(outdated!=null) {
+
+			for(File f : outdated) {
+
+				f.delete();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the total size is within bounds.
+	 */
+	public void cleanUp() {
+
+		int deleted = CacheFiles.trim(dir, VASESnapshot.extension, maxSize, null);
+		if(deleted > 0)
+			log.info("deleted " + deleted + " entries from " + dir);
+	}
+}
@@ -0,0 +1,318 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import nl.ru.cmbi.vase.data.VASEDataObject.PlotDescription;
+import nl.ru.cmbi.vase.data.stockholm.Alignment;
+
+/**
+ * A binary file format for {@link VASEDataObject}s. Unlike the xml format, it needs no parsing
+ * or checking: the alignment and table columns are stored as the arrays they're kept in.
+ *
+ * A file starts with a magic number and a version, followed by sections. Every section starts
+ * with a four letter tag and the length of its contents, so that readers can skip sections they
+ * don't know. The last section, "END ", holds the CRC32 checksum of all sections in front of it.
+ *
+ * Numbers are big-endian. Strings are stored as the length of their UTF-8 encoding followed by
+ * the encoding, or as -1 for null.
+ */
+public class VASESnapshot {
+
+	public static final String extension = ".vase";
+
+	public static final int version = 1;
+
+	private static final long magic = 0x56415345534E4150L; // "VASESNAP" in ascii
+
+	private static final int
+		metaTag = tag("META"),
+		alignmentTag = tag("ALGN"),
+		tableTag = tag("TABL"),
+		plotsTag = tag("PLOT"),
+		urlsTag = tag("URLS"),
+		endTag = tag("END ");
+
+	private static int tag(String name) {
+
+		return (name.charAt(0) << 24) | (name.charAt(1) << 16) | (name.charAt(2) << 8) | name.charAt(3);
+	}
+
+	public static void writeString(DataOutput out, String s) throws IOException {
+
+		if(s==null) {
+
+			out.writeInt(-1);
+		}
+		else {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	public static String readString(ByteBuffer in) {
+
+		int length = in.getInt();
+		if(length==-1)
+			return null;
+
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeSection(DataOutputStream out, int tag, ByteArrayOutputStream contents) throws IOException {
+
+		out.writeInt(tag);
+		out.writeInt(contents.size());
+		contents.writeTo(out);
+	}
+
+	/**
+	 * Does not close the output stream.
+	 */
+	public static void write(VASEDataObject data, OutputStream out) throws IOException {
+
+		CRC32 crc = new CRC32();
+		DataOutputStream dataOut = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(out), crc));
+
+		dataOut.writeLong(magic);
+		dataOut.writeInt(version);
+		crc.reset(); // the checksum covers the sections only
+
+		ByteArrayOutputStream contents = new ByteArrayOutputStream();
+		DataOutputStream contentsOut = new DataOutputStream(contents);
+
+		writeString(contentsOut, data.getTitle());
+		writeString(contentsOut, data.getPdbID());
+		writeSection(dataOut, metaTag, contents);
+
+		contents.reset();
+		data.getAlignment().writeSnapshot(contentsOut);
+		writeSection(dataOut, alignmentTag, contents);
+
+		contents.reset();
+		data.getTable().writeSnapshot(contentsOut);
+		writeSection(dataOut, tableTag, contents);
+
+		contents.reset();
+		contentsOut.writeInt(data.getPlots().size());
+		for(PlotDescription pd : data.getPlots()) {
+
+			writeString(contentsOut, pd.getPlotTitle());
+			writeString(contentsOut, pd.getXAxisColumnID());
+			writeString(contentsOut, pd.getYAxisColumnID());
+		}
+		writeSection(dataOut, plotsTag, contents);
+
+		contents.reset();
+		contentsOut.writeInt(data.getSequenceReferenceURLs().size());
+		for(Map.Entry<String, URL> entry : data.getSequenceReferenceURLs().entrySet()) {
+
+			writeString(contentsOut, entry.getKey());
+			writeString(contentsOut, entry.getValue().toString());
+		}
+		writeSection(dataOut, urlsTag, contents);
+
+		long checksum = crc.getValue();
+		dataOut.writeInt(endTag);
+		dataOut.writeInt(8);
+		dataOut.writeLong(checksum);
+
+		dataOut.flush();
+	}
+
+	/**
+	 * Writes to a temporary file first and then renames it, so that readers
+	 * never see a half written snapshot.
+	 */
+	public static void write(VASEDataObject data, File file) throws IOException {
+
+		File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				write(data, out);
+			}
+			finally {
+				out.close();
+			}
+
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			tmp.delete(); // if the move didn't happen
+		}
+	}
+
+	/**
+	 * Maps the file in memory, so that the arrays are filled straight from the page cache.
+	 */
+	public static VASEDataObject read(File file) throws IOException {
+
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static long checksum(ByteBuffer buffer, int start, int end) {
+
+		CRC32 crc = new CRC32();
+
+		ByteBuffer range = buffer.duplicate();
+		range.limit(end).position(start);
+
+		if(range.hasArray()) {
+
+			crc.update(range.array(), range.arrayOffset() + start, end - start);
+		}
+		else {
+			byte[] chunk = new byte[64 * 1024];
+			while(range.hasRemaining()) {
+
+				int n = Math.min(chunk.length, range.remaining());
+				range.get(chunk, 0, n);
+				crc.update(chunk, 0, n);
+			}
+		}
+		return crc.getValue();
+	}
+
+	private static ByteBuffer getSection(Map<Integer,ByteBuffer> sections, int tag) throws IOException {
+
+		ByteBuffer section = sections.get(tag);
+		if(section==null) {
+
+			throw new IOException("missing section in snapshot: " + tag);
+		}
+		return section;
+	}
+
+	/**
+	 * Doesn't change the position of the given buffer.
+	 */
+	public static VASEDataObject read(ByteBuffer buffer) throws IOException {
+
+		ByteBuffer in = buffer.duplicate();
+		in.order(ByteOrder.BIG_ENDIAN);
+
+		try {
+			if(in.remaining()<12 || in.getLong()!=magic) {
+
+				throw new IOException("not a VASE snapshot");
+			}
+			int fileVersion = in.getInt();
+			if(fileVersion!=version) {
+
+				throw new IOException("unsupported snapshot version: "+fileVersion);
+			}
+
+			// Find the sections, then check them before reading them:
+
+			int sectionsStart = in.position();
+			Map<Integer,ByteBuffer> sections = new HashMap<Integer,ByteBuffer>();
+			while(true) {
+
+				int sectionStart = in.position(),
+					tag = in.getInt(),
+					length = in.getInt();
+
+				if(length<0 || length>in.remaining()) {
+
+					throw new IOException("snapshot is truncated");
+				}
+
+				if(tag==endTag) {
+
+					if(in.getLong()!=checksum(in, sectionsStart, sectionStart)) {
+
+						throw new IOException("snapshot checksum mismatch");
+					}
+					break;
+				}
+
+				ByteBuffer section = in.slice();
+				section.limit(length);
+				sections.put(tag, section);
+
+				in.position(in.position() + length);
+			}
+
+			ByteBuffer meta = getSection(sections, metaTag);
+			String title = readString(meta),
+				pdbID = readString(meta);
+
+			VASEDataObject data = new VASEDataObject(
+				Alignment.readSnapshot(getSection(sections, alignmentTag)),
+				TableData.readSnapshot(getSection(sections, tableTag)),
+				pdbID);
+			data.setTitle(title);
+
+			ByteBuffer plots = getSection(sections, plotsTag);
+			int nplots = plots.getInt();
+			for(int i=0; i<nplots; i++) {
+
+				PlotDescription pd = new PlotDescription();
+				pd.setPlotTitle(readString(plots));
+				pd.setXAxisColumnID(readString(plots));
+				pd.setYAxisColumnID(readString(plots));
+				data.getPlots().add(pd);
+			}
+
+			ByteBuffer urls = getSection(sections, urlsTag);
+			int nurls = urls.getInt();
+			for(int i=0; i<nurls; i++) {
+
+				String id = readString(urls);
+				data.getSequenceReferenceURLs().put(id, new URL(readString(urls)));
+			}
+
+			return data;
+
+		} catch(BufferUnderflowException e) {
+
+			throw new IOException("snapshot is truncated", e);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data.pdb;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The residues of one pdb structure, by chain and by residue number.
+ * Parsed once and shared by all chains of the structure.
+ */
+public class PDBStructure implements Serializable {
+
+	private final Map<Character,Map<String,PDBResidueInfo>> residues = new LinkedHashMap<Character,Map<String,PDBResidueInfo>>();
+
+	// per chain, in the order of the pdb file
+	private final Map<Character,List<PDBResidueInfo>> residueOrder = new HashMap<Character,List<PDBResidueInfo>>();
+
+	/**
+	 * A residue number that's in the chain already, for example from an alternative location,
+	 * is skipped, so that the first residue with that number is kept.
+	 */
+	public void addResidue(PDBResidueInfo residue) {
+
+		char chainID = residue.getChain();
+
+		if(!residues.containsKey(chainID)) {
+
+			residues.put(chainID, new HashMap<String,PDBResidueInfo>());
+			residueOrder.put(chainID, new ArrayList<PDBResidueInfo>());
+		}
+
+		Map<String,PDBResidueInfo> chainResidues = residues.get(chainID);
+		if(chainResidues.containsKey(residue.getResidueNumber()))
+			return;
+
+		chainResidues.put(residue.getResidueNumber(), residue);
+		residueOrder.get(chainID).add(residue);
+	}
+
+	public Set<Character> listChainIDs() {
+
+		return residues.keySet();
+	}
+
+	public boolean hasChain(char chainID) {
+
+		return residues.containsKey(chainID);
+	}
+
+	/**
+	 * @param residueNumber includes insertion code
+	 * @return null if the chain or residue isn't in the structure
+	 */
+	public PDBResidueInfo getResidue(char chainID, String residueNumber) {
+
+		Map<String,PDBResidueInfo> chainResidues = residues.get(chainID);
+		if(chainResidues==null)
+			return null;
+
+		return chainResidues.get(residueNumber);
+	}
+
+	/**
+	 * @return the chain's residues in the order of the pdb file
+	 */
+	public List<PDBResidueInfo> getResidues(char chainID) {
+
+		if(!residueOrder.containsKey(chainID))
+			return Collections.emptyList();
+
+		return Collections.unmodifiableList(residueOrder.get(chainID));
+	}
+
+	public Map<Character,Map<String,PDBResidueInfo>> getResiduesPerChain() {
+
+		return residues;
+	}
+}
@@ -16,30 +16,56 @@
 package nl.ru.cmbi.vase.data.stockholm;
 
 import java.lang.StringBuilder;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 import java.lang.Math;
 
 import nl.ru.cmbi.vase.analysis.Calculator;
-import nl.ru.cmbi.vase.analysis.MutationDataObject;
-import nl.ru.cmbi.vase.tools.util.AminoAcid;
+import nl.ru.cmbi.vase.data.VASESnapshot;
 
+/**
+ * The residues of all aligned sequences are stored in one byte array, row by row.
+ * One byte per residue, instead of two per char in a String.
+ * 
+ * Strings and maps of the sequences are only made when asked for.
+ */
 public class Alignment implements Serializable {
 	
-	private LinkedHashMap<String,String> alignment = new LinkedHashMap<String,String>();
+	private final String[] labels;
+	
+	private final Map<String,Integer> labelRows = new HashMap<String,Integer>();
+	
+	// row after row, each row is 'length' bytes long
+	private final byte[] residues;
+	
+	// sequences might be shorter than the alignment
+	private final int[] seqLengths;
 	
 	private int length = 0;
 	
 	private char chainID;
 	
+	// Made on first use. Alignments are shared between threads, so these are volatile
+	// and only assigned once they're complete. Two threads might both make one, that's harmless.
+	
+	private transient volatile byte[] columnMajorResidues;
+	
+	private transient volatile Map<String,String> map;
+	
+	private transient volatile double[] sequenceWeights;
+	
 	public char getChainID() {
 		
 		return chainID;
@@ -47,35 +73,241 @@ public class Alignment implements Serializable {
 	
 	public Alignment(char chainID,LinkedHashMap<String,StringBuilder> seqs) {
 
+		this(chainID, seqs.entrySet());
+	}
+	public Alignment(Map<String,String> seqs) {
+
+		this('-', seqs.entrySet());
+	}
+	
+	private Alignment(char chainID, Collection<? extends Entry<String,? extends CharSequence>> seqs) {
+		
 		this.chainID=chainID;
 		
-		for (Entry<String,StringBuilder> e : seqs.entrySet()) {
-			
-			alignment.put(e.getKey(), e.getValue().toString());
+		for (Entry<String,? extends CharSequence> e : seqs) {
 			
 			length=Math.max(length,e.getValue().length());
 		}
+		
+		labels = new String[seqs.size()];
+		seqLengths = new int[seqs.size()];
+		residues = new byte[seqs.size() * length];
+		
+		int row=0;
+		for (Entry<String,? extends CharSequence> e : seqs) {
+			
+			CharSequence seq = e.getValue();
+			for(int i=0; i<seq.length(); i++) {
+				
+				residues[row * length + i] = (byte) seq.charAt(i);
+			}
+			
+			// The same labels occur in many alignments
+			labels[row] = e.getKey().intern();
+			labelRows.put(labels[row], row);
+			seqLengths[row] = seq.length();
+			
+			row++;
+		}
 	}
-	public Alignment(Map<String,String> seqs) {
-
-		this.chainID='-';
+	
+	private Alignment(char chainID, String[] labels, int[] seqLengths, byte[] residues, int length) {
+		
+		this.chainID=chainID;
+		this.labels=labels;
+		this.seqLengths=seqLengths;
+		this.residues=residues;
+		this.length=length;
 		
-		for (Entry<String,String> e : seqs.entrySet()) {
+		for(int row=0; row<labels.length; row++) {
 			
-			alignment.put(e.getKey(), e.getValue());
+			labelRows.put(labels[row], row);
+		}
+	}
+	
+	/**
+	 * @return a rough estimate of the number of bytes on the heap used by this alignment, including its caches
+	 */
+	public long estimateSize() {
+		
+		long size = residues.length + 4L * seqLengths.length;
+		for(String label : labels) {
 			
-			length=Math.max(length,e.getValue().length());
+			size += 64 + 2 * label.length(); // the string and its entry in labelRows
 		}
+		
+		if(columnMajorResidues!=null)
+			size += columnMajorResidues.length;
+		if(sequenceWeights!=null)
+			size += 8L * sequenceWeights.length;
+		if(map!=null)
+			size += 2L * residues.length;
+		
+		return size;
 	}
 	
+	/**
+	 * Writes the alignment's section of a {@link VASESnapshot}.
+	 */
+	public void writeSnapshot(DataOutput out) throws IOException {
+		
+		out.writeChar(chainID);
+		out.writeInt(labels.length);
+		out.writeInt(length);
+		
+		for(String label : labels) {
+			
+			VASESnapshot.writeString(out, label);
+		}
+		for(int seqLength : seqLengths) {
+			
+			out.writeInt(seqLength);
+		}
+		out.write(residues);
+	}
+	
+	/**
+	 * Reads what {@link #writeSnapshot(DataOutput)} wrote. The residues are copied from the buffer in one go.
+	 */
+	public static Alignment readSnapshot(ByteBuffer in) {
+		
+		char chainID = in.getChar();
+		int nseqs = in.getInt(),
+			length = in.getInt();
+		
+		String[] labels = new String[nseqs];
+		for(int row=0; row<nseqs; row++) {
+			
+			labels[row] = VASESnapshot.readString(in).intern();
+		}
+		
+		int[] seqLengths = new int[nseqs];
+		in.asIntBuffer().get(seqLengths);
+		in.position(in.position() + 4 * nseqs);
+		
+		byte[] residues = new byte[nseqs * length];
+		in.get(residues);
+		
+		return new Alignment(chainID, labels, seqLengths, residues, length);
+	}
+	
+	/**
+	 * @return the labels in row order, not a copy
+	 */
 	public List<String> getLabels() {
 		
-		return new ArrayList<String>(alignment.keySet());
+		return Collections.unmodifiableList(Arrays.asList(labels));
+	}
+	
+	public String getLabel(int row) {
+		
+		return labels[row];
+	}
+	
+	/**
+	 * @return the row of the given label, or -1 if it's not in the alignment
+	 */
+	public int getRow(String label) {
+		
+		Integer row = labelRows.get(label);
+		if(row==null)
+			return -1;
+		else
+			return row;
+	}
+	
+	/**
+	 * @return the residue at the given position, or '\0' if the sequence is shorter than the alignment
+	 */
+	public char getResidue(int row, int column) {
+		
+		return (char) (residues[row * length + column] & 0xff);
+	}
+	
+	/**
+	 * All residues, column after column: residue (row, column) is at column * countAlignedSeqs() + row.
+	 * Made on first use. The returned array must not be modified.
+	 */
+	public byte[] getColumnMajorResidues() {
+		
+		byte[] columnMajorResidues = this.columnMajorResidues;
+		if(columnMajorResidues==null) {
+			
+			int nseqs = labels.length;
+			byte[] transposed = new byte[residues.length];
+			for(int row=0; row<nseqs; row++) {
+				
+				for(int column=0; column<length; column++) {
+					
+					transposed[column * nseqs + row] = residues[row * length + column];
+				}
+			}
+			this.columnMajorResidues = columnMajorResidues = transposed;
+		}
+		return columnMajorResidues;
+	}
+	
+	/**
+	 * Copies one column's residues into the given array, which must have room for countAlignedSeqs() bytes.
+	 */
+	public void getColumn(int column, byte[] dest) {
+		
+		byte[] columnMajorResidues = this.columnMajorResidues;
+		if(columnMajorResidues!=null) {
+			
+			System.arraycopy(columnMajorResidues, column * labels.length, dest, 0, labels.length);
+		}
+		else {
+			for(int row=0; row<labels.length; row++) {
+				
+				dest[row] = residues[row * length + column];
+			}
+		}
+	}
+	
+	/**
+	 * @return the length of the sequence in the given row, which may be less than countColumns()
+	 */
+	public int getSeqLength(int row) {
+		
+		return seqLengths[row];
+	}
+	
+	public String getAlignedSeq(int row) {
+		
+		char[] seq = new char[seqLengths[row]];
+		for(int i=0; i<seq.length; i++) {
+			
+			seq[i] = (char) (residues[row * length + i] & 0xff);
+		}
+		return new String(seq);
 	}
 	
+	/**
+	 * @return columns start up to end of the sequence in the given row,
+	 * less if the sequence is shorter than that
+	 */
+	public String getAlignedSeq(int row, int start, int end) {
+
+		end = Math.min(end, seqLengths[row]);
+		if(start >= end)
+			return "";
+
+		char[] seq = new char[end - start];
+		for(int i=0; i<seq.length; i++) {
+
+			seq[i] = (char) (residues[row * length + start + i] & 0xff);
+		}
+		return new String(seq);
+	}
+
 	public String getAlignedSeq(String label) {
 		
-		return alignment.get(label);
+		int row = getRow(label);
+		if(row==-1)
+			return null;
+		
+		return getAlignedSeq(row);
 	}
 	
 	public int countColumns() {
@@ -85,11 +317,38 @@ public class Alignment implements Serializable {
 	
 	public int countAlignedSeqs() {
 		
-		return alignment.size();
+		return labels.length;
 	}
 	
+	/**
+	 * @return the weight of each sequence, in row order, see {@link Calculator#calculateSequenceWeights(Alignment)}.
+	 * Calculated on first use. The returned array must not be modified.
+	 */
+	public double[] getSequenceWeights() {
+		
+		double[] sequenceWeights = this.sequenceWeights;
+		if(sequenceWeights==null) {
+			
+			this.sequenceWeights = sequenceWeights = Calculator.calculateSequenceWeights(this);
+		}
+		return sequenceWeights;
+	}
+	
+	/**
+	 * @return label to sequence, in row order. Made on first use, not modifiable.
+	 */
 	public Map<String,String> getMap() {
 		
-		return alignment;
+		Map<String,String> map = this.map;
+		if(map==null) {
+			
+			Map<String,String> seqs = new LinkedHashMap<String,String>();
+			for(int row=0; row<labels.length; row++) {
+				
+				seqs.put(labels[row], getAlignedSeq(row));
+			}
+			this.map = map = Collections.unmodifiableMap(seqs);
+		}
+		return map;
 	}
 }
@@ -32,6 +32,9 @@ public class ResidueInfoSet implements Serializable {
 	
 	private Map<Character,Map<Integer,ResidueInfo>> residues = new HashMap<Character,Map<Integer,ResidueInfo>>();
 	
+	// residues per chain, ordered by seqno, built on demand and dropped when residues are added
+	private transient Map<Character,ResidueInfo[]> residueOrder;
+	
 	public void addChain(char chainID) {
 		
 		// IMPORTANT: need a sorted set of keys in this map:
@@ -45,6 +48,8 @@ public class ResidueInfoSet implements Serializable {
 			addChain(chainID);
 		
 		residues.get(chainID).put(seqno, new ResidueInfo());
+		
+		residueOrder = null; // chains may share their residues
 	}
 	
 	public Set<Character> listChainIDs() {
@@ -63,14 +68,20 @@ public class ResidueInfoSet implements Serializable {
 		return residues.get(chainID).get(seqno);
 	}
 
+	/**
+	 * @param residueInfoIndex position of the residue in the chain, counting from zero
+	 */
 	public ResidueInfo getResidueFromOrder(char chainID, int residueInfoIndex) {
 		
-		Integer keys[] = new Integer[]{};
-		keys = residues.get(chainID).keySet().toArray(keys);
+		if(residueOrder==null)
+			residueOrder = new HashMap<Character,ResidueInfo[]>();
 		
-		int key = keys[residueInfoIndex];
+		if(!residueOrder.containsKey(chainID)) {
+			
+			residueOrder.put(chainID, residues.get(chainID).values().toArray(new ResidueInfo[0]));
+		}
 		
-		return residues.get(chainID).get(key);
+		return residueOrder.get(chainID)[residueInfoIndex];
 	}
 
 	public void addChainReference(char sourceChain, char destChain) {
@@ -79,5 +90,7 @@ public class ResidueInfoSet implements Serializable {
 			addChain(sourceChain);
 		
 		residues.put(destChain, residues.get(sourceChain));
+		
+		residueOrder = null;
 	}
 }
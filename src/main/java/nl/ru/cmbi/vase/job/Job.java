@@ -0,0 +1,102 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.job;
+
+/**
+ * A custom structure that's being turned into a stockholm file by the {@link XsspService}.
+ *
+ * The status is the one that the service reported last, except that a job is only
+ * SUCCESS once its result is stored.
+ */
+public class Job {
+
+	public static final String
+		PENDING = "PENDING",
+		SUCCESS = "SUCCESS",
+		FAILURE = "FAILURE",
+		UNKNOWN = "UNKNOWN"; // for ids that aren't jobs
+
+	private final String id;
+
+	// null until the service has accepted the job
+	private String upstreamID;
+
+	private String status;
+
+	private long finishedAt = 0;
+
+	// consecutive failed calls to the service
+	int errors = 0;
+
+	// whether a worker is busy with this job
+	boolean busy = false;
+
+	Job(String id, String upstreamID, String status) {
+
+		this.id = id;
+		this.upstreamID = upstreamID;
+		this.status = status;
+
+		if(isFinished(status))
+			finishedAt = System.currentTimeMillis();
+	}
+
+	static boolean isFinished(String status) {
+
+		return status.equals(SUCCESS) || status.equals(FAILURE) || status.equals("REVOKED");
+	}
+
+	public String getId() {
+
+		return id;
+	}
+
+	public synchronized String getUpstreamID() {
+
+		return upstreamID;
+	}
+
+	synchronized void setUpstreamID(String upstreamID) {
+
+		this.upstreamID = upstreamID;
+	}
+
+	public synchronized String getStatus() {
+
+		return status;
+	}
+
+	synchronized void setStatus(String status) {
+
+		this.status = status;
+
+		if(isFinished(status))
+			finishedAt = System.currentTimeMillis();
+	}
+
+	public synchronized boolean isFinished() {
+
+		return isFinished(status);
+	}
+
+	/**
+	 * @return when the job finished, 0 if it hasn't
+	 */
+	public synchronized long getFinishedAt() {
+
+		return finishedAt;
+	}
+}
@@ -0,0 +1,620 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.job;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import nl.ru.cmbi.vase.parse.StockholmIndex;
+import nl.ru.cmbi.vase.parse.StructureCatalogue;
+import nl.ru.cmbi.vase.tools.util.Config;
+import nl.ru.cmbi.vase.tools.util.ParallelBZip2InputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the custom jobs, so that web requests never have to wait for the {@link XsspService}.
+ *
+ * Submitting a job stores the structure and returns a new job id right away. The structure is sent
+ * to the service by one of a fixed number of worker threads. If too many calls are waiting for a
+ * worker, new jobs are refused.
+ *
+ * Every few seconds, one thread asks the service for the status of all unfinished jobs, no matter how
+ * many clients are asking about them. When a job succeeds, its result is stored in the hssp cache
+ * before the job's status becomes SUCCESS.
+ *
+ * Clients that watch jobs can wait in {@link #waitForChanges(Map, long)} until a status changes,
+ * instead of asking again and again.
+ *
+ * For every job, the hssp cache holds &lt;id&gt;.pdb.gz, the submitted structure, &lt;id&gt;.job,
+ * the service's id for the job (empty until the service has accepted it), and in the end either
+ * &lt;id&gt;.hssp.bz2 (plus &lt;id&gt;.hssp.gz once it's been downloaded) or &lt;id&gt;.failed, the status
+ * the job ended with. So jobs can be picked up again after a restart. Jobs submitted
+ * before these job ids were introduced have only a .pdb.gz file and the service's id as their id.
+ */
+public class JobManager {
+
+	static Logger log = LoggerFactory.getLogger(JobManager.class);
+
+	private static final JobManager instance = !Config.isXmlOnly() && Config.hsspPdbCacheEnabled() ?
+			new JobManager(new XsspRestService(Config.getXsspURL()), Config.getHSSPCacheDir(),
+					Config.getJobThreads(), Config.getJobQueueSize(), Config.getJobWaiters()) : null;
+
+	/**
+	 * @return null if custom jobs aren't enabled
+	 */
+	public static JobManager getInstance() {
+
+		return instance;
+	}
+
+	private static final Pattern idPattern = Pattern.compile("^[0-9a-zA-Z\\-]+$");
+
+	// after this many failed calls in a row, the job is given up
+	private static final int maxErrors = 5;
+
+	// finished jobs are forgotten after a while, they can be found again from their files
+	private static final long finishedJobLifetime = TimeUnit.HOURS.toMillis(1);
+
+	// how long stop() waits for the jobs that are being sent
+	private static final long stopTimeoutSeconds = 10;
+
+	private final XsspService upstream;
+
+	private final File dir;
+
+	private final ThreadPoolExecutor workers;
+
+	private final ConcurrentHashMap<String,Job> jobs = new ConcurrentHashMap<String,Job>();
+
+	private ScheduledExecutorService poller = null;
+
+	// notified when a job's status may have changed
+	private final Object changes = new Object();
+
+	// counts the notifications, guarded by changes
+	private long changeCount = 0;
+
+	private final Semaphore waiters;
+
+	/**
+	 * @param dir where the structures and results are stored
+	 * @param nThreads how many calls to the service can be made at the same time
+	 * @param queueSize how many calls can wait for a thread
+	 * @param maxWaiters how many requests can wait for changes at the same time
+	 */
+	public JobManager(XsspService upstream, File dir, int nThreads, int queueSize, int maxWaiters) {
+
+		this.upstream = upstream;
+		this.dir = dir;
+		this.waiters = new Semaphore(maxWaiters);
+
+		workers = new ThreadPoolExecutor(nThreads, nThreads, 0, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+
+				Thread thread = new Thread(r, "vase-job-worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private File getPdbFile(String id) {
+
+		return new File(dir, id + ".pdb.gz");
+	}
+
+	private File getUpstreamIDFile(String id) {
+
+		return new File(dir, id + ".job");
+	}
+
+	private File getFailureFile(String id) {
+
+		return new File(dir, id + ".failed");
+	}
+
+	public File getHsspFile(String id) {
+
+		return new File(dir, id + ".hssp.bz2");
+	}
+
+	/**
+	 * Browsers don't take bzip2, so the result is also stored gzipped, to be sent as it is.
+	 * That copy is made from the .hssp.bz2 file the first time that it's asked for.
+	 *
+	 * @return the result of a successful job, gzipped
+	 * @throws FileNotFoundException if the job has no result (yet)
+	 */
+	public File getGzippedHsspFile(String id) throws IOException {
+
+		Job job = get(id);
+		if(job==null || !job.getStatus().equals(Job.SUCCESS))
+			throw new FileNotFoundException("no result for job " + id);
+
+		File hsspFile = getHsspFile(id),
+			 gzFile = new File(dir, id + ".hssp.gz");
+		if(gzFile.isFile() && gzFile.lastModified() >= hsspFile.lastModified())
+			return gzFile;
+
+		// two requests might both do this, but each one has its own temporary file
+		File tmp = File.createTempFile(gzFile.getName(), ".tmp", dir);
+		try {
+			InputStream in = ParallelBZip2InputStream.open(hsspFile);
+			try {
+				OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp));
+				try {
+					IOUtils.copy(in, out);
+				}
+				finally {
+					out.close();
+				}
+			}
+			finally {
+				in.close();
+			}
+
+			Files.move(tmp.toPath(), gzFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			tmp.delete();
+		}
+		return gzFile;
+	}
+
+	/**
+	 * Starts asking the service about the unfinished jobs, also the ones from before a restart.
+	 */
+	public synchronized void start(long pollIntervalSeconds) {
+
+		if(poller!=null)
+			return;
+
+		String[] unfinished = dir.list(new FilenameFilter() {
+
+			@Override
+			public boolean accept(File d, String name) {
+
+				return name.endsWith(".job");
+			}
+		});
+		if(unfinished!=null) {
+
+			for(String name : unfinished) {
+
+				get(name.substring(0, name.length() - ".job".length()));
+			}
+		}
+
+		poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+
+				Thread thread = new Thread(r, "vase-job-poller");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		poller.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+
+				try {
+					poll();
+
+				} catch(Exception e) {
+
+					log.error("polling jobs: " + e.getMessage(), e);
+				}
+			}
+		}, pollIntervalSeconds, pollIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Interrupts the jobs that are being sent and waits a little while for them to stop,
+	 * so that they don't write their files after this.
+	 */
+	public synchronized void stop() {
+
+		if(poller!=null) {
+
+			poller.shutdownNow();
+			poller = null;
+		}
+		workers.shutdownNow();
+
+		try {
+			if(!workers.awaitTermination(stopTimeoutSeconds, TimeUnit.SECONDS))
+				log.warn("jobs are still being sent after " + stopTimeoutSeconds + " seconds");
+
+		} catch(InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stores the structure and sends it to the service in the background.
+	 *
+	 * @throws RejectedExecutionException if too many jobs are waiting to be sent
+	 */
+	public Job submit(final String pdbContents) throws IOException {
+
+		final Job job = new Job(UUID.randomUUID().toString(), null, Job.PENDING);
+
+		OutputStream pdbOut = new GZIPOutputStream(new FileOutputStream(getPdbFile(job.getId())));
+		try {
+			IOUtils.write(pdbContents, pdbOut);
+		}
+		finally {
+			pdbOut.close();
+		}
+		// tells it apart from the old jobs, whose id is the service's id
+		FileUtils.writeStringToFile(getUpstreamIDFile(job.getId()), "", "UTF-8");
+
+		jobs.put(job.getId(), job);
+		try {
+			workers.execute(new Runnable() {
+
+				@Override
+				public void run() {
+
+					send(job, pdbContents);
+				}
+			});
+		} catch(RejectedExecutionException e) {
+
+			jobs.remove(job.getId());
+			getPdbFile(job.getId()).delete();
+			getUpstreamIDFile(job.getId()).delete();
+
+			throw e;
+		}
+
+		return job;
+	}
+
+	private void send(Job job, String pdbContents) {
+
+		try {
+			String upstreamID = upstream.submit(pdbContents);
+
+			FileUtils.writeStringToFile(getUpstreamIDFile(job.getId()), upstreamID, "UTF-8");
+			job.setUpstreamID(upstreamID);
+
+		} catch(Exception e) {
+
+			log.error("submitting job " + job.getId() + ": " + e.getMessage(), e);
+			storeFailure(job.getId(), Job.FAILURE);
+			job.setStatus(Job.FAILURE);
+
+			notifyChanges();
+		}
+	}
+
+	/**
+	 * Doesn't call the service, so it returns right away.
+	 *
+	 * @return the job, or null if there's no such job
+	 */
+	public Job get(String id) {
+
+		if(!idPattern.matcher(id).matches())
+			return null;
+
+		Job job = jobs.get(id);
+		if(job!=null)
+			return job;
+
+		// Not in memory, the files tell how far it got:
+		try {
+			if(getFailureFile(id).isFile()) {
+
+				job = new Job(id, null, FileUtils.readFileToString(getFailureFile(id), "UTF-8").trim());
+			}
+			else if(getHsspFile(id).isFile()) {
+
+				job = new Job(id, null, Job.SUCCESS);
+			}
+			else if(getUpstreamIDFile(id).isFile()) {
+
+				String upstreamID = FileUtils.readFileToString(getUpstreamIDFile(id), "UTF-8").trim();
+
+				// without the service's id, it was still being sent when the server stopped
+				job = upstreamID.isEmpty() ? new Job(id, null, Job.FAILURE) : new Job(id, upstreamID, Job.PENDING);
+			}
+			else if(getPdbFile(id).isFile()) {
+
+				// submitted when the service's id was the job id
+				job = new Job(id, id, Job.PENDING);
+			}
+			else return null;
+
+		} catch(IOException e) {
+
+			log.error("cannot read the files of job " + id + ": " + e.getMessage());
+			return null;
+		}
+
+		Job existing = jobs.putIfAbsent(id, job);
+		return existing!=null ? existing : job;
+	}
+
+	/**
+	 * Has the status of every unfinished job checked by the workers.
+	 * A job that's still being checked from the previous time is skipped.
+	 */
+	public void poll() {
+
+		long now = System.currentTimeMillis();
+
+		for(final Job job : jobs.values()) {
+
+			synchronized(job) {
+
+				if(job.isFinished()) {
+
+					if(now - job.getFinishedAt() > finishedJobLifetime) {
+
+						jobs.remove(job.getId());
+					}
+					continue;
+				}
+
+				if(job.getUpstreamID()==null || job.busy)
+					continue;
+
+				job.busy = true;
+			}
+
+			try {
+				workers.execute(new Runnable() {
+
+					@Override
+					public void run() {
+
+						try {
+							check(job);
+						}
+						finally {
+							synchronized(job) {
+
+								job.busy = false;
+							}
+							notifyChanges();
+						}
+					}
+				});
+			} catch(RejectedExecutionException e) {
+
+				// the workers are busy, try again next time
+				synchronized(job) {
+
+					job.busy = false;
+				}
+			}
+		}
+	}
+
+	private void check(Job job) {
+
+		try {
+			String status = upstream.getStatus(job.getUpstreamID());
+
+			if(status.equals(Job.SUCCESS)) {
+
+				store(job.getId(), upstream.getResult(job.getUpstreamID()));
+			}
+			else if(Job.isFinished(status)) {
+
+				storeFailure(job.getId(), status);
+			}
+			synchronized(job) {
+
+				job.errors = 0;
+				job.setStatus(status);
+			}
+
+		} catch(Exception e) {
+
+			log.warn("checking job " + job.getId() + ": " + e.getMessage());
+
+			int errors;
+			synchronized(job) {
+
+				errors = ++job.errors;
+			}
+			if(errors >= maxErrors) {
+
+				log.error("giving up job " + job.getId() + " after " + errors + " errors");
+				storeFailure(job.getId(), Job.FAILURE);
+				job.setStatus(Job.FAILURE);
+			}
+		}
+	}
+
+	/**
+	 * Keeps how a job ended without a result, so that it isn't sent to the service
+	 * again once it's been forgotten.
+	 */
+	private void storeFailure(String id, String status) {
+
+		try {
+			FileUtils.writeStringToFile(getFailureFile(id), status, "UTF-8");
+
+		} catch(IOException e) {
+
+			log.error("cannot write " + getFailureFile(id) + ": " + e.getMessage());
+		}
+	}
+
+	private void store(String id, String result) throws IOException {
+
+		File hsspFile = getHsspFile(id);
+
+		File tmp = File.createTempFile(hsspFile.getName(), ".tmp", dir);
+		try {
+			OutputStream out = new BZip2CompressorOutputStream(new FileOutputStream(tmp));
+			try {
+				out.write(result.getBytes(StandardCharsets.ISO_8859_1));
+			}
+			finally {
+				out.close();
+			}
+
+			Files.move(tmp.toPath(), hsspFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			tmp.delete();
+		}
+
+		getUpstreamIDFile(id).delete();
+
+		// index it now, so that searches find its chains
+		try {
+			StructureCatalogue.getInstance().get(id, hsspFile, StockholmIndex.getIndexFile(hsspFile));
+
+		} catch(IOException e) {
+
+			log.warn("cannot index " + hsspFile + ": " + e.getMessage());
+		}
+	}
+
+	private void notifyChanges() {
+
+		synchronized(changes) {
+
+			changeCount++;
+			changes.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until the status of one of the given jobs is different from the given one.
+	 * Only a limited number of requests can wait at the same time, the others get an answer right away.
+	 *
+	 * @param knownStatuses the statuses of the jobs as the client knows them, by job id. Null for jobs
+	 * whose status the client doesn't know.
+	 * @return the statuses that are different from the known ones, UNKNOWN for jobs that don't exist.
+	 * Empty if nothing changed before the time was up, null if nothing changed and too many are waiting
+	 * already, so that the client must try again later.
+	 */
+	public Map<String,String> waitForChanges(Map<String,String> knownStatuses, long timeoutMillis)
+			throws InterruptedException {
+
+		if(waiters.tryAcquire()) {
+
+			try {
+				return findChanges(knownStatuses, timeoutMillis);
+			}
+			finally {
+				waiters.release();
+			}
+		}
+
+		// too many are waiting already
+		Map<String,String> changed = findChanges(knownStatuses, 0);
+		if(changed.isEmpty())
+			return null;
+
+		return changed;
+	}
+
+	private Map<String,String> findChanges(Map<String,String> knownStatuses, long timeoutMillis)
+			throws InterruptedException {
+
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+
+		while(true) {
+
+			// taken before the lookups, so that no change in between is missed
+			long seen;
+			synchronized(changes) {
+
+				seen = changeCount;
+			}
+
+			// the lookups may read files, so they're done without holding the lock
+			Map<String,String> changed = new LinkedHashMap<String,String>();
+			for(Map.Entry<String,String> known : knownStatuses.entrySet()) {
+
+				Job job = get(known.getKey());
+				String status = job==null ? Job.UNKNOWN : job.getStatus();
+
+				if(!status.equals(known.getValue())) {
+
+					changed.put(known.getKey(), status);
+				}
+			}
+			if(!changed.isEmpty())
+				return changed;
+
+			synchronized(changes) {
+
+				while(changeCount==seen) {
+
+					long remaining = deadline - System.currentTimeMillis();
+					if(remaining<=0)
+						return changed;
+
+					changes.wait(remaining);
+				}
+			}
+		}
+	}
+
+	public int countUnfinished() {
+
+		int n = 0;
+		for(Job job : jobs.values()) {
+
+			if(!job.isFinished())
+				n++;
+		}
+		return n;
+	}
+}
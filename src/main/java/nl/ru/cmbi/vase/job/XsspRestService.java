@@ -0,0 +1,103 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.job;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+import org.restlet.data.Disposition;
+import org.restlet.data.MediaType;
+import org.restlet.ext.html.FormData;
+import org.restlet.ext.html.FormDataSet;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.ClientResource;
+
+/**
+ * Talks to the xssp REST api.
+ */
+public class XsspRestService implements XsspService {
+
+	private static final int connectTimeout = 10000, readTimeout = 60000;
+
+	private final String apiURL;
+
+	/**
+	 * @param apiURL for example http://www.cmbi.ru.nl/xssp/api
+	 */
+	public XsspRestService(String apiURL) {
+
+		this.apiURL = apiURL;
+	}
+
+	private JSONObject get(String path) throws Exception {
+
+		URLConnection connection = new URL(apiURL + path).openConnection();
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+
+		InputStream in = connection.getInputStream();
+		try {
+			return new JSONObject(IOUtils.toString(in, "UTF-8"));
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	@Override
+	public String submit(String pdbContents) throws Exception {
+
+		StringRepresentation entity = new StringRepresentation(pdbContents, MediaType.TEXT_PLAIN);
+		Disposition disposition = new Disposition();
+		disposition.setFilename("custom.pdb");
+		entity.setDisposition(disposition);
+
+		FormDataSet fds = new FormDataSet();
+		fds.setMultipart(true);
+		fds.getEntries().add(new FormData("file_", entity));
+
+		ClientResource resource = new ClientResource(apiURL + "/create/pdb_file/hssp_stockholm/");
+		try {
+			Representation response = resource.post(fds);
+			if(response==null) {
+
+				throw new IOException("no response from " + resource.getReference());
+			}
+
+			return new JSONObject(response.getText()).getString("id");
+		}
+		finally {
+			resource.release();
+		}
+	}
+
+	@Override
+	public String getStatus(String jobID) throws Exception {
+
+		return get("/status/pdb_file/hssp_stockholm/" + jobID + "/").getString("status");
+	}
+
+	@Override
+	public String getResult(String jobID) throws Exception {
+
+		return get("/result/pdb_file/hssp_stockholm/" + jobID + "/").getString("result");
+	}
+}
@@ -13,27 +13,26 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package nl.ru.cmbi.vase.web.panel;
+package nl.ru.cmbi.vase.job;
 
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+/**
+ * The service that makes stockholm files from custom structures.
+ * Its calls may take long, so they're only made from the {@link JobManager}'s threads.
+ */
+public interface XsspService {
 
-import lombok.Data;
+	/**
+	 * @return the service's id for the new job
+	 */
+	public String submit(String pdbContents) throws Exception;
 
-@Data
-public class ScatterPlotOptions implements Serializable {
-	
-	private String xAxisTitle="",  yAxisTitle="";
-	
-	private double imagePixWidth, imagePixHeight, //The size of the image in pixels
-	
-		minX,maxX,minY,maxY, // The range on the X and Y axis respectively
-	
-		xStepSize, yStepSize; // the step sizes on the scales.
-	
-	private List<? extends Number> // The values themselves :
-		xValues = new ArrayList<Double>(),
-		yValues = new ArrayList<Double>();
+	/**
+	 * @return PENDING, STARTED, SUCCESS or FAILURE
+	 */
+	public String getStatus(String jobID) throws Exception;
 
+	/**
+	 * @return the stockholm file, only when the status is SUCCESS
+	 */
+	public String getResult(String jobID) throws Exception;
 }
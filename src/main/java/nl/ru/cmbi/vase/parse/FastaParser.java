@@ -78,4 +78,65 @@ public class FastaParser {
 		
 		return map;
 	}
+
+	/**
+	 * Collects sequences from fasta text that comes in pieces, like the character
+	 * events of an xml parser. Follows the same rules as parseFasta.
+	 */
+	public static class Builder {
+		
+		private final LinkedHashMap<String,StringBuilder> seqs = new LinkedHashMap<String,StringBuilder>();
+		
+		private final StringBuilder line = new StringBuilder();
+		
+		private StringBuilder currentSeq = null;
+		
+		public void append(char[] chars, int start, int length) {
+			
+			for(int i=start; i<start+length; i++) {
+				
+				if(chars[i]=='\n' || chars[i]=='\r') {
+					
+					endOfLine();
+				}
+				else line.append(chars[i]);
+			}
+		}
+		
+		private void endOfLine() {
+			
+			// like String.trim
+			int start=0, end=line.length();
+			while(start<end && line.charAt(start)<=' ') start++;
+			while(end>start && line.charAt(end-1)<=' ') end--;
+			
+			if(start<end) {
+				
+				if(line.charAt(start)=='>') {
+					
+					currentSeq = new StringBuilder();
+					seqs.put(line.substring(start+1, end), currentSeq);
+				}
+				else {
+					if(currentSeq==null) {
+						
+						currentSeq = new StringBuilder();
+						seqs.put("", currentSeq);
+					}
+					currentSeq.append(line, start, end);
+				}
+			}
+			
+			line.setLength(0);
+		}
+		
+		/**
+		 * @return the sequences by id, in the order of the fasta text
+		 */
+		public LinkedHashMap<String,StringBuilder> finish() {
+			
+			endOfLine();
+			return seqs;
+		}
+	}
 }
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.parse;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import nl.ru.cmbi.vase.tools.util.Config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the {@link StructureCatalogue} up to date with the hsspmount tree, so that
+ * the chains and alignment sizes of all structures are known before anyone asks for them.
+ *
+ * A low priority thread first indexes every stockholm file in the directory that isn't in
+ * the catalogue yet. Then it waits for files to be added, changed or removed.
+ * Not every file system reports changes, network mounts often don't,
+ * so the directory is also scanned again every hour.
+ */
+public class HsspMountCrawler implements Runnable {
+
+	static Logger log = LoggerFactory.getLogger(HsspMountCrawler.class);
+
+	private static final HsspMountCrawler instance = Config.hasHsspMount() && Config.crawlHsspMount() ?
+			new HsspMountCrawler(Config.getHsspMountDir(), StructureCatalogue.getInstance()) : null;
+
+	/**
+	 * @return null if there's no hsspmount or it shouldn't be crawled
+	 */
+	public static HsspMountCrawler getInstance() {
+
+		return instance;
+	}
+
+	private static final String suffix = ".hssp.bz2";
+
+	private static final long rescanIntervalMinutes = 60;
+
+	private final Path dir;
+
+	private final StructureCatalogue catalogue;
+
+	private Thread thread = null;
+
+	public HsspMountCrawler(File dir, StructureCatalogue catalogue) {
+
+		this.dir = dir.toPath();
+		this.catalogue = catalogue;
+	}
+
+	public synchronized void start() {
+
+		if(thread!=null)
+			return;
+
+		thread = new Thread(this, "vase-hsspmount-crawler");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	public synchronized void stop() {
+
+		if(thread!=null) {
+
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	@Override
+	public void run() {
+
+		try {
+			WatchService watcher = dir.getFileSystem().newWatchService();
+			try {
+				// Before the scan, so that no change during the scan is missed.
+				dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+
+				scan();
+
+				while(!Thread.currentThread().isInterrupted()) {
+
+					WatchKey key = watcher.poll(rescanIntervalMinutes, TimeUnit.MINUTES);
+					if(key==null) {
+
+						scan();
+						continue;
+					}
+
+					boolean overflow = false;
+					for(WatchEvent<?> event : key.pollEvents()) {
+
+						if(event.kind()==OVERFLOW)
+
+							overflow = true;
+						else
+							update(dir.resolve((Path) event.context()));
+					}
+
+					// some events were lost
+					if(overflow)
+						scan();
+
+					if(!key.reset()) {
+
+						log.error(dir + " can't be watched anymore");
+						break;
+					}
+				}
+			}
+			finally {
+				watcher.close();
+			}
+		} catch(InterruptedException e) {
+
+			// stopped
+
+		} catch(ClosedWatchServiceException e) {
+
+			// stopped
+
+		} catch(IOException e) {
+
+			log.error("crawling " + dir + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return null if the file isn't a stockholm file of a pdb entry
+	 */
+	private static String getStructureID(Path file) {
+
+		String name = file.getFileName().toString();
+		if(!name.endsWith(suffix))
+			return null;
+
+		String structureID = name.substring(0, name.length() - suffix.length());
+		if(!structureID.matches(StockholmParser.pdbAcPattern))
+			return null;
+
+		return structureID;
+	}
+
+	private boolean isInDir(StructureCatalogue.Entry entry) {
+
+		return dir.toAbsolutePath().toFile().equals(entry.getSourceFile().getParentFile());
+	}
+
+	/**
+	 * Puts every stockholm file in the directory in the catalogue and removes the
+	 * entries whose files are gone. Entries of files elsewhere, like the results of
+	 * custom jobs, are left alone.
+	 *
+	 * @return the number of stockholm files in the directory
+	 */
+	public int scan() throws IOException {
+
+		long start = System.currentTimeMillis();
+
+		Set<String> found = new HashSet<String>();
+
+		DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + suffix);
+		try {
+			for(Path file : stream) {
+
+				if(Thread.currentThread().isInterrupted())
+					return found.size();
+
+				String structureID = getStructureID(file);
+				if(structureID!=null) {
+
+					found.add(structureID.toLowerCase());
+					update(file);
+				}
+			}
+		}
+		finally {
+			stream.close();
+		}
+
+		// An empty listing more likely means that the mount is gone than that all files are.
+		if(!found.isEmpty()) {
+
+			for(StructureCatalogue.Entry entry : catalogue.getEntries()) {
+
+				if(isInDir(entry) && !found.contains(entry.getStructureID())) {
+
+					catalogue.remove(entry);
+				}
+			}
+		}
+
+		log.info(String.format("scanned %d files in %s in %d seconds, the catalogue has %d entries",
+				found.size(), dir, (System.currentTimeMillis() - start) / 1000, catalogue.size()));
+
+		return found.size();
+	}
+
+	/**
+	 * Brings the catalogue entry of a single file up to date.
+	 */
+	private void update(Path file) {
+
+		String structureID = getStructureID(file);
+		if(structureID==null)
+			return;
+
+		File hsspFile = file.toFile();
+		StructureCatalogue.Entry entry = catalogue.get(structureID);
+		if(!hsspFile.isFile()) {
+
+			if(entry!=null && entry.getSourceFile().equals(hsspFile.getAbsoluteFile()))
+				catalogue.remove(entry);
+			return;
+		}
+
+		if(entry!=null && entry.isUpToDate(hsspFile))
+			return;
+
+		try {
+			catalogue.get(structureID, hsspFile, StockholmIndex.getIndexFile(hsspFile));
+
+		} catch(IOException e) {
+
+			// Probably still being written, a later event or scan will try again.
+			log.debug("cannot index " + hsspFile + ": " + e.getMessage());
+		}
+	}
+}
@@ -26,14 +26,21 @@ import java.util.List;
 import java.util.Map;
 
 import nl.ru.cmbi.vase.data.pdb.PDBResidueInfo;
+import nl.ru.cmbi.vase.data.pdb.PDBStructure;
 
 public class PDBParser {
 	
 	private static final List<String> proteinBackboneAtoms = Arrays.asList(new String[] {"CA","C","N","O"});
 	
-	public static Map<Character,Map<String,PDBResidueInfo>> parseResidues(InputStream pdbIn) throws IOException {
+	/**
+	 * Reads the residues of all chains in one pass. The stream is read up to the end of
+	 * the first model, but not closed.
+	 */
+	public static PDBStructure parseStructure(InputStream pdbIn) throws IOException {
+		
+		PDBStructure structure = new PDBStructure();
 		
-		Map<Character,Map<String,PDBResidueInfo>> residues = new HashMap<Character,Map<String,PDBResidueInfo>>();
+		// atoms seen so far, per chain and residue number
 		Map<String,List<String>> residueAtoms = new HashMap<String,List<String>>();
 		
 		BufferedReader reader = new BufferedReader(new InputStreamReader(pdbIn));
@@ -55,26 +62,28 @@ public class PDBParser {
 						resNumber	= line.substring(22,27).trim(); // includes insertion code
 				char chain = line.charAt(21);
 				
-				if(!residueAtoms.containsKey(resNumber)) {
-					residueAtoms.put(resNumber, new ArrayList<String>());
+				String residueKey = chain + resNumber;
+				
+				if(!residueAtoms.containsKey(residueKey)) {
+					residueAtoms.put(residueKey, new ArrayList<String>());
 				}
 				
-				residueAtoms.get(resNumber).add(atomName);
+				residueAtoms.get(residueKey).add(atomName);
 				
-				if( residueAtoms.get(resNumber).containsAll(proteinBackboneAtoms) ) {
-					
-					if(!residues.containsKey(chain)) {
-						
-						residues.put(chain, new HashMap<String,PDBResidueInfo>());
-					}
+				if( residueAtoms.get(residueKey).containsAll(proteinBackboneAtoms) ) {
 					
-					residues.get(chain).put(resNumber, new PDBResidueInfo(chain,resNumber,resName));
+					structure.addResidue(new PDBResidueInfo(chain,resNumber,resName));
 					
-					residueAtoms.remove(resNumber); // to prevent adding it twice
+					residueAtoms.remove(residueKey); // to prevent adding it twice
 				}
 			}
 		}
 		
-		return residues;
+		return structure;
+	}
+	
+	public static Map<Character,Map<String,PDBResidueInfo>> parseResidues(InputStream pdbIn) throws IOException {
+		
+		return parseStructure(pdbIn).getResiduesPerChain();
 	}
 }
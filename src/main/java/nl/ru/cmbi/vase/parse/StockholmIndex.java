@@ -0,0 +1,632 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.parse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nl.ru.cmbi.vase.tools.util.BZip2Blocks;
+import nl.ru.cmbi.vase.tools.util.BZip2Blocks.Block;
+import nl.ru.cmbi.vase.tools.util.Config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sidecar index for a .hssp.bz2 file.
+ *
+ * Every chain in a stockholm file has its own section, ending with "//".
+ * The index remembers where each section starts and ends in the decompressed text
+ * and which bzip2 blocks hold that text, so that one chain can be read by decompressing
+ * only those blocks.
+ *
+ * Some lines influence the parsing of sections other than the one they're in:
+ * the PDBID line and the "Chain X is considered to be the same as" lines.
+ * These are stored in the index as well and put in front of the section when it's read.
+ *
+ * The index also tells how many sequences each chain's alignment has and how long it is,
+ * so that these can be known without reading the section.
+ */
+public class StockholmIndex {
+
+	static Logger log = LoggerFactory.getLogger(StockholmIndex.class);
+
+	private static final String formatHeader = "vase-stockholm-index 2";
+
+	// identifies the version of the hssp file that the index was built from
+	private long sourceLength, sourceLastModified;
+
+	private List<Block> blocks = new ArrayList<Block>();
+
+	// decompressed offset and length of each block
+	private List<long[]> blockRanges = new ArrayList<long[]>();
+
+	// decompressed offset and length of each chain's section
+	private Map<Character,long[]> chainRanges = new LinkedHashMap<Character,long[]>();
+
+	private Map<Character,Character> aliases = new LinkedHashMap<Character,Character>();
+
+	// number of sequences and aligned length of each chain's alignment
+	private Map<Character,int[]> chainSizes = new LinkedHashMap<Character,int[]>();
+
+	// lines that must be parsed before a chain's section
+	private Map<Character,List<String>> contextLines = new LinkedHashMap<Character,List<String>>();
+
+	/**
+	 * @return all chains that can be opened, including the ones that are the same as another chain
+	 */
+	public Set<Character> listChains() {
+
+		Set<Character> chains = new HashSet<Character>(chainRanges.keySet());
+		chains.addAll(aliases.keySet());
+		return chains;
+	}
+
+	/**
+	 * @return the chain whose section holds the alignment for the given chain,
+	 * or null if the chain isn't in the file
+	 */
+	public Character getSourceChain(char chain) {
+
+		if(chainRanges.containsKey(chain))
+			return chain;
+		else
+			return aliases.get(chain);
+	}
+
+	public Map<Character,Character> getAliases() {
+
+		return aliases;
+	}
+
+	/**
+	 * @return the number of sequences in the chain's alignment, 0 if the chain isn't in the file
+	 */
+	public int getAlignmentDepth(char chain) {
+
+		Character source = getSourceChain(chain);
+		if(source==null || !chainSizes.containsKey(source))
+			return 0;
+
+		return chainSizes.get(source)[0];
+	}
+
+	/**
+	 * @return the number of columns in the chain's alignment, 0 if the chain isn't in the file
+	 */
+	public int getAlignmentLength(char chain) {
+
+		Character source = getSourceChain(chain);
+		if(source==null || !chainSizes.containsKey(source))
+			return 0;
+
+		return chainSizes.get(source)[1];
+	}
+
+	public long getSourceLength() {
+
+		return sourceLength;
+	}
+
+	public long getSourceLastModified() {
+
+		return sourceLastModified;
+	}
+
+	public boolean isUpToDate(File hsspFile) {
+
+		return hsspFile.length()==sourceLength && hsspFile.lastModified()==sourceLastModified;
+	}
+
+	/**
+	 * The hsspmount tree might not be writable, so indices go into the hssp cache if possible.
+	 *
+	 * @return where the index of the given file should be stored, or null if it can't be stored
+	 */
+	public static File getIndexFile(File hsspFile) {
+
+		if(Config.hsspPdbCacheEnabled())
+
+			return new File(Config.getHSSPCacheDir(), hsspFile.getName() + ".idx");
+
+		else if(hsspFile.getAbsoluteFile().getParentFile().canWrite())
+
+			return new File(hsspFile.getAbsoluteFile().getParentFile(), hsspFile.getName() + ".idx");
+		else
+			return null;
+	}
+
+	/**
+	 * Reads the index from indexFile if it's there and up to date. Otherwise, builds it
+	 * and tries to store it in indexFile.
+	 *
+	 * @param indexFile may be null, if the index can't be stored.
+	 */
+	public static StockholmIndex get(File hsspFile, File indexFile) throws IOException {
+
+		if(indexFile!=null && indexFile.isFile()) {
+
+			try {
+				StockholmIndex index = read(indexFile);
+				if(index.isUpToDate(hsspFile)) {
+
+					return index;
+				}
+			} catch (IOException e) {
+
+				log.warn("unreadable index " + indexFile + ": " + e.getMessage());
+			}
+		}
+
+		StockholmIndex index = build(hsspFile);
+
+		if(indexFile!=null) {
+
+			try {
+				index.write(indexFile);
+
+			} catch (IOException e) {
+
+				log.warn("cannot write index " + indexFile + ": " + e.getMessage());
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Decompresses the whole file once, block by block, to find the chain sections.
+	 */
+	public static StockholmIndex build(File hsspFile) throws IOException {
+
+		StockholmIndex index = new StockholmIndex();
+		index.sourceLength = hsspFile.length();
+		index.sourceLastModified = hsspFile.lastModified();
+
+		SectionFinder finder = index.new SectionFinder();
+
+		List<Block> candidates = BZip2Blocks.scan(hsspFile);
+
+		long offset=0;
+		int i=0;
+		while(i<candidates.size()) {
+
+			// A false magic number splits a block in two, so try joining it with the next one.
+			int j=i+1;
+			long length=-1;
+			Block block=null;
+			while(j<=candidates.size()) {
+
+				block = join(candidates.subList(i, j));
+				length = tryDecompress(hsspFile, block, finder, offset);
+				if(length>=0) break;
+
+				j++;
+			}
+			if(length<0) {
+
+				throw new IOException("cannot decompress "+hsspFile+" from bit "+candidates.get(i).getBitOffset());
+			}
+
+			index.blocks.add(block);
+			index.blockRanges.add(new long[] {offset, length});
+
+			offset+=length;
+			i=j;
+		}
+
+		finder.finish();
+
+		return index;
+	}
+
+	private static Block join(List<Block> blocks) {
+
+		Block first = blocks.get(0), last = blocks.get(blocks.size()-1);
+
+		return new Block(first.getBitOffset(),
+				last.getBitOffset() + last.getBitLength() - first.getBitOffset(), first.getCrc());
+	}
+
+	/**
+	 * @return the decompressed length of the block, or -1 if it's not a valid block
+	 */
+	private static long tryDecompress(File hsspFile, Block block, SectionFinder finder, long offset) {
+
+		ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+		try {
+			InputStream in = BZip2Blocks.open(hsspFile, Collections.singletonList(block));
+			byte[] buffer = new byte[8192];
+			int n;
+			while((n=in.read(buffer))!=-1) {
+				decompressed.write(buffer, 0, n);
+			}
+			in.close();
+
+		} catch (IOException e) {
+
+			return -1;
+		}
+
+		byte[] bytes = decompressed.toByteArray();
+		finder.feed(bytes, offset);
+		return bytes.length;
+	}
+
+	/**
+	 * Walks through the decompressed text line by line and records the chain sections.
+	 */
+	private class SectionFinder {
+
+		private final StockholmTokenizer tokenizer = new StockholmTokenizer();
+
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		private long lineStart=0, sectionStart=0;
+
+		private Character sectionChain=null;
+
+		private String pdbIDLine=null, pdbIDLineBeforeSection=null;
+
+		private Map<Character,List<String>> equalChainsLines = new LinkedHashMap<Character,List<String>>();
+
+		// summed length of each label's sequence lines in the current section
+		private Map<String,Integer> sequenceLengths = new HashMap<String,Integer>();
+
+		public void feed(byte[] bytes, long offset) {
+
+			for(int i=0; i<bytes.length; i++) {
+
+				if(bytes[i]=='\n') {
+
+					endOfLine(offset + i + 1);
+				}
+				else line.write(bytes[i]);
+			}
+		}
+
+		public void finish() {
+
+			if(line.size()>0) {
+
+				endOfLine(lineStart + line.size());
+			}
+
+			for(Character chain : chainRanges.keySet()) {
+
+				if(equalChainsLines.containsKey(chain) && contextLines.containsKey(chain)) {
+
+					contextLines.get(chain).addAll(equalChainsLines.get(chain));
+				}
+			}
+		}
+
+		private void endOfLine(long nextLineStart) {
+
+			String text = new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+			line.reset();
+
+			switch(tokenizer.next(text)) {
+
+			case PDBID:
+
+				pdbIDLine = text;
+				break;
+
+			case CHAIN:
+
+				sectionChain = tokenizer.getChain();
+				break;
+
+			case EQUAL_CHAINS:
+
+				char source = tokenizer.getChain();
+				for(int i=0; i<tokenizer.countEqualChains(); i++) {
+
+					aliases.put(tokenizer.getEqualChain(i), source);
+				}
+				if(!equalChainsLines.containsKey(source)) {
+
+					equalChainsLines.put(source, new ArrayList<String>());
+				}
+				equalChainsLines.get(source).add(text);
+				break;
+
+			case SEQUENCE:
+
+				// a long sequence can be spread over several lines with the same label
+				Integer summed = sequenceLengths.get(tokenizer.getId());
+				sequenceLengths.put(tokenizer.getId(),
+						(summed==null ? 0 : summed) + tokenizer.getSequence().length());
+				break;
+
+			case END_OF_CHAIN:
+
+				if(sectionChain!=null) {
+
+					chainRanges.put(sectionChain, new long[] {sectionStart, nextLineStart - sectionStart});
+
+					List<String> context = new ArrayList<String>();
+					if(pdbIDLineBeforeSection!=null) {
+
+						context.add(pdbIDLineBeforeSection);
+					}
+					contextLines.put(sectionChain, context);
+
+					int alignmentLength = 0;
+					for(int seqLength : sequenceLengths.values()) {
+
+						alignmentLength = Math.max(alignmentLength, seqLength);
+					}
+					chainSizes.put(sectionChain, new int[] {sequenceLengths.size(), alignmentLength});
+				}
+				sequenceLengths.clear();
+
+				sectionChain = null;
+				sectionStart = nextLineStart;
+				pdbIDLineBeforeSection = pdbIDLine;
+				break;
+
+			default:
+				break;
+			}
+
+			lineStart = nextLineStart;
+		}
+	}
+
+	/**
+	 * Decompresses only the blocks that hold the requested chain.
+	 *
+	 * @return the chain's section of the stockholm file, or null if the chain isn't in the index
+	 */
+	public InputStream openChain(File hsspFile, char chain) throws IOException {
+
+		Character source = getSourceChain(chain);
+		if(source==null) {
+
+			return null;
+		}
+
+		long[] range = chainRanges.get(source);
+		long start = range[0], end = range[0] + range[1];
+
+		List<Block> needed = new ArrayList<Block>();
+		long neededStart=-1;
+		for(int i=0; i<blocks.size(); i++) {
+
+			long blockStart = blockRanges.get(i)[0],
+				 blockEnd = blockStart + blockRanges.get(i)[1];
+
+			if(blockEnd>start && blockStart<end) {
+
+				if(needed.isEmpty()) {
+
+					neededStart = blockStart;
+				}
+				needed.add(blocks.get(i));
+			}
+		}
+
+		InputStream sectionIn = BZip2Blocks.open(hsspFile, needed);
+		skipFully(sectionIn, start - neededStart);
+
+		StringBuilder context = new StringBuilder();
+		for(String line : contextLines.get(source)) {
+
+			context.append(line).append('\n');
+		}
+
+		return new SequenceInputStream(
+				new ByteArrayInputStream(context.toString().getBytes(StandardCharsets.ISO_8859_1)),
+				new LimitedInputStream(sectionIn, end - start));
+	}
+
+	private static void skipFully(InputStream in, long n) throws IOException {
+
+		while(n>0) {
+
+			long skipped = in.skip(n);
+			if(skipped<=0) {
+
+				if(in.read()==-1) {
+					throw new IOException("unexpected end of data");
+				}
+				skipped=1;
+			}
+			n-=skipped;
+		}
+	}
+
+	private static class LimitedInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		public LimitedInputStream(InputStream in, long limit) {
+
+			super(in);
+			remaining=limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+
+			if(remaining<=0) return -1;
+
+			int b = super.read();
+			if(b!=-1) remaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+
+			if(remaining<=0) return -1;
+
+			int n = super.read(buffer, offset, (int)Math.min(length, remaining));
+			if(n>0) remaining-=n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining-=skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+
+			return (int)Math.min(super.available(), remaining);
+		}
+	}
+
+	public void write(File indexFile) throws IOException {
+
+		// Write to a temporary file first, so that readers never see half an index.
+		File tmp = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.ISO_8859_1);
+		try {
+			writer.write(formatHeader + "\n");
+			writer.write(String.format("source %d %d\n", sourceLength, sourceLastModified));
+
+			for(int i=0; i<blocks.size(); i++) {
+
+				Block block = blocks.get(i);
+				writer.write(String.format("block %d %d %d %d %d\n",
+						block.getBitOffset(), block.getBitLength(), block.getCrc(),
+						blockRanges.get(i)[0], blockRanges.get(i)[1]));
+			}
+			for(Character chain : chainRanges.keySet()) {
+
+				writer.write(String.format("chain %c %d %d\n", chain, chainRanges.get(chain)[0], chainRanges.get(chain)[1]));
+			}
+			for(Character chain : chainSizes.keySet()) {
+
+				writer.write(String.format("size %c %d %d\n", chain, chainSizes.get(chain)[0], chainSizes.get(chain)[1]));
+			}
+			for(Character chain : aliases.keySet()) {
+
+				writer.write(String.format("alias %c %c\n", chain, aliases.get(chain)));
+			}
+			for(Character chain : contextLines.keySet()) {
+
+				for(String line : contextLines.get(chain)) {
+
+					writer.write(String.format("context %c %s\n", chain, line));
+				}
+			}
+		}
+		finally {
+			writer.close();
+		}
+
+		if(!tmp.renameTo(indexFile)) {
+
+			indexFile.delete();
+			if(!tmp.renameTo(indexFile)) {
+
+				tmp.delete();
+				throw new IOException("cannot rename "+tmp+" to "+indexFile);
+			}
+		}
+	}
+
+	public static StockholmIndex read(File indexFile) throws IOException {
+
+		StockholmIndex index = new StockholmIndex();
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(indexFile), StandardCharsets.ISO_8859_1));
+		try {
+			if(!formatHeader.equals(reader.readLine())) {
+
+				throw new IOException("not an index file: "+indexFile);
+			}
+
+			String line;
+			while((line=reader.readLine())!=null) {
+
+				String[] s = line.split(" ", 3);
+
+				if(s[0].equals("source")) {
+
+					String[] n = line.split(" ");
+					index.sourceLength = Long.parseLong(n[1]);
+					index.sourceLastModified = Long.parseLong(n[2]);
+				}
+				else if(s[0].equals("block")) {
+
+					String[] n = line.split(" ");
+					index.blocks.add(new Block(Long.parseLong(n[1]), Long.parseLong(n[2]), Integer.parseInt(n[3])));
+					index.blockRanges.add(new long[] {Long.parseLong(n[4]), Long.parseLong(n[5])});
+				}
+				else if(s[0].equals("chain")) {
+
+					String[] n = line.split(" ");
+					index.chainRanges.put(n[1].charAt(0), new long[] {Long.parseLong(n[2]), Long.parseLong(n[3])});
+					index.contextLines.put(n[1].charAt(0), new ArrayList<String>());
+				}
+				else if(s[0].equals("size")) {
+
+					String[] n = line.split(" ");
+					index.chainSizes.put(n[1].charAt(0), new int[] {Integer.parseInt(n[2]), Integer.parseInt(n[3])});
+				}
+				else if(s[0].equals("alias")) {
+
+					index.aliases.put(s[1].charAt(0), s[2].charAt(0));
+				}
+				else if(s[0].equals("context")) {
+
+					index.contextLines.get(s[1].charAt(0)).add(s[2]);
+				}
+				else throw new IOException("unknown entry in "+indexFile+": "+line);
+			}
+		}
+		catch(RuntimeException e) { // number format, missing fields
+
+			throw new IOException("corrupt index file "+indexFile+": "+e.getMessage());
+		}
+		finally {
+			reader.close();
+		}
+
+		return index;
+	}
+}
@@ -36,16 +36,21 @@ import java.util.Set;
 import java.util.regex.Pattern;
 
 import nl.ru.cmbi.vase.analysis.Calculator;
+import nl.ru.cmbi.vase.analysis.CmaScore;
+import nl.ru.cmbi.vase.analysis.CorrelatedMutationCalculator;
 import nl.ru.cmbi.vase.analysis.MutationDataObject;
 import nl.ru.cmbi.vase.data.TableData;
+import nl.ru.cmbi.vase.data.TableData.ColumnDataType;
 import nl.ru.cmbi.vase.data.TableData.ColumnInfo;
 import nl.ru.cmbi.vase.data.pdb.PDBResidueInfo;
+import nl.ru.cmbi.vase.data.pdb.PDBStructure;
 import nl.ru.cmbi.vase.data.stockholm.Alignment;
 import nl.ru.cmbi.vase.data.stockholm.AlignmentSet;
 import nl.ru.cmbi.vase.data.stockholm.ResidueInfo;
 import nl.ru.cmbi.vase.data.stockholm.ResidueInfoSet;
 import nl.ru.cmbi.vase.data.VASEDataObject;
 import nl.ru.cmbi.vase.tools.util.AminoAcid;
+import nl.ru.cmbi.vase.tools.util.Config;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.io.IOUtils;
@@ -159,17 +164,18 @@ public class StockholmParser {
 		
 		log.info("generating vase object with " + pdbIn);
 
+		// one pass through the pdb file, shared by all chains
+		PDBStructure pdbStructure = PDBParser.parseStructure(pdbIn);
+		pdbIn.close();
+
 		Map<Character,VASEDataObject> map = new HashMap<Character,VASEDataObject>();
 		for(char chainID : alignments.getChainIDs()) {
 			
 			Alignment alignment = alignments.getAlignment(chainID);
 			
-			Map<Character,Map<String,PDBResidueInfo>> pdbResidues = PDBParser.parseResidues(pdbIn);
-			pdbIn.close();
-			
 			VASEDataObject data = new VASEDataObject(
 					alignment, 
-					getTable(alignments, pdbResidues, residueInfoSet, chainID),
+					getTable(alignments, pdbStructure, residueInfoSet, chainID),
 					pdbID);
 
 			data.setTitle( String.format("Alignment of %s chain %c", pdbID, chainID) );
@@ -194,6 +200,15 @@ public class StockholmParser {
 			pd.setYAxisColumnID("entropy");
 			data.getPlots().add(pd);
 			
+			if(data.getTable().getColumnByID("cma_score")!=null) {
+				
+				pd = new VASEDataObject.PlotDescription();
+				pd.setPlotTitle("Correlated Mutation vs. Alignment Position");
+				pd.setXAxisColumnID("residue_number");
+				pd.setYAxisColumnID("cma_score");
+				data.getPlots().add(pd);
+			}
+			
 			map.put(chainID, data);
 		}
 		
@@ -207,61 +222,31 @@ public class StockholmParser {
 		
 		Set<Character> chains = new HashSet<Character>();
 		
-		String pdbID = null;
-		char currentChain='A';
-		final Pattern	vp = Pattern.compile(variabilityLinePattern),
-						pp = Pattern.compile(profileLinePattern),
-						cp = Pattern.compile(chainLinePattern);
+		final StockholmTokenizer tokenizer = new StockholmTokenizer();
 
 		final BufferedReader reader = new BufferedReader(new InputStreamReader(stockholmIn));
 		String line;
 		while((line=reader.readLine())!=null) {
 
-			Matcher vm = vp.matcher(line),
-					pm = pp.matcher(line),
-					cm = cp.matcher(line);
+			switch(tokenizer.next(line)) {
 			
-			if(line.trim().equals("//")) { // indicates the end of the current chain
-				
-				currentChain = ' ';
-			}
-			else if (cm.matches()) {
-			
-				currentChain=cm.group(2).charAt(0);
-				
-				chains.add(currentChain);
+			case CHAIN:
+			case RESIDUE_INFO:
+			case PROFILE:
 				
-			} else if (line.matches(dbRefLinePattern)) {
+				chains.add(tokenizer.getChain());
+				break;
 				
-				// DBRefs don't indicate the current chain
-				continue;
+			case EQUAL_CHAINS:
 				
-			} else if(vm.matches()) {
-						
-				currentChain = vm.group(3).charAt(0);
-				
-				chains.add(currentChain);
-				
-			} else if (pm.matches()) {
-				
-				currentChain = pm.group(3).charAt(0);
-				
-				chains.add(currentChain);
-						
-			} else if (line.matches(equalchainsLinePattern)) {
-
-				final String[] s = line.trim().split("\\s+");
-				final char sourceChain = s[3].charAt(0);
-				
-				// Chain listing starts at the 11th word in the expression.
-				for(int i=11; i<s.length; i++) {
-					
-					if(s.equals("and") ) continue; // 'and' is not a chain-ID, it's an interjection
-					
-					final char destChain=s[i].charAt(0); // Take the first character in the word, thus not the commas!
+				for(int i=0; i<tokenizer.countEqualChains(); i++) {
 					
-					chains.add(destChain);
+					chains.add(tokenizer.getEqualChain(i));
 				}
+				break;
+				
+			default:
+				break;
 			}
 		}
 			
@@ -278,113 +263,86 @@ public class StockholmParser {
 				
 				) throws Exception {
 		
-		final StringBuilder pdbID = new StringBuilder();
+		String pdbID = "";
 		
 		final boolean takeAllChains = ( requestedChain == '*' );
 		
 		final BufferedReader reader = new BufferedReader(new InputStreamReader(stockholmIn));
 
+		final StockholmTokenizer tokenizer = new StockholmTokenizer();
+
 		char currentChain='A';
-		final Pattern	vp = Pattern.compile(variabilityLinePattern),
-						pp = Pattern.compile(profileLinePattern),
-						sp = Pattern.compile(seqLinePattern),
-						cp = Pattern.compile(chainLinePattern);
 
 		String line; int linenr=0;
+		lines:
 		while((line=reader.readLine())!=null) {
 			linenr++;
-
-			Matcher vm = vp.matcher(line),
-					pm = pp.matcher(line),
-					sm = sp.matcher(line),
-					cm = cp.matcher(line);
 			
-			if(line.trim().equals("//")) { // indicates the end of the current chain
+			switch(tokenizer.next(line)) {
+			
+			case END_OF_CHAIN: // indicates the end of the current chain
 				
 				if(!takeAllChains && currentChain==requestedChain) {
 					
-					break; // end of the requested chain
+					break lines; // end of the requested chain
 				}
 				
 				currentChain = ' ';
-			}
-			else if(line.matches(pdbIDLinePattern)) {
+				break;
 				
-				final String[] s = line.trim().split("\\s+");
+			case PDBID:
 				
-				pdbID.replace(0, pdbID.length(), s[s.length-1] );
+				pdbID = tokenizer.getId();
+				break;
 				
-			} else if (cm.matches()) {
+			case CHAIN:
 			
-				final String ac=cm.group(1);
-				currentChain=cm.group(2).charAt(0);
+				final String ac=tokenizer.getId();
+				currentChain=tokenizer.getChain();
 	
-				if( !pdbID.toString().equalsIgnoreCase(ac)) {
+				if( !pdbID.equalsIgnoreCase(ac)) {
 					throw new Exception("line "+linenr+": got id "+ac+", but expected: "+pdbID);
 				}
 				
-				pdbID.replace(0, pdbID.length(), ac );
+				pdbID = ac;
 				
-				if(!takeAllChains && currentChain!=requestedChain) {
-					continue;
+				if(takeAllChains || currentChain==requestedChain) {
+					
+					alignments.addChain(currentChain);
 				}
+				break;
 				
-				alignments.addChain(currentChain);
+			case RESIDUE_INFO:
 				
-			} else if (line.matches(dbRefLinePattern)) {
-
-				// DBRefs don't indicate the current chain
-				continue;
-				
-			} else if(vm.matches()) {
-				
-				char chain = vm.group(3).charAt(0), AA = vm.group(4).charAt(0);
-				String pdbno = vm.group(2).trim();
-				int seqno	= Integer.parseInt(vm.group(1).trim()),
-					var		= Integer.parseInt(vm.group(10).trim());
+				if(takeAllChains || tokenizer.getChain()==requestedChain) {
 				
-				if(!takeAllChains && chain!=requestedChain) {
-					continue;
+					ResidueInfo res = residueInfoSet.getResidue(tokenizer.getChain(), tokenizer.getSeqNo());
+					
+					res.setPdbNumber(tokenizer.getPdbNumber());
+					res.setVar(tokenizer.getVar());
+					res.setAa(tokenizer.getAa());
 				}
+				break;
 				
-				ResidueInfo res = residueInfoSet.getResidue(chain, seqno);
-				
-				res.setPdbNumber(pdbno);
-				res.setVar(var);
-				res.setAa(AA);
+			case PROFILE:
 				
-			} else if (pm.matches()) {
+				if(takeAllChains || tokenizer.getChain()==requestedChain) {
 				
-				char chain = pm.group(3).charAt(0);
-				
-				int seqno	= Integer.parseInt(pm.group(1).trim()),
-					relent	= Integer.parseInt(pm.group(9).trim());
-				
-				double	entropy	= Double.parseDouble(pm.group(8)),
-						weight	= Double.parseDouble(pm.group(10));
-				
-				if(!takeAllChains && chain!=requestedChain) {
-					continue;
+					ResidueInfo res = residueInfoSet.getResidue(tokenizer.getChain(), tokenizer.getSeqNo());
+					
+					res.setEntropy(tokenizer.getEntropy());
+					res.setRelent(tokenizer.getRelent());
+					res.setWeight(tokenizer.getWeight());
 				}
+				break;
 				
-				ResidueInfo res = residueInfoSet.getResidue(chain, seqno);
-				
-				res.setEntropy(entropy);
-				res.setRelent(relent);
-				res.setWeight(weight);
-				
-			} else if (line.matches(equalchainsLinePattern)) {
-			// these lines define references of one chain to the other
+			case EQUAL_CHAINS: // these lines define references of one chain to the other
 
-				final String[] s = line.trim().split("\\s+");
-				final char sourceChain = s[3].charAt(0);
+				final char sourceChain = tokenizer.getChain();
 				
-				// Chain listing starts at the 11th word in the expression.
-				for(int i=11; i<s.length; i++) {
-					
-					if(s.equals("and") ) continue; // 'and' is not a chain-ID, it's an interjection
+				for(int i=0; i<tokenizer.countEqualChains(); i++) {
 					
-					final char destChain=s[i].charAt(0); // Take the first character in the word, thus not the commas!
+					final char destChain=tokenizer.getEqualChain(i);
 
 					if(!takeAllChains) {
 						
@@ -400,13 +358,18 @@ public class StockholmParser {
 					residueInfoSet.addChainReference(sourceChain,destChain);
 					alignments.addChainReference(sourceChain,destChain);
 				}
-			}
-			else if( (takeAllChains || currentChain==requestedChain )
-				&& sm.matches()) {
+				break;
 				
-				final String label = sm.group(1), seq = sm.group(2);
-
-				alignments.addToSeq(currentChain,label,seq);
+			case SEQUENCE:
+				
+				if(takeAllChains || currentChain==requestedChain) {
+				
+					alignments.addToSeq(currentChain,tokenizer.getId(),tokenizer.getSequence());
+				}
+				break;
+				
+			default: // DBREF lines don't indicate the current chain, other lines are ignored
+				break;
 			}
 		}
 		
@@ -415,21 +378,44 @@ public class StockholmParser {
 	
 	private static String getAlignedPDBSeq(Alignment alignment) {
 		
-		return alignment.getAlignedSeq(alignment.getLabels().get(0));
+		return alignment.getAlignedSeq(0);
 	}
 	
-	private static ResidueInfo getResidueInfoFor(
-			Alignment alignment, char chainID,
-			ResidueInfoSet residueInfoSet, int columnIndex) {
+	/**
+	 * One pass through the pdb sequence in the alignment.
+	 * 
+	 * @return for every alignment column, the residue's position in the chain or -1 if it's a gap
+	 */
+	private static int[] getResidueInfoIndices(Alignment alignment) {
 		
 		String alignedPDBSeq = getAlignedPDBSeq(alignment);
 		
-		char aa = alignedPDBSeq.charAt(columnIndex);
-		if(Character.isLetter(aa)) {
-
-			int residueInfoIndex = alignedPDBSeq.substring(0, columnIndex).replace(".", "").length();
+		int[] residueInfoIndices = new int[alignedPDBSeq.length()];
+		
+		int residueInfoIndex=0;
+		for(int i=0; i<alignedPDBSeq.length(); i++) {
+			
+			char aa = alignedPDBSeq.charAt(i);
+			
+			if(Character.isLetter(aa))
+				residueInfoIndices[i] = residueInfoIndex;
+			else
+				residueInfoIndices[i] = -1; // If it's a gap
 			
-			return residueInfoSet.getResidueFromOrder(chainID, residueInfoIndex);
+			if(aa!='.')
+				residueInfoIndex++;
+		}
+		
+		return residueInfoIndices;
+	}
+	
+	private static ResidueInfo getResidueInfoFor(
+			int[] residueInfoIndices, char chainID,
+			ResidueInfoSet residueInfoSet, int columnIndex) {
+		
+		if(residueInfoIndices[columnIndex]!=-1) {
+
+			return residueInfoSet.getResidueFromOrder(chainID, residueInfoIndices[columnIndex]);
 		}
 		else return null; // If it's a gap
 	}
@@ -455,7 +441,7 @@ public class StockholmParser {
 			ResidueInfoSet residueInfoSet, List<PDBResidueInfo> pdbResidues, int columnIndex) {
 
 		String alignedPDBSeq = getAlignedPDBSeq(alignment);
-		ResidueInfo res = getResidueInfoFor(alignment, chainID, residueInfoSet, columnIndex);
+		ResidueInfo res = getResidueInfoFor(getResidueInfoIndices(alignment), chainID, residueInfoSet, columnIndex);
 		if(res!=null) {
 			
 			String pdbno = res.getPdbNumber();
@@ -475,7 +461,7 @@ public class StockholmParser {
 	
 	private static TableData getTable(
 			AlignmentSet alignments,
-			Map<Character,Map<String,PDBResidueInfo>> pdbResidues, 
+			PDBStructure pdbStructure, 
 			ResidueInfoSet residueInfos, char chainID) throws Exception {
 		
 		Alignment alignment = alignments.getAlignment(chainID);
@@ -487,44 +473,58 @@ public class StockholmParser {
 		ColumnInfo colResidueNumber = new ColumnInfo();
 		colResidueNumber.setTitle("Residue Number");
 		colResidueNumber.setId("residue_number");
+		colResidueNumber.setType(ColumnDataType.INTEGER);
 		colResidueNumber.setMouseOver(true);
 		columns.add(colResidueNumber);
 		
 		ColumnInfo colPDBResidue = new ColumnInfo();
 		colPDBResidue.setTitle("PDB residue");
 		colPDBResidue.setId("pdb_residue");
+		colPDBResidue.setType(ColumnDataType.STRING);
 		columns.add(colPDBResidue);
 		
 		ColumnInfo colEntropy = new ColumnInfo();
 		colEntropy.setTitle("Entropy");
 		colEntropy.setId("entropy");
+		colEntropy.setType(ColumnDataType.DOUBLE);
 		columns.add(colEntropy);
 		
+		ColumnInfo colWeightedEntropy = new ColumnInfo();
+		colWeightedEntropy.setTitle("Weighted Entropy");
+		colWeightedEntropy.setId("weighted_entropy");
+		colWeightedEntropy.setType(ColumnDataType.DOUBLE);
+		columns.add(colWeightedEntropy);
+		
 		ColumnInfo colVariability = new ColumnInfo();
 		colVariability.setTitle("Variability");
 		colVariability.setId("variability");
+		colVariability.setType(ColumnDataType.INTEGER);
 		columns.add(colVariability);
 		
 		ColumnInfo colWeight = new ColumnInfo();
 		colWeight.setTitle("Weight");
 		colWeight.setId("weight");
+		colWeight.setType(ColumnDataType.DOUBLE);
 		columns.add(colWeight);
 		
 		TableData table = new TableData(columns);
 		
+		int[] residueInfoIndices = getResidueInfoIndices(alignment);
+		
 		for(int i=0; i<alignment.countColumns(); i++) {
 			
-			ResidueInfo resInfo = getResidueInfoFor(alignment, chainID, residueInfos, i);
+			ResidueInfo resInfo = getResidueInfoFor(residueInfoIndices, chainID, residueInfos, i);
 			
 			List<String> values = new ArrayList<String>(columns.size());
 			
 			table.setValue(colResidueNumber.getId(), i, new Integer(i + 1));
-			table.setValue(colEntropy.getId(), i, new Double(mutationData.getEntropyScores().get(i)));
-			table.setValue(colVariability.getId(), i, new Integer(mutationData.getVariabilityScores().get(i)));
+			table.setValue(colEntropy.getId(), i, new Double(mutationData.getEntropyScores()[i]));
+			table.setValue(colWeightedEntropy.getId(), i, new Double(mutationData.getWeightedEntropyScores()[i]));
+			table.setValue(colVariability.getId(), i, new Integer(mutationData.getVariabilityScores()[i]));
 						
 			if(resInfo != null) {
 				
-				PDBResidueInfo pdbResInfo = pdbResidues.get(chainID).get(resInfo.getPdbNumber());
+				PDBResidueInfo pdbResInfo = pdbStructure.getResidue(chainID, resInfo.getPdbNumber());
 				if(pdbResInfo != null) {
 					
 					table.setValue(colPDBResidue.getId(), i, getPDBRepresentation(pdbResInfo));
@@ -534,6 +534,54 @@ public class StockholmParser {
 			}
 		}
 		
+		if(Config.getCmaTopScores() > 0) {
+			
+			addCorrelatedMutationColumns(table, alignment, Config.getCmaTopScores());
+		}
+		
 		return table;
 	}
+	
+	/**
+	 * For every alignment position, the best correlated mutation score among the top scores and the
+	 * position it was paired with. Positions without a top score get zero.
+	 */
+	private static void addCorrelatedMutationColumns(TableData table, Alignment alignment, int nTopScores) {
+		
+		ColumnInfo colCmaScore = new ColumnInfo();
+		colCmaScore.setTitle("Correlated Mutation");
+		colCmaScore.setId("cma_score");
+		colCmaScore.setType(ColumnDataType.DOUBLE);
+		table.addColumn(colCmaScore);
+		
+		ColumnInfo colCmaPartner = new ColumnInfo();
+		colCmaPartner.setTitle("Correlated With");
+		colCmaPartner.setId("cma_partner");
+		colCmaPartner.setType(ColumnDataType.INTEGER);
+		table.addColumn(colCmaPartner);
+		
+		for(int i=0; i<alignment.countColumns(); i++) {
+			
+			table.setValue(colCmaScore.getId(), i, new Double(0.0));
+			table.setValue(colCmaPartner.getId(), i, new Integer(0));
+		}
+		
+		boolean[] hasScore = new boolean[alignment.countColumns()];
+		
+		// best first, so the first score of a position is its best
+		for(CmaScore cma : CorrelatedMutationCalculator.getTopScores(alignment, nTopScores)) {
+			
+			int[][] pairs = new int[][] {{cma.getResidue1(), cma.getResidue2()}, {cma.getResidue2(), cma.getResidue1()}};
+			for(int[] pair : pairs) {
+				
+				int row = pair[0] - 1;
+				if(!hasScore[row]) {
+					
+					table.setValue(colCmaScore.getId(), row, new Double(cma.getScore()));
+					table.setValue(colCmaPartner.getId(), row, new Integer(pair[1]));
+					hasScore[row] = true;
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,640 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.parse;
+
+/**
+ * Classifies the lines of a stockholm file by their prefix and reads their fields in place.
+ *
+ * A line is accepted exactly when the corresponding pattern in {@link StockholmParser}
+ * would match it, but no regular expressions are used. One tokenizer is meant to be reused
+ * for all lines of a file: the fields of the last tokenized line can be read with the getters.
+ */
+public class StockholmTokenizer {
+
+	public enum LineType {
+		END_OF_CHAIN,	// "//"
+		PDBID,			// #=GF CC PDBID
+		CHAIN,			// #=GF ID
+		DBREF,			// #=GF CC DBREF
+		RESIDUE_INFO,	// #=GF RI
+		PROFILE,		// #=GF PR
+		EQUAL_CHAINS,	// #=GF CC Chain X is considered to be the same as ...
+		SEQUENCE,		// label and aligned sequence
+		OTHER
+	}
+
+	// Character classes, as used in the stockholm patterns:
+	private static final int
+		DIGIT = 0,			// [0-9]
+		SPACE = 1,			// \s
+		MINUS = 2,			// \-
+		SPACE_OR_UPPER = 3, // [\sA-Z]
+		ALNUM = 4,			// [A-Za-z0-9]
+		LETTER = 5,			// [A-Za-z]
+		STRUCTURE = 6,		// [A-Za-z0-9\s\-\+\>\<]
+		UPPER = 7,			// [A-Z]
+		DOT = 8;			// \.
+
+	private static boolean isSpace(char c) {
+
+		return c==' ' || c=='\t' || c=='\n' || c=='\u000B' || c=='\f' || c=='\r';
+	}
+
+	private static boolean isDigit(char c) {
+
+		return c>='0' && c<='9';
+	}
+
+	private static boolean isUpper(char c) {
+
+		return c>='A' && c<='Z';
+	}
+
+	private static boolean isLetter(char c) {
+
+		return isUpper(c) || (c>='a' && c<='z');
+	}
+
+	private static boolean isWordChar(char c) { // \w
+
+		return isLetter(c) || isDigit(c) || c=='_';
+	}
+
+	private static boolean inClass(int cls, char c) {
+
+		switch(cls) {
+		case DIGIT:
+			return isDigit(c);
+		case SPACE:
+			return isSpace(c);
+		case MINUS:
+			return c=='-';
+		case SPACE_OR_UPPER:
+			return isSpace(c) || isUpper(c);
+		case ALNUM:
+			return isLetter(c) || isDigit(c);
+		case LETTER:
+			return isLetter(c);
+		case STRUCTURE:
+			return isLetter(c) || isDigit(c) || isSpace(c) || c=='-' || c=='+' || c=='>' || c=='<';
+		case UPPER:
+			return isUpper(c);
+		case DOT:
+			return c=='.';
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * A character class that must be repeated between min and max times (greedily).
+	 * Consecutive fields with the same group number together form a captured group.
+	 */
+	private static class Field {
+
+		final int cls, min, max, group;
+
+		Field(int cls, int min, int max, int group) {
+
+			this.cls=cls; this.min=min; this.max=max; this.group=group;
+		}
+	}
+
+	private static final int MANY = Integer.MAX_VALUE;
+
+	private static Field one(int cls, int group)		{ return new Field(cls, 1, 1, group); }
+	private static Field optional(int cls, int group)	{ return new Field(cls, 0, 1, group); }
+	private static Field oneOrMore(int cls, int group)	{ return new Field(cls, 1, MANY, group); }
+	private static Field anyNumber(int cls, int group)	{ return new Field(cls, 0, MANY, group); }
+
+	// group numbers match the ones in StockholmParser.variabilityLinePattern
+	private static final int RI_SEQNO = 1, RI_PDBNO = 2, RI_CHAIN = 3, RI_AA = 4, RI_VAR = 10;
+
+	/**
+	 * The part of {@link StockholmParser#variabilityLinePattern} that follows "#=GF RI"
+	 */
+	private static final Field[] residueInfoFields = {
+		oneOrMore(SPACE,0),			oneOrMore(DIGIT,RI_SEQNO),
+		oneOrMore(SPACE,0),			optional(MINUS,RI_PDBNO), oneOrMore(DIGIT,RI_PDBNO), one(SPACE_OR_UPPER,RI_PDBNO),
+		one(ALNUM,RI_CHAIN),
+		oneOrMore(SPACE,0),			one(LETTER,RI_AA),
+		oneOrMore(SPACE,0),			new Field(STRUCTURE,9,9,5),
+		anyNumber(SPACE,0),			oneOrMore(DIGIT,6),
+		anyNumber(SPACE,0),			oneOrMore(DIGIT,7), optional(UPPER,7),
+		oneOrMore(SPACE,0),			oneOrMore(DIGIT,8),
+		oneOrMore(SPACE,0),			oneOrMore(DIGIT,9),
+		oneOrMore(SPACE,0),			oneOrMore(DIGIT,RI_VAR)
+	};
+
+	// group numbers match the ones in StockholmParser.profileLinePattern
+	private static final int PR_SEQNO = 1, PR_CHAIN = 3, PR_ENTROPY = 8, PR_RELENT = 9, PR_WEIGHT = 10;
+
+	/**
+	 * The part of {@link StockholmParser#profileLinePattern} that follows "#=GF PR"
+	 */
+	private static final Field[] profileFields = new Field[ 8 + 2 * 20 + 15 ];
+	static {
+		int i=0;
+		profileFields[i++] = oneOrMore(SPACE,0);
+		profileFields[i++] = oneOrMore(DIGIT,PR_SEQNO);
+		profileFields[i++] = oneOrMore(SPACE,0);
+		profileFields[i++] = optional(MINUS,2);
+		profileFields[i++] = oneOrMore(DIGIT,2);
+		profileFields[i++] = one(SPACE_OR_UPPER,2);
+		profileFields[i++] = one(ALNUM,PR_CHAIN);
+		profileFields[i++] = oneOrMore(SPACE,0);
+
+		for(int aa=0; aa<20; aa++) { // per amino acid score
+
+			profileFields[i++] = oneOrMore(DIGIT,4);
+			profileFields[i++] = oneOrMore(SPACE,4);
+		}
+
+		profileFields[i++] = oneOrMore(DIGIT,5);			// NOCC
+		profileFields[i++] = oneOrMore(SPACE,0);
+		profileFields[i++] = oneOrMore(DIGIT,6);			// NDEL
+		profileFields[i++] = oneOrMore(SPACE,0);
+		profileFields[i++] = oneOrMore(DIGIT,7);			// NINS
+		profileFields[i++] = oneOrMore(SPACE,0);
+		profileFields[i++] = oneOrMore(DIGIT,PR_ENTROPY);
+		profileFields[i++] = one(DOT,PR_ENTROPY);
+		profileFields[i++] = oneOrMore(DIGIT,PR_ENTROPY);
+		profileFields[i++] = oneOrMore(SPACE,0);
+		profileFields[i++] = oneOrMore(DIGIT,PR_RELENT);
+		profileFields[i++] = oneOrMore(SPACE,0);
+		profileFields[i++] = oneOrMore(DIGIT,PR_WEIGHT);
+		profileFields[i++] = one(DOT,PR_WEIGHT);
+		profileFields[i++] = oneOrMore(DIGIT,PR_WEIGHT);
+	}
+
+	private static final String
+		gfPrefix = "#=GF",
+		pdbIDPrefix = "#=GF CC PDBID",
+		chainPrefix = "#=GF ID",
+		dbRefPrefix = "#=GF CC DBREF",
+		equalChainsPrefix = "#=GF CC Chain ",
+		equalChainsInfix = " is considered to be the same as ";
+
+	private String line;
+	private int lineLength;
+
+	// end positions of the fields, from the last call to matchFields
+	private int[] fieldEnds = new int[profileFields.length];
+	private int fieldsStart;
+
+	private LineType type;
+	private String id, pdbNumber, sequence;
+	private char chain, aa;
+	private int seqNo, var, relent;
+	private double entropy, weight;
+	private char[] equalChains = new char[26];
+	private int nEqualChains;
+
+	/**
+	 * Reads the given line and remembers its fields.
+	 *
+	 * @return the type of the line, or OTHER if it doesn't match any of the known line types
+	 */
+	public LineType next(String line) {
+
+		this.line = line;
+		this.lineLength = line.length();
+
+		type = tokenize();
+
+		return type;
+	}
+
+	public LineType getType() {
+
+		return type;
+	}
+
+	/**
+	 * @return the pdb id on PDBID lines, the accession on CHAIN lines or the label on SEQUENCE lines
+	 */
+	public String getId() {
+
+		return id;
+	}
+
+	/**
+	 * @return the chain on CHAIN, RESIDUE_INFO and PROFILE lines, or the source chain on EQUAL_CHAINS lines
+	 */
+	public char getChain() {
+
+		return chain;
+	}
+
+	public int getSeqNo() {
+
+		return seqNo;
+	}
+
+	/**
+	 * @return the pdb number on a RESIDUE_INFO line, including insertion code
+	 */
+	public String getPdbNumber() {
+
+		return pdbNumber;
+	}
+
+	public char getAa() {
+
+		return aa;
+	}
+
+	public int getVar() {
+
+		return var;
+	}
+
+	public double getEntropy() {
+
+		return entropy;
+	}
+
+	public int getRelent() {
+
+		return relent;
+	}
+
+	public double getWeight() {
+
+		return weight;
+	}
+
+	public String getSequence() {
+
+		return sequence;
+	}
+
+	/**
+	 * @return the number of chains, listed on an EQUAL_CHAINS line, that are the same as {@link #getChain()}
+	 */
+	public int countEqualChains() {
+
+		return nEqualChains;
+	}
+
+	public char getEqualChain(int i) {
+
+		return equalChains[i];
+	}
+
+	private LineType tokenize() {
+
+		if(isEndOfChain()) {
+
+			return LineType.END_OF_CHAIN;
+		}
+		else if(line.startsWith(gfPrefix)) {
+
+			if(line.startsWith(pdbIDPrefix)) {
+
+				return tokenizePdbID() ? LineType.PDBID : LineType.OTHER;
+			}
+			else if(line.startsWith(chainPrefix)) {
+
+				return tokenizeChain() ? LineType.CHAIN : LineType.OTHER;
+			}
+			else if(line.startsWith(dbRefPrefix)) {
+
+				return isDbRef() ? LineType.DBREF : LineType.OTHER;
+			}
+			else if(line.startsWith(equalChainsPrefix)) {
+
+				return tokenizeEqualChains() ? LineType.EQUAL_CHAINS : LineType.OTHER;
+			}
+
+			int i = skipSpaces(gfPrefix.length());
+			if(i==gfPrefix.length() || i+2 > lineLength) {
+
+				return LineType.OTHER;
+			}
+			else if(line.charAt(i)=='R' && line.charAt(i+1)=='I') {
+
+				return tokenizeResidueInfo(i+2) ? LineType.RESIDUE_INFO : LineType.OTHER;
+			}
+			else if(line.charAt(i)=='P' && line.charAt(i+1)=='R') {
+
+				return tokenizeProfile(i+2) ? LineType.PROFILE : LineType.OTHER;
+			}
+			else return LineType.OTHER;
+		}
+		else if(lineLength>0 && line.charAt(0)=='#') {
+
+			return LineType.OTHER; // comments can't be sequences
+		}
+		else return tokenizeSequence() ? LineType.SEQUENCE : LineType.OTHER;
+	}
+
+	/**
+	 * Same as line.trim().equals("//")
+	 */
+	private boolean isEndOfChain() {
+
+		int start=0, end=lineLength;
+		while(start<end && line.charAt(start)<=' ') start++;
+		while(end>start && line.charAt(end-1)<=' ') end--;
+
+		return end-start==2 && line.charAt(start)=='/' && line.charAt(start+1)=='/';
+	}
+
+	private int skipSpaces(int i) {
+
+		while(i<lineLength && isSpace(line.charAt(i))) i++;
+		return i;
+	}
+
+	private boolean onlySpacesFrom(int i) {
+
+		return skipSpaces(i)==lineLength;
+	}
+
+	/**
+	 * ^#=GF CC PDBID\s+[\w\-]+\s*$
+	 */
+	private boolean tokenizePdbID() {
+
+		int start = skipSpaces(pdbIDPrefix.length());
+		if(start==pdbIDPrefix.length()) return false;
+
+		int end=start;
+		while(end<lineLength && (isWordChar(line.charAt(end)) || line.charAt(end)=='-')) end++;
+		if(end==start || !onlySpacesFrom(end)) return false;
+
+		id = line.substring(start, end);
+		return true;
+	}
+
+	/**
+	 * ^#=GF ID\s+([\-_0-9a-zA-Z]*)\/([A-Z0-9])\s*$
+	 */
+	private boolean tokenizeChain() {
+
+		int start = skipSpaces(chainPrefix.length());
+		if(start==chainPrefix.length()) return false;
+
+		int end=start;
+		while(end<lineLength && (isWordChar(line.charAt(end)) || line.charAt(end)=='-')) end++;
+
+		if(end+2 > lineLength || line.charAt(end)!='/') return false;
+
+		char c = line.charAt(end+1);
+		if(!isUpper(c) && !isDigit(c)) return false;
+
+		if(!onlySpacesFrom(end+2)) return false;
+
+		id = line.substring(start, end);
+		chain = c;
+		return true;
+	}
+
+	/**
+	 * ^#=GF CC DBREF\s+[1-9][A-Z0-9]{3}\s+([A-Z0-9])\s+.*$
+	 */
+	private boolean isDbRef() {
+
+		int i = skipSpaces(dbRefPrefix.length());
+		if(i==dbRefPrefix.length() || i+4 > lineLength) return false;
+
+		char c = line.charAt(i);
+		if(c<'1' || c>'9') return false;
+
+		for(int j=i+1; j<i+4; j++) {
+			c = line.charAt(j);
+			if(!isUpper(c) && !isDigit(c)) return false;
+		}
+
+		int chainPos = skipSpaces(i+4);
+		if(chainPos==i+4 || chainPos>=lineLength) return false;
+
+		c = line.charAt(chainPos);
+		if(!isUpper(c) && !isDigit(c)) return false;
+
+		return chainPos+1 < lineLength && isSpace(line.charAt(chainPos+1));
+	}
+
+	/**
+	 * ^#=GF CC Chain ([A-Z]) is considered to be the same as ([A-Z](?:, [A-Z])*(?: and [A-Z])?)$
+	 */
+	private boolean tokenizeEqualChains() {
+
+		int i = equalChainsPrefix.length();
+		if(i>=lineLength || !isUpper(line.charAt(i))) return false;
+
+		char source = line.charAt(i++);
+
+		if(!line.startsWith(equalChainsInfix, i)) return false;
+		i += equalChainsInfix.length();
+
+		if(i>=lineLength || !isUpper(line.charAt(i))) return false;
+
+		nEqualChains=0;
+		addEqualChain(line.charAt(i++));
+
+		while(i+3<=lineLength && line.charAt(i)==',' && line.charAt(i+1)==' ' && isUpper(line.charAt(i+2))) {
+
+			addEqualChain(line.charAt(i+2));
+			i+=3;
+		}
+
+		if(i+6<=lineLength && line.startsWith(" and ", i) && isUpper(line.charAt(i+5))) {
+
+			addEqualChain(line.charAt(i+5));
+			i+=6;
+		}
+
+		if(i!=lineLength) return false;
+
+		chain = source;
+		return true;
+	}
+
+	private void addEqualChain(char c) {
+
+		if(nEqualChains==equalChains.length) {
+
+			char[] grown = new char[2 * equalChains.length];
+			System.arraycopy(equalChains, 0, grown, 0, nEqualChains);
+			equalChains = grown;
+		}
+		equalChains[nEqualChains++] = c;
+	}
+
+	/**
+	 * ^([\w\-\/]*)\s+([A-Z\.]+)$
+	 */
+	private boolean tokenizeSequence() {
+
+		int labelEnd=0;
+		while(labelEnd<lineLength) {
+
+			char c = line.charAt(labelEnd);
+			if(!isWordChar(c) && c!='-' && c!='/') break;
+			labelEnd++;
+		}
+
+		int seqStart = skipSpaces(labelEnd);
+		if(seqStart==labelEnd || seqStart==lineLength) return false;
+
+		for(int i=seqStart; i<lineLength; i++) {
+
+			char c = line.charAt(i);
+			if(!isUpper(c) && c!='.') return false;
+		}
+
+		id = line.substring(0, labelEnd);
+		sequence = line.substring(seqStart);
+		return true;
+	}
+
+	private boolean tokenizeResidueInfo(int start) {
+
+		if(!matchFields(residueInfoFields, start)) return false;
+
+		seqNo = parseInt(groupStart(residueInfoFields, RI_SEQNO), groupEnd(residueInfoFields, RI_SEQNO));
+		pdbNumber = line.substring(
+				groupStart(residueInfoFields, RI_PDBNO), groupEnd(residueInfoFields, RI_PDBNO)).trim();
+		chain = line.charAt(groupStart(residueInfoFields, RI_CHAIN));
+		aa = line.charAt(groupStart(residueInfoFields, RI_AA));
+		var = parseInt(groupStart(residueInfoFields, RI_VAR), groupEnd(residueInfoFields, RI_VAR));
+
+		return true;
+	}
+
+	private boolean tokenizeProfile(int start) {
+
+		if(!matchFields(profileFields, start)) return false;
+
+		seqNo = parseInt(groupStart(profileFields, PR_SEQNO), groupEnd(profileFields, PR_SEQNO));
+		chain = line.charAt(groupStart(profileFields, PR_CHAIN));
+		entropy = parseDecimal(groupStart(profileFields, PR_ENTROPY), groupEnd(profileFields, PR_ENTROPY));
+		relent = parseInt(groupStart(profileFields, PR_RELENT), groupEnd(profileFields, PR_RELENT));
+		weight = parseDecimal(groupStart(profileFields, PR_WEIGHT), groupEnd(profileFields, PR_WEIGHT));
+
+		return true;
+	}
+
+	/**
+	 * Matches the fields from the given position on, like a regular expression would:
+	 * every field is greedy and gives back characters when the remainder doesn't match.
+	 * Whatever follows the last field is accepted, as the patterns end with ".*$".
+	 */
+	private boolean matchFields(Field[] fields, int start) {
+
+		fieldsStart = start;
+
+		return matchFields(fields, 0, start);
+	}
+
+	private boolean matchFields(Field[] fields, int k, int pos) {
+
+		if(k==fields.length) return true;
+
+		Field f = fields[k];
+
+		int n=0;
+		while(n<f.max && pos+n<lineLength && inClass(f.cls, line.charAt(pos+n))) n++;
+
+		for(int count=n; count>=f.min; count--) {
+
+			fieldEnds[k] = pos+count;
+
+			if(matchFields(fields, k+1, pos+count)) return true;
+		}
+		return false;
+	}
+
+	private int groupStart(Field[] fields, int group) {
+
+		for(int k=0; k<fields.length; k++) {
+
+			if(fields[k].group==group) {
+				return k==0 ? fieldsStart : fieldEnds[k-1];
+			}
+		}
+		throw new IllegalArgumentException("no such group: "+group);
+	}
+
+	private int groupEnd(Field[] fields, int group) {
+
+		for(int k=fields.length-1; k>=0; k--) {
+
+			if(fields[k].group==group) {
+				return fieldEnds[k];
+			}
+		}
+		throw new IllegalArgumentException("no such group: "+group);
+	}
+
+	/**
+	 * Same as Integer.parseInt on a substring of only digits.
+	 */
+	private int parseInt(int start, int end) {
+
+		long value=0;
+		for(int i=start; i<end; i++) {
+
+			value = 10 * value + (line.charAt(i) - '0');
+			if(value > Integer.MAX_VALUE) {
+
+				throw new NumberFormatException("For input string: \""+line.substring(start, end)+"\"");
+			}
+		}
+		return (int)value;
+	}
+
+	private static final double[] powersOfTen = new double[23];
+	static {
+		powersOfTen[0] = 1.0;
+		for(int i=1; i<powersOfTen.length; i++) {
+			powersOfTen[i] = 10.0 * powersOfTen[i-1];
+		}
+	}
+
+	/**
+	 * Same as Double.parseDouble on a substring like "12.345".
+	 *
+	 * When the digits fit in 15 places, both the mantissa and the power of ten are exact doubles,
+	 * so their quotient is the correctly rounded value that Double.parseDouble also returns.
+	 */
+	private double parseDecimal(int start, int end) {
+
+		if(end-start-1 > 15) {
+
+			return Double.parseDouble(line.substring(start, end));
+		}
+
+		long mantissa=0;
+		int decimals=0;
+		boolean afterDot=false;
+		for(int i=start; i<end; i++) {
+
+			char c = line.charAt(i);
+			if(c=='.') {
+
+				afterDot=true;
+				continue;
+			}
+
+			mantissa = 10 * mantissa + (c - '0');
+			if(afterDot) decimals++;
+		}
+		return mantissa / powersOfTen[decimals];
+	}
+}
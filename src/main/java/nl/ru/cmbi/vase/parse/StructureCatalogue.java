@@ -0,0 +1,424 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.parse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import lombok.Data;
+
+import nl.ru.cmbi.vase.tools.util.Config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Knows the chains of every structure whose stockholm file has been indexed,
+ * and the size of their alignments, so that listing them doesn't require reading the file.
+ *
+ * The catalogue is kept in memory and stored in a text file, one line per entry:
+ * structure id, path, length and modification time of the stockholm file, chains,
+ * aliases ("B=A" means that chain B has the same alignment as chain A) and alignment sizes
+ * ("A:120:245" means that chain A's alignment has 120 sequences and 245 columns), separated by tabs.
+ * A line with only a structure id and "-" means that the structure was removed.
+ * New lines are appended to the file. When the file is loaded, later lines replace earlier
+ * ones for the same structure, and the file is rewritten if it holds many replaced lines.
+ */
+public class StructureCatalogue {
+
+	static Logger log = LoggerFactory.getLogger(StructureCatalogue.class);
+
+	private static final String formatHeader = "vase-structure-catalogue 3";
+
+	private static final StructureCatalogue instance = new StructureCatalogue(Config.getCatalogueFile());
+
+	public static StructureCatalogue getInstance() {
+
+		return instance;
+	}
+
+	@Data
+	public static class Entry {
+
+		private final String structureID;
+
+		// of the stockholm file
+		private final String sourcePath;
+		private final long sourceLength, sourceLastModified;
+
+		// including the ones that are the same as another chain
+		private final Set<Character> chains;
+
+		private final Map<Character,Character> aliases;
+
+		// number of sequences and columns, per chain that isn't an alias
+		private final Map<Character,Integer> alignmentDepths, alignmentLengths;
+
+		private Character getSourceChain(char chain) {
+
+			return aliases.containsKey(chain) ? aliases.get(chain) : chain;
+		}
+
+		/**
+		 * @return the number of sequences in the chain's alignment, 0 if the chain isn't in the entry
+		 */
+		public int getAlignmentDepth(char chain) {
+
+			Integer depth = alignmentDepths.get(getSourceChain(chain));
+			return depth==null ? 0 : depth;
+		}
+
+		/**
+		 * @return the number of columns in the chain's alignment, 0 if the chain isn't in the entry
+		 */
+		public int getAlignmentLength(char chain) {
+
+			Integer length = alignmentLengths.get(getSourceChain(chain));
+			return length==null ? 0 : length;
+		}
+
+		public File getSourceFile() {
+
+			return new File(sourcePath);
+		}
+
+		public boolean isUpToDate(File hsspFile) {
+
+			return hsspFile.getAbsolutePath().equals(sourcePath)
+				&& hsspFile.length()==sourceLength && hsspFile.lastModified()==sourceLastModified;
+		}
+
+		private String toLine() {
+
+			StringBuilder line = new StringBuilder();
+			line.append(structureID).append('\t').append(sourcePath).append('\t').append(sourceLength).append('\t').append(sourceLastModified).append('\t');
+
+			for(char chain : chains) {
+
+				line.append(chain);
+			}
+			line.append('\t');
+
+			boolean first = true;
+			for(Map.Entry<Character,Character> alias : aliases.entrySet()) {
+
+				if(!first) line.append(',');
+				line.append(alias.getKey()).append('=').append(alias.getValue());
+				first = false;
+			}
+			line.append('\t');
+
+			first = true;
+			for(Character chain : alignmentDepths.keySet()) {
+
+				if(!first) line.append(',');
+				line.append(chain).append(':').append(alignmentDepths.get(chain))
+					.append(':').append(alignmentLengths.get(chain));
+				first = false;
+			}
+
+			return line.toString();
+		}
+
+		private static Entry fromLine(String line) throws IOException {
+
+			String[] fields = line.split("\t", -1);
+			if(fields.length!=7) {
+
+				throw new IOException("malformed catalogue line: " + line);
+			}
+
+			Set<Character> chains = new TreeSet<Character>();
+			for(char chain : fields[4].toCharArray()) {
+
+				chains.add(chain);
+			}
+
+			Map<Character,Character> aliases = new LinkedHashMap<Character,Character>();
+			if(!fields[5].isEmpty()) {
+
+				for(String alias : fields[5].split(",")) {
+
+					if(alias.length()!=3 || alias.charAt(1)!='=') {
+
+						throw new IOException("malformed alias in catalogue line: " + line);
+					}
+					aliases.put(alias.charAt(0), alias.charAt(2));
+				}
+			}
+
+			Map<Character,Integer> depths = new LinkedHashMap<Character,Integer>(),
+								   lengths = new LinkedHashMap<Character,Integer>();
+			if(!fields[6].isEmpty()) {
+
+				for(String size : fields[6].split(",")) {
+
+					String[] n = size.split(":");
+					if(n.length!=3 || n[0].length()!=1) {
+
+						throw new IOException("malformed alignment size in catalogue line: " + line);
+					}
+					depths.put(n[0].charAt(0), Integer.parseInt(n[1]));
+					lengths.put(n[0].charAt(0), Integer.parseInt(n[2]));
+				}
+			}
+
+			return new Entry(fields[0], fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+					Collections.unmodifiableSet(chains), Collections.unmodifiableMap(aliases),
+					Collections.unmodifiableMap(depths), Collections.unmodifiableMap(lengths));
+		}
+	}
+
+	// null if the catalogue is not stored
+	private final File storeFile;
+
+	private final ConcurrentMap<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+
+	private static final String removedMark = "-";
+
+	/**
+	 * @param storeFile where the catalogue is stored, null to keep it in memory only
+	 */
+	public StructureCatalogue(File storeFile) {
+
+		this.storeFile = storeFile;
+
+		if(storeFile!=null && storeFile.isFile()) {
+
+			try {
+				load();
+
+			} catch(IOException e) {
+
+				log.error("cannot read catalogue " + storeFile + ": " + e.getMessage(), e);
+
+				// an old format or a damaged file, start over so that new lines can be appended
+				entries.clear();
+				try {
+					compact();
+
+				} catch(IOException e2) {
+
+					log.error("cannot rewrite catalogue " + storeFile + ": " + e2.getMessage(), e2);
+				}
+			}
+		}
+	}
+
+	private void load() throws IOException {
+
+		int nlines = 0;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(storeFile), StandardCharsets.UTF_8));
+		try {
+			String line = reader.readLine();
+			if(!formatHeader.equals(line)) {
+
+				throw new IOException("not a catalogue: " + storeFile);
+			}
+
+			while((line=reader.readLine())!=null) {
+
+				if(line.isEmpty())
+					continue;
+
+				nlines++;
+
+				String[] removed = line.split("\t");
+				if(removed.length==2 && removed[1].equals(removedMark)) {
+
+					entries.remove(removed[0]);
+					continue;
+				}
+
+				try {
+					Entry entry = Entry.fromLine(line);
+					entries.put(entry.getStructureID(), entry);
+
+				} catch(NumberFormatException e) {
+
+					// probably a line that was being written when the server stopped
+					log.warn("skipping catalogue line: " + line);
+
+				} catch(IOException e) {
+
+					log.warn(e.getMessage());
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		if(nlines > 2 * entries.size() + 1000) {
+
+			compact();
+		}
+	}
+
+	/**
+	 * Rewrites the store file with only the current entries.
+	 */
+	public synchronized void compact() throws IOException {
+
+		if(storeFile==null)
+			return;
+
+		File tmp = File.createTempFile(storeFile.getName(), ".tmp", storeFile.getAbsoluteFile().getParentFile());
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8);
+			try {
+				writer.write(formatHeader + "\n");
+				for(Entry entry : entries.values()) {
+
+					writer.write(entry.toLine() + "\n");
+				}
+			}
+			finally {
+				writer.close();
+			}
+
+			Files.move(tmp.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			tmp.delete();
+		}
+	}
+
+	private synchronized void append(String structureID, String line) {
+
+		if(storeFile==null)
+			return;
+
+		try {
+			boolean isNew = !storeFile.isFile();
+
+			Writer writer = new OutputStreamWriter(new FileOutputStream(storeFile, true), StandardCharsets.UTF_8);
+			try {
+				if(isNew) {
+
+					writer.write(formatHeader + "\n");
+				}
+				writer.write(line + "\n");
+			}
+			finally {
+				writer.close();
+			}
+		} catch(IOException e) {
+
+			log.warn("cannot store catalogue entry for " + structureID + ": " + e.getMessage());
+		}
+	}
+
+	private static String key(String structureID) {
+
+		return structureID.toLowerCase();
+	}
+
+	/**
+	 * Doesn't look at any files.
+	 *
+	 * @return the entry, which might be out of date, or null if the structure isn't in the catalogue
+	 */
+	public Entry get(String structureID) {
+
+		return entries.get(key(structureID));
+	}
+
+	/**
+	 * @return the entry for the given stockholm file, from the catalogue if it's up to date,
+	 * otherwise from the file's index
+	 */
+	public Entry get(String structureID, File hsspFile, File indexFile) throws IOException {
+
+		Entry entry = get(structureID);
+		if(entry!=null && entry.isUpToDate(hsspFile)) {
+
+			return entry;
+		}
+
+		return add(structureID, hsspFile, StockholmIndex.get(hsspFile, indexFile));
+	}
+
+	/**
+	 * Puts the chains of the indexed stockholm file in the catalogue.
+	 */
+	public Entry add(String structureID, File hsspFile, StockholmIndex index) {
+
+		Map<Character,Integer> depths = new LinkedHashMap<Character,Integer>(),
+							   lengths = new LinkedHashMap<Character,Integer>();
+		for(char chain : new TreeSet<Character>(index.listChains())) {
+
+			if(!index.getAliases().containsKey(chain)) {
+
+				depths.put(chain, index.getAlignmentDepth(chain));
+				lengths.put(chain, index.getAlignmentLength(chain));
+			}
+		}
+
+		Entry entry = new Entry(key(structureID), hsspFile.getAbsolutePath(), index.getSourceLength(), index.getSourceLastModified(),
+				Collections.unmodifiableSet(new TreeSet<Character>(index.listChains())),
+				Collections.unmodifiableMap(new LinkedHashMap<Character,Character>(index.getAliases())),
+				Collections.unmodifiableMap(depths), Collections.unmodifiableMap(lengths));
+
+		entries.put(entry.getStructureID(), entry);
+		append(entry.getStructureID(), entry.toLine());
+
+		return entry;
+	}
+
+	/**
+	 * Takes the entry out of the catalogue, for when its stockholm file is gone.
+	 * Nothing happens if the structure's entry has been replaced in the meantime.
+	 */
+	public void remove(Entry entry) {
+
+		if(entries.remove(entry.getStructureID(), entry)) {
+
+			append(entry.getStructureID(), entry.getStructureID() + "\t" + removedMark);
+		}
+	}
+
+	/**
+	 * @return all entries, which might be out of date
+	 */
+	public Collection<Entry> getEntries() {
+
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	public int size() {
+
+		return entries.size();
+	}
+}
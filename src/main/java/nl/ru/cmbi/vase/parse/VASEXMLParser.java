@@ -15,33 +15,32 @@
  */
 package nl.ru.cmbi.vase.parse;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
 import nl.ru.cmbi.vase.data.TableData;
 import nl.ru.cmbi.vase.data.VASEDataObject;
 import nl.ru.cmbi.vase.data.TableData.ColumnInfo;
 import nl.ru.cmbi.vase.data.VASEDataObject.PlotDescription;
 import nl.ru.cmbi.vase.data.stockholm.Alignment;
 
-import org.apache.commons.io.IOUtils;
-import org.dom4j.CDATA;
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
-import org.dom4j.DocumentFactory;
-import org.dom4j.Element;
-import org.dom4j.io.SAXReader;
-import org.dom4j.io.XMLWriter;
-import org.mortbay.log.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,83 +48,71 @@ public class VASEXMLParser {
 	
 	static Logger log = LoggerFactory.getLogger(VASEXMLParser.class);
 	
-	private static void table2xml(TableData tableData, Element root) {
+	private static void writeTable(TableData tableData, XMLStreamWriter writer) throws XMLStreamException {
 		
-		Element table = root.addElement("data_table");
+		writer.writeStartElement("data_table");
 		
 		for(ColumnInfo ci : tableData.getColumnInfos()) {
 			
-			Element column = table.addElement("column");
-			column.addAttribute("id", ci.getId());
+			writer.writeEmptyElement("column");
+			writer.writeAttribute("id", ci.getId());
 			
 			if(!ci.getTitle().isEmpty())
-				column.addAttribute("title", ci.getTitle());
+				writer.writeAttribute("title", ci.getTitle());
 			
-			column.addAttribute("hidden", new Boolean(ci.isHidden()).toString());
-			column.addAttribute("mouseover", new Boolean(ci.isMouseOver()).toString());
+			writer.writeAttribute("hidden", Boolean.toString(ci.isHidden()));
+			writer.writeAttribute("mouseover", Boolean.toString(ci.isMouseOver()));
 		}
 		
+		int ncolumns = tableData.getColumnInfos().size();
 		for(int i=0; i<tableData.getNumberOfRows(); i++) {
 			
-			Element row = table.addElement("row");
-			
-			Map<String,Object> rowData = tableData.getRowValues(i);
+			writer.writeStartElement("row");
 			
-			for(ColumnInfo ci : tableData.getColumnInfos()) {
+			for(int j=0; j<ncolumns; j++) {
 				
-				Element value = row.addElement("value");
-				value.addText(rowData.get(ci.getId()).toString());
+				writer.writeStartElement("value");
+				writer.writeCharacters(tableData.getString(j, i));
+				writer.writeEndElement();
 			}
+			
+			writer.writeEndElement();
 		}
+		
+		writer.writeEndElement();
 	}
 	
-	private static TableData parseTable(Element root, int alignmentLength) throws Exception {
-		
-		Element table = root.element("data_table");
-		if(table==null) {
-			throw new Exception("missting table element");
-		}
-		List<ColumnInfo> columns=new ArrayList<ColumnInfo>();
-		
-		for(Element column : (List<Element>)table.elements("column")) {
-			
-			if(column.attribute("id")==null) {
-				throw new Exception("there\'s a column with no id");
-			}
-			
-			ColumnInfo ci = new ColumnInfo();
-			ci.setId(column.attribute("id").getValue());
-			
-			if(column.attribute("title")!=null) {
-				ci.setTitle(column.attribute("title").getValue());
-			}
-			if(column.attribute("hidden")!=null) {
-				ci.setHidden(Boolean.parseBoolean(column.attribute("hidden").getValue()));
-			}
-			if(column.attribute("mouseover")!=null) {
-				ci.setMouseOver(Boolean.parseBoolean(column.attribute("mouseover").getValue()));
-			}
-			columns.add(ci);
-		}
+	/**
+	 * Writes the alignment in fasta format, 100 residues per line like {@link FastaParser#toFasta(Map, OutputStream)},
+	 * without making a string for every sequence.
+	 */
+	private static void writeFasta(Alignment alignment, XMLStreamWriter writer) throws XMLStreamException {
 		
-		TableData tableData = new TableData(columns);
+		char[] line = new char[fastaLineLength + 1];
 		
-		int rowIndex=0;
-		for(Element row : (List<Element>)table.elements("row")) {
+		for(int row=0; row<alignment.countAlignedSeqs(); row++) {
 			
-			List<Element> values = row.elements("value");
-			if( columns.size() != values.size() ) {
-				throw new Exception("the number of value tags must always match the number of columns");
-			}
+			writer.writeCharacters(">" + alignment.getLabel(row) + "\n");
 			
-			for(int i=0; i<values.size(); i++) {
+			int seqLength = alignment.getSeqLength(row);
+			for(int start=0; start<seqLength; start+=fastaLineLength) {
+				
+				int end = Math.min(start + fastaLineLength, seqLength);
+				for(int i=start; i<end; i++) {
+					
+					line[i - start] = alignment.getResidue(row, i);
+				}
+				line[end - start] = '\n';
 				
-				tableData.setValue(columns.get(i).getId(), rowIndex, values.get(i).getText());
+				writer.writeCharacters(line, 0, end - start + 1);
 			}
-			rowIndex++;
 		}
-		
-		// Do some checks on the contents:
+	}
+	
+	/**
+	 * Checks the contents of a table, once all its rows have been read.
+	 */
+	private static void checkTable(TableData tableData, int alignmentLength) throws Exception {
 		
 		ColumnInfo	columnResidueNumber = tableData.getColumnByID(TableData.residueNumberID),
 					columnPDBResidue = tableData.getColumnByID(TableData.pdbResidueID);
@@ -163,126 +150,366 @@ public class VASEXMLParser {
 			
 			throw new Exception("missing column: "+TableData.pdbResidueID);
 		}
-		
-		return tableData;
 	}
 	
+	private static final int fastaLineLength = 100;
+	
+	// characters are collected in a buffer of this size before they go to the output stream
+	private static final int writeBufferSize = 64 * 1024;
+	
+	private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+	
+	/**
+	 * Writes the data object as xml, straight to the output stream.
+	 * Closes the output stream when done.
+	 */
 	public static void write(VASEDataObject data, OutputStream xmlOut) throws IOException {
 		
-		DocumentFactory df = DocumentFactory.getInstance();
+		Writer out = new BufferedWriter(new OutputStreamWriter(xmlOut, StandardCharsets.UTF_8), writeBufferSize);
+		try {
+			XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out);
+			
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("xml");
+			
+			if(data.getTitle()!=null) {
+				
+				writer.writeStartElement("title");
+				writer.writeCharacters(data.getTitle());
+				writer.writeEndElement();
+			}
+			
+			writer.writeStartElement("fasta");
+			writeFasta(data.getAlignment(), writer);
+			writer.writeEndElement();
+			
+			writer.writeEmptyElement("pdb");
+			if(data.getPdbID()!=null) {
+				
+				writer.writeAttribute("pdbid", data.getPdbID());
+			}
+			
+			writeTable(data.getTable(), writer);
+			
+			if(data.getPlots().size()>0) {
+				
+				writer.writeStartElement("plots");
+				for(PlotDescription pd : data.getPlots()) {
+					
+					writer.writeStartElement("plot");
+					if(pd.getPlotTitle()!=null) {
+						
+						writer.writeAttribute("title", pd.getPlotTitle());
+					}
+					
+					writer.writeStartElement("x");
+					writer.writeCharacters(pd.getXAxisColumnID());
+					writer.writeEndElement();
+					
+					writer.writeStartElement("y");
+					writer.writeCharacters(pd.getYAxisColumnID());
+					writer.writeEndElement();
+					
+					writer.writeEndElement();
+				}
+				writer.writeEndElement();
+			}
+			
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.close();
+			
+		} catch (XMLStreamException e) {
+			
+			throw new IOException(e);
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+	static {
 		
-		Document doc = df.createDocument();
+		// the files come from users, they must not make us read anything else
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
 		
-		Element root = doc.addElement("xml");
+		// hand long texts, like the fasta, over in pieces
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+	}
+	
+	/**
+	 * Skips the rest of the current element, including its children.
+	 */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
 		
-		if(data.getTitle()!=null) {
+		int depth=1;
+		while(depth>0) {
 			
-			Element title = root.addElement("title");
-			title.setText(data.getTitle());
+			int event = reader.next();
+			if(event==XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if(event==XMLStreamConstants.END_ELEMENT)
+				depth--;
 		}
+	}
+	
+	/**
+	 * Feeds the text of the fasta element to the fasta parser, piece by piece,
+	 * so that the text as a whole is never in memory.
+	 */
+	private static Alignment readFasta(XMLStreamReader reader) throws XMLStreamException {
 		
-		Element fasta = root.addElement("fasta");
-		ByteArrayOutputStream fastaStream = new ByteArrayOutputStream();
-		FastaParser.toFasta(data.getAlignment().getMap(),fastaStream);
+		FastaParser.Builder builder = new FastaParser.Builder();
 		
-		fasta.add( df.createCDATA ( 
-				new String( fastaStream.toByteArray(),StandardCharsets.UTF_8 ) ) );
-
-		Element pdb = root.addElement("pdb");
-		pdb.addAttribute("pdbid", data.getPdbID());
+		int event;
+		while((event=reader.next())!=XMLStreamConstants.END_ELEMENT) {
+			
+			if(event==XMLStreamConstants.CHARACTERS || event==XMLStreamConstants.CDATA
+					|| event==XMLStreamConstants.SPACE) {
+				
+				builder.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+			}
+			else if(event==XMLStreamConstants.START_ELEMENT) {
+				
+				skipElement(reader);
+			}
+		}
 		
-		table2xml(data.getTable(), root);
+		return new Alignment('-', builder.finish());
+	}
+	
+	/**
+	 * Reads the columns and rows of the data_table element. The values go into the table
+	 * as they are read.
+	 */
+	private static TableData readTable(XMLStreamReader reader) throws Exception {
+		
+		List<ColumnInfo> columns=new ArrayList<ColumnInfo>();
+		TableData tableData = null;
 		
-		if(data.getPlots().size()>0) {
-			Element plots = root.addElement("plots");
-			for(PlotDescription pd : data.getPlots()) {
+		int rowIndex=0;
+		while(reader.nextTag()==XMLStreamConstants.START_ELEMENT) {
+			
+			if(reader.getLocalName().equals("column")) {
 				
-				Element plot = plots.addElement("plot");
-				plot.addElement("x").setText(pd.getXAxisColumnID());
-				plot.addElement("y").setText(pd.getYAxisColumnID());
-				plot.addAttribute("title", pd.getPlotTitle());
+				if(tableData!=null) {
+					throw new Exception("all columns must be specified before the first row");
+				}
+				
+				String id = reader.getAttributeValue(null, "id");
+				if(id==null) {
+					throw new Exception("there\'s a column with no id");
+				}
+				
+				ColumnInfo ci = new ColumnInfo();
+				ci.setId(id);
+				
+				String title = reader.getAttributeValue(null, "title"),
+					hidden = reader.getAttributeValue(null, "hidden"),
+					mouseover = reader.getAttributeValue(null, "mouseover");
+				
+				if(title!=null) {
+					ci.setTitle(title);
+				}
+				if(hidden!=null) {
+					ci.setHidden(Boolean.parseBoolean(hidden));
+				}
+				if(mouseover!=null) {
+					ci.setMouseOver(Boolean.parseBoolean(mouseover));
+				}
+				columns.add(ci);
+				
+				skipElement(reader);
+			}
+			else if(reader.getLocalName().equals("row")) {
+				
+				if(tableData==null) {
+					tableData = new TableData(columns);
+				}
+				
+				int nvalues=0;
+				while(reader.nextTag()==XMLStreamConstants.START_ELEMENT) {
+					
+					if(!reader.getLocalName().equals("value")) {
+						
+						skipElement(reader);
+						continue;
+					}
+					
+					if(nvalues>=columns.size()) {
+						throw new Exception("the number of value tags must always match the number of columns");
+					}
+					
+					tableData.setValue(columns.get(nvalues).getId(), rowIndex, reader.getElementText());
+					nvalues++;
+				}
+				
+				if(nvalues!=columns.size()) {
+					throw new Exception("the number of value tags must always match the number of columns");
+				}
+				rowIndex++;
 			}
+			else skipElement(reader);
+		}
+		
+		if(tableData==null) {
+			tableData = new TableData(columns);
+		}
+		return tableData;
+	}
+	
+	private static List<PlotDescription> readPlots(XMLStreamReader reader) throws Exception {
+		
+		List<PlotDescription> plots = new ArrayList<PlotDescription>();
+		
+		while(reader.nextTag()==XMLStreamConstants.START_ELEMENT) {
+			
+			if(!reader.getLocalName().equals("plot")) {
+				
+				skipElement(reader);
+				continue;
+			}
+			
+			PlotDescription d = new PlotDescription();
+			
+			String title = reader.getAttributeValue(null, "title");
+			if(title==null) {
+				throw new Exception("evry plot must have a title");
+			}
+			d.setPlotTitle(title);
+			
+			while(reader.nextTag()==XMLStreamConstants.START_ELEMENT) {
+				
+				if(reader.getLocalName().equals("x") && d.getXAxisColumnID()==null) {
+					
+					d.setXAxisColumnID(reader.getElementText());
+				}
+				else if(reader.getLocalName().equals("y") && d.getYAxisColumnID()==null) {
+					
+					d.setYAxisColumnID(reader.getElementText());
+				}
+				else skipElement(reader);
+			}
+			
+			if(d.getXAxisColumnID()==null || d.getYAxisColumnID()==null) {
+				throw new Exception("every plot must have a column specified for x and y");
+			}
+			
+			plots.add(d);
 		}
 		
-		XMLWriter writer = new XMLWriter(xmlOut);
-		writer.write(doc);
-		writer.close();
+		return plots;
 	}
 
+	/**
+	 * Reads the xml with a pull parser, without building a document tree.
+	 * The fasta and the table rows are put in the alignment and table as they are read,
+	 * so the memory used is not much more than the resulting data object.
+	 */
 	public static VASEDataObject parse(InputStream xmlIn) throws Exception {
 		
-		Document document = (new SAXReader()).read(xmlIn);
-
-		Element root = document.getRootElement();
-
-		Element fasta = root.element("fasta");
-		if(fasta==null) {
-			throw new Exception("no fasta tag");
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(xmlIn);
+		
+		Alignment alignment = null;
+		TableData tableData = null;
+		String pdbID = null, title = null;
+		boolean hasPDB = false;
+		List<PlotDescription> plots = null;
+		Map<String, URL> sequenceURLs = new LinkedHashMap<String, URL>();
+		
+		try {
+			reader.nextTag(); // the root element
+			
+			while(reader.nextTag()==XMLStreamConstants.START_ELEMENT) {
+				
+				String name = reader.getLocalName();
+				
+				// like in a document tree, the first element with a name is the one that counts
+				if(name.equals("fasta") && alignment==null) {
+					
+					alignment = readFasta(reader);
+				}
+				else if(name.equals("pdb") && !hasPDB) {
+					
+					pdbID = reader.getAttributeValue(null, "pdbid");
+					hasPDB = true;
+					skipElement(reader);
+				}
+				else if(name.equals("title") && title==null) {
+					
+					title = reader.getElementText();
+				}
+				else if(name.equals("sequence-url")) {
+					
+					String id = reader.getAttributeValue(null, "id");
+					URL url = new URL(reader.getElementText());
+					if(id==null) {
+						throw new Exception("no id given for "+url.toString());
+					}
+					sequenceURLs.put(id, url);
+				}
+				else if(name.equals("data_table") && tableData==null) {
+					
+					tableData = readTable(reader);
+				}
+				else if(name.equals("plots") && plots==null) {
+					
+					plots = readPlots(reader);
+				}
+				else skipElement(reader);
+			}
+		}
+		finally {
+			reader.close();
 		}
-		Map<String,String> fastaMap = FastaParser.parseFasta(IOUtils.toInputStream(fasta.getText(), "UTF-8")); 
-		Alignment alignment = new Alignment(fastaMap);
 		
-		Element pdb = root.element("pdb");
-		if(pdb==null) {
+		// Check in the same order as when the whole document was available:
+		
+		if(alignment==null) {
+			throw new Exception("no fasta tag");
+		}
+		if(!hasPDB) {
 			throw new Exception("no pdb tag");
 		}
+		if(tableData==null) {
+			throw new Exception("missting table element");
+		}
+		checkTable(tableData, alignment.countColumns());
 		
-		TableData tableData = parseTable(root, alignment.countColumns() );
-		
-		VASEDataObject data = new VASEDataObject(alignment, tableData, pdb.attributeValue("pdbid"));
+		VASEDataObject data = new VASEDataObject(alignment, tableData, pdbID);
 		
-		Element title = root.element("title");
 		if(title!=null) {
 			
-			data.setTitle(title.getText());
+			data.setTitle(title);
 		}
 		
-		for(Element sequenceUrl : (List<Element>)root.elements("sequence-url")) {
-
-			URL url = new URL(sequenceUrl.getText());
-			if(sequenceUrl.attribute("id")==null) {
-				throw new Exception("no id given for "+url.toString());
-				
-			}
-			String id = sequenceUrl.attribute("id").getValue();
+		for(String id : sequenceURLs.keySet()) {
 			
-			if(!fastaMap.containsKey(id)) {
+			if(alignment.getRow(id)==-1) {
 				throw new Exception("no sequence with id "+id+" in fasta");
 			}
-			data.getSequenceReferenceURLs().put(id, url);
+			data.getSequenceReferenceURLs().put(id, sequenceURLs.get(id));
 		}
-
-		Element plots = root.element("plots");
+		
 		if(plots!=null) {
 			
-			for(Element plot : (List<Element>)plots.elements("plot")) {
-				
-				PlotDescription d = new PlotDescription();
-				
-				if(plot.attribute("title")==null) {
-					throw new Exception("evry plot must have a title");
-				}
-				d.setPlotTitle(plot.attribute("title").getValue());
-				
-				Element x = plot.element("x"), y = plot.element("y");
-				if(x==null || y==null) {
-					throw new Exception("every plot must have a column specified for x and y");
-				}
+			for(PlotDescription d : plots) {
 				
-				for(Element axis : (new Element[] {x,y}) ) {
+				for(String axis : (new String[] {d.getXAxisColumnID(), d.getYAxisColumnID()}) ) {
 					
-					ColumnInfo column = tableData.getColumnByID(axis.getText());
+					ColumnInfo column = tableData.getColumnByID(axis);
 					if(column==null) {
 	
-						throw new Exception("There\'s no column with id "+axis.getText()+" (specified in plot)");
+						throw new Exception("There\'s no column with id "+axis+" (specified in plot)");
 					}
 					else if(!tableData.columnIsNumber(column.getId())) {
 	
-						throw new Exception("Column with id "+axis.getText()+" cannot be used in plot, since it\'s not numerical");
+						throw new Exception("Column with id "+axis+" cannot be used in plot, since it\'s not numerical");
 					}
 				}
-				d.setXAxisColumnID(x.getText());
-				d.setYAxisColumnID(y.getText());
 				
 				data.getPlots().add(d);
 			}
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.tools.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * Finds the compressed blocks in a bzip2 file, so that a part of the file
+ * can be decompressed without decompressing everything in front of it.
+ *
+ * bzip2 blocks are not aligned to bytes. Every block starts with a 48 bit magic number,
+ * followed by the block's 32 bit CRC. A stream ends with another magic number and
+ * the combined CRC of all its blocks.
+ */
+public class BZip2Blocks {
+
+	public static final long
+		blockMagic = 0x314159265359L,
+		endOfStreamMagic = 0x177245385090L;
+
+	private static final long magicMask = 0xffffffffffffL;
+
+	private static final int magicBits = 48, crcBits = 32;
+
+	@Data
+	public static class Block {
+
+		private final long bitOffset, bitLength; // including the magic number
+
+		private final int crc;
+	}
+
+	/**
+	 * Lists the blocks in a bzip2 file by looking for their magic numbers.
+	 *
+	 * The magic number can, by chance, also occur inside compressed data.
+	 * Such false positives only show when the block is decompressed.
+	 */
+	public static List<Block> scan(File file) throws IOException {
+
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return scan(in);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	public static List<Block> scan(InputStream compressedIn) throws IOException {
+
+		List<Block> blocks = new ArrayList<Block>();
+
+		long bits=0, bitPos=0,
+			 blockStart=-1;
+		int crc=0, crcBitsToRead=0, bitsToSkip=0;
+
+		int b;
+		while((b=compressedIn.read())!=-1) {
+
+			for(int i=7; i>=0; i--) {
+
+				int bit = (b >>> i) & 1;
+
+				bits = (bits << 1) | bit;
+				bitPos++;
+
+				if(crcBitsToRead>0) {
+
+					crc = (crc << 1) | bit;
+					crcBitsToRead--;
+				}
+				else if(bitsToSkip>0) {
+
+					bitsToSkip--;
+				}
+				else if(bitPos>=magicBits && (bits & magicMask)==blockMagic) {
+
+					if(blockStart>=0) {
+
+						blocks.add(new Block(blockStart, bitPos - magicBits - blockStart, crc));
+					}
+
+					blockStart = bitPos - magicBits;
+					crc = 0;
+					crcBitsToRead = crcBits;
+				}
+				else if(bitPos>=magicBits && (bits & magicMask)==endOfStreamMagic) {
+
+					if(blockStart>=0) {
+
+						blocks.add(new Block(blockStart, bitPos - magicBits - blockStart, crc));
+					}
+
+					blockStart = -1;
+					bitsToSkip = crcBits; // the combined crc, after that the stream is padded to a byte
+				}
+			}
+		}
+
+		if(blockStart>=0) {
+
+			throw new IOException("bzip2 data ends without an end of stream marker");
+		}
+
+		return blocks;
+	}
+
+	/**
+	 * Writes bits to a byte array, most significant bit first.
+	 */
+	private static class BitWriter {
+
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		private int buffer=0, nBuffered=0;
+
+		public void write(long value, int nbits) {
+
+			for(int i=nbits-1; i>=0; i--) {
+
+				buffer = (buffer << 1) | (int)((value >>> i) & 1);
+				nBuffered++;
+
+				if(nBuffered==8) {
+
+					out.write(buffer);
+					buffer=0;
+					nBuffered=0;
+				}
+			}
+		}
+
+		/**
+		 * Pads the last byte with zeros.
+		 */
+		public byte[] toByteArray() {
+
+			if(nBuffered>0) {
+
+				write(0, 8 - nBuffered);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	private static void copyBits(RandomAccessFile file, long bitOffset, long bitLength, BitWriter writer)
+			throws IOException {
+
+		long firstByte = bitOffset >>> 3,
+			 lastByte = (bitOffset + bitLength - 1) >>> 3;
+
+		byte[] bytes = new byte[(int)(lastByte - firstByte + 2)]; // one extra, to shift from
+		file.seek(firstByte);
+		file.readFully(bytes, 0, (int)(lastByte - firstByte + 1));
+
+		int shift = (int)(bitOffset & 7);
+		long remaining = bitLength;
+		int i=0;
+		while(remaining>=8) {
+
+			int value = (((bytes[i] & 0xff) << 8) | (bytes[i+1] & 0xff)) >>> (8 - shift);
+
+			writer.write(value & 0xff, 8);
+			remaining-=8;
+			i++;
+		}
+		if(remaining>0) {
+
+			int value = (((bytes[i] & 0xff) << 8) | (bytes[i+1] & 0xff)) >>> (16 - shift - (int)remaining);
+
+			writer.write(value, (int)remaining);
+		}
+	}
+
+	/**
+	 * @return a complete bzip2 stream, containing only the given blocks
+	 */
+	public static byte[] toStream(File file, List<Block> blocks) throws IOException {
+
+		BitWriter writer = new BitWriter();
+
+		// "BZh9" : the largest block size, so that any block fits
+		writer.write('B', 8);
+		writer.write('Z', 8);
+		writer.write('h', 8);
+		writer.write('9', 8);
+
+		int combinedCRC=0;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			for(Block block : blocks) {
+
+				copyBits(raf, block.getBitOffset(), block.getBitLength(), writer);
+
+				combinedCRC = ((combinedCRC << 1) | (combinedCRC >>> 31)) ^ block.getCrc();
+			}
+		}
+		finally {
+			raf.close();
+		}
+
+		writer.write(endOfStreamMagic, magicBits);
+		writer.write(combinedCRC & 0xffffffffL, crcBits);
+
+		return writer.toByteArray();
+	}
+
+	/**
+	 * @return the decompressed contents of the given blocks
+	 */
+	public static InputStream open(File file, List<Block> blocks) throws IOException {
+
+		return new BZip2CompressorInputStream(new ByteArrayInputStream(toStream(file, blocks)));
+	}
+}
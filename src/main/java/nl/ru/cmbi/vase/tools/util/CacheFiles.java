@@ -0,0 +1,141 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.tools.util;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * For the caches that keep their entries as files in a directory.
+ */
+public final class CacheFiles {
+
+	private CacheFiles() {
+	}
+
+	// temporary files older than this are left over from a crash
+	private static final long tmpFileMaxAge = TimeUnit.HOURS.toMillis(1);
+
+	/**
+	 * Told about every entry that {@link CacheFiles#trim(File, String, long, DeleteListener)} deletes.
+	 */
+	public interface DeleteListener {
+
+		public void deleted(File file);
+	}
+
+	/**
+	 * @return the SHA-1 digest of the bytes, in hexadecimal
+	 */
+	public static String sha1Hex(byte[] bytes) {
+
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+
+			StringBuilder hex = new StringBuilder();
+			for(byte b : digest) {
+
+				hex.append(String.format("%02x", b & 0xff));
+			}
+			return hex.toString();
+
+		} catch(NoSuchAlgorithmException e) {
+
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static String sha1Hex(String s) {
+
+		return sha1Hex(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Deletes old temporary files, and the least recently modified entries until the entries
+	 * take no more than maxSize bytes.
+	 *
+	 * @param extension the entries are the files whose names end with this
+	 * @param listener null if nobody needs to know
+	 * @return the number of entries deleted
+	 */
+	public static int trim(File dir, String extension, long maxSize, DeleteListener listener) {
+
+		File[] files = dir.listFiles();
+		if(files==null)
+			return 0;
+
+		long now = System.currentTimeMillis(),
+			 totalSize = 0;
+		for(File file : files) {
+
+			if(file.getName().endsWith(".tmp") && now - file.lastModified() > tmpFileMaxAge) {
+
+				file.delete();
+			}
+			else if(file.getName().endsWith(extension)) {
+
+				totalSize += file.length();
+			}
+		}
+
+		if(totalSize <= maxSize)
+			return 0;
+
+		// lastModified may change while sorting, so take it once
+		final long[] lastModified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for(int i=0; i<files.length; i++) {
+
+			lastModified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer i, Integer j) {
+
+				return Long.compare(lastModified[i], lastModified[j]);
+			}
+		});
+
+		int deleted = 0;
+		for(int i : order) {
+
+			if(totalSize <= maxSize)
+				break;
+
+			File file = files[i];
+			if(!file.getName().endsWith(extension))
+				continue;
+
+			long length = file.length();
+			if(file.delete()) {
+
+				totalSize -= length;
+				deleted++;
+
+				if(listener!=null)
+					listener.deleted(file);
+			}
+		}
+		return deleted;
+	}
+}
@@ -54,6 +54,214 @@ public class Config {
 		return p;
 	}
 	
+	/**
+	 * Alignments with more residues (sequences times columns) than this are scored
+	 * on multiple threads. Negative means never.
+	 */
+	public static long getParallelScoringThreshold() {
+		
+		String value = properties.getProperty("parallelthreshold");
+		if(value==null)
+			return 1000000;
+		
+		return Long.parseLong(value.trim());
+	}
+	
+	/**
+	 * @return how many threads may decompress blocks of large bzip2 files, by default one per processor
+	 */
+	public static int getBZip2Threads() {
+		
+		String value = properties.getProperty("bzip2threads");
+		if(value==null)
+			return Runtime.getRuntime().availableProcessors();
+		
+		return Integer.parseInt(value.trim());
+	}
+	
+	/**
+	 * @return how many correlated column pairs to list per alignment, zero to skip correlated mutation analysis
+	 */
+	public static int getCmaTopScores() {
+		
+		String value = properties.getProperty("cmascores");
+		if(value==null)
+			return 0;
+		
+		return Integer.parseInt(value.trim());
+	}
+	
+	public static File getResultCacheDir() {
+		
+		String path=properties.getProperty("resultcache");
+		if(path==null) return null;
+		
+		return new File(path);
+	}
+	
+	/**
+	 * Results computed from hssp files are only stored if this directory exists.
+	 */
+	public static boolean resultCacheEnabled() {
+		
+		return properties.getProperty("resultcache")!=null && getResultCacheDir().isDirectory();
+	}
+	
+	/**
+	 * @return how many bytes the stored results may take on disk, set in megabytes
+	 */
+	public static long getResultCacheSize() {
+		
+		String value = properties.getProperty("resultcachesize");
+		if(value==null)
+			return 1024L * 1024 * 1024;
+		
+		return Long.parseLong(value.trim()) * 1024 * 1024;
+	}
+	
+	/**
+	 * @return how many bytes of parsed data objects may be kept in memory, set in megabytes
+	 */
+	public static long getDataCacheSize() {
+		
+		String value = properties.getProperty("datacache");
+		if(value==null)
+			return 256L * 1024 * 1024;
+		
+		return Long.parseLong(value.trim()) * 1024 * 1024;
+	}
+	
+	/**
+	 * @return where the chains of indexed structures are stored, null if they're only kept in memory
+	 */
+	public static File getCatalogueFile() {
+		
+		String path=properties.getProperty("catalogue");
+		if(path==null) return null;
+		
+		return new File(path);
+	}
+	
+	/**
+	 * @return the address of the xssp service's api, that runs the custom jobs
+	 */
+	public static String getXsspURL() {
+		
+		String url = properties.getProperty("xsspurl");
+		if(url==null)
+			return "http://www.cmbi.ru.nl/xssp/api";
+		
+		return url.trim();
+	}
+	
+	/**
+	 * @return how many threads may talk to the xssp service at the same time
+	 */
+	public static int getJobThreads() {
+		
+		String value = properties.getProperty("jobthreads");
+		if(value==null)
+			return 4;
+		
+		return Integer.parseInt(value.trim());
+	}
+	
+	/**
+	 * @return how many calls to the xssp service may wait for a thread, before new jobs are refused
+	 */
+	public static int getJobQueueSize() {
+		
+		String value = properties.getProperty("jobqueue");
+		if(value==null)
+			return 100;
+		
+		return Integer.parseInt(value.trim());
+	}
+	
+	/**
+	 * @return how many requests may wait for job status changes at the same time, each of them takes a thread
+	 */
+	public static int getJobWaiters() {
+		
+		String value = properties.getProperty("jobwaiters");
+		if(value==null)
+			return 50;
+		
+		return Integer.parseInt(value.trim());
+	}
+	
+	/**
+	 * @return how many seconds to wait between asking the xssp service for the status of the running jobs
+	 */
+	public static long getJobPollInterval() {
+		
+		String value = properties.getProperty("jobpollinterval");
+		if(value==null)
+			return 5;
+		
+		return Long.parseLong(value.trim());
+	}
+	
+	/**
+	 * @return whether the hsspmount tree should be indexed in the background
+	 */
+	public static boolean crawlHsspMount() {
+		
+		return Boolean.parseBoolean( properties.getProperty("crawlhsspmount") );
+	}
+	
+	public static File getStructureCacheDir() {
+		
+		String path=properties.getProperty("structurecache");
+		if(path==null) return null;
+		
+		return new File(path);
+	}
+	
+	/**
+	 * Downloaded structure files are only stored if this directory exists.
+	 */
+	public static boolean structureCacheEnabled() {
+		
+		return properties.getProperty("structurecache")!=null && getStructureCacheDir().isDirectory();
+	}
+	
+	/**
+	 * @return how many bytes the stored structure files may take on disk, set in megabytes
+	 */
+	public static long getStructureCacheSize() {
+		
+		String value = properties.getProperty("structurecachesize");
+		if(value==null)
+			return 1024L * 1024 * 1024;
+		
+		return Long.parseLong(value.trim()) * 1024 * 1024;
+	}
+	
+	/**
+	 * @return how many milliseconds a stored structure file is used before checking whether it changed, set in hours
+	 */
+	public static long getStructureMaxAge() {
+		
+		String value = properties.getProperty("structuremaxage");
+		if(value==null)
+			return 7L * 24 * 60 * 60 * 1000;
+		
+		return Long.parseLong(value.trim()) * 60 * 60 * 1000;
+	}
+	
+	/**
+	 * @return the url or directory where structure files are downloaded from
+	 */
+	public static String getStructureUpstream() {
+		
+		String location = properties.getProperty("structureupstream");
+		if(location==null)
+			return "https://files.rcsb.org/view";
+		
+		return location.trim();
+	}
+	
 	public static boolean isXmlOnly() {
 		
 		return Boolean.parseBoolean( properties.getProperty("xmlonly") );
@@ -0,0 +1,263 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.tools.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decompresses the blocks of a bzip2 file on several threads, see {@link BZip2Blocks}.
+ * The decompressed blocks are read in the order of the file.
+ *
+ * Only a few blocks are decompressed ahead of the reader, so memory use doesn't grow with the file.
+ */
+public class ParallelBZip2InputStream extends InputStream {
+
+	static Logger log = LoggerFactory.getLogger(ParallelBZip2InputStream.class);
+
+	private static final int nThreads = Config.getBZip2Threads();
+
+	private static final ExecutorService pool = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable r) {
+
+			Thread thread = new Thread(r, "vase-bzip2");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	// smaller files are decompressed on the calling thread, they don't have enough blocks to be worth it
+	private static final long minParallelFileSize = 1024 * 1024;
+
+	/**
+	 * @return a parallel stream for large files, an ordinary one for small files
+	 */
+	public static InputStream open(File file) throws IOException {
+
+		if(nThreads>1 && file.length()>=minParallelFileSize)
+
+			return new ParallelBZip2InputStream(file, pool, 2 * nThreads);
+		else
+			return new BZip2CompressorInputStream(new BufferedInputStream(new FileInputStream(file)));
+	}
+
+	private static class Pending {
+
+		private final int blockIndex;
+
+		private final Future<byte[]> future;
+
+		public Pending(int blockIndex, Future<byte[]> future) {
+
+			this.blockIndex = blockIndex;
+			this.future = future;
+		}
+	}
+
+	private final File file;
+
+	private final List<BZip2Blocks.Block> blocks;
+
+	private final ExecutorService executor;
+
+	private final int maxPending;
+
+	private final ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+
+	private int nextBlock = 0;
+
+	private byte[] current = new byte[0];
+
+	private int position = 0;
+
+	/**
+	 * @param maxPending how many blocks may be decompressed ahead of the reader
+	 */
+	public ParallelBZip2InputStream(File file, ExecutorService executor, int maxPending) throws IOException {
+
+		this.file = file;
+		this.blocks = BZip2Blocks.scan(file);
+		this.executor = executor;
+		this.maxPending = maxPending;
+
+		submitBlocks();
+	}
+
+	private byte[] decompress(int first, int last) throws IOException {
+
+		BZip2Blocks.Block block;
+		if(first==last) {
+
+			block = blocks.get(first);
+		}
+		else {
+			BZip2Blocks.Block lastBlock = blocks.get(last);
+			block = new BZip2Blocks.Block(blocks.get(first).getBitOffset(),
+					lastBlock.getBitOffset() + lastBlock.getBitLength() - blocks.get(first).getBitOffset(),
+					blocks.get(first).getCrc());
+		}
+
+		InputStream in = BZip2Blocks.open(file, Arrays.asList(block));
+		try {
+			return IOUtils.toByteArray(in);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private void submitBlocks() {
+
+		while(pending.size()<maxPending && nextBlock<blocks.size()) {
+
+			final int index = nextBlock++;
+			pending.add(new Pending(index, executor.submit(new Callable<byte[]>() {
+
+				@Override
+				public byte[] call() throws Exception {
+
+					return decompress(index, index);
+				}
+			})));
+		}
+	}
+
+	/**
+	 * The block magic number can also occur by chance inside compressed data. Then the scan
+	 * splits a block in two and neither part decompresses. Such a block is decompressed again
+	 * together with the blocks after it, until that works.
+	 */
+	private byte[] decompressJoined(int first) throws IOException {
+
+		for(Pending p : pending) {
+
+			p.future.cancel(true);
+		}
+		pending.clear();
+
+		for(int last=first+1; last<blocks.size(); last++) {
+
+			try {
+				byte[] data = decompress(first, last);
+				nextBlock = last + 1;
+
+				return data;
+
+			} catch(Exception e) {
+
+				// try with one more block
+			}
+		}
+		throw new IOException("corrupt bzip2 block in " + file + " at bit " + blocks.get(first).getBitOffset());
+	}
+
+	/**
+	 * @return false at the end of the data
+	 */
+	private boolean nextBlock() throws IOException {
+
+		Pending p = pending.poll();
+		if(p==null)
+			return false;
+
+		try {
+			current = p.future.get();
+
+		} catch(ExecutionException e) {
+
+			log.debug("block " + p.blockIndex + " of " + file + " doesn't decompress on its own: " + e.getCause());
+
+			current = decompressJoined(p.blockIndex);
+
+		} catch(InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while decompressing " + file, e);
+		}
+		position = 0;
+
+		submitBlocks();
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+
+		while(position>=current.length) {
+
+			if(!nextBlock())
+				return -1;
+		}
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+
+		if(len==0)
+			return 0;
+
+		while(position>=current.length) {
+
+			if(!nextBlock())
+				return -1;
+		}
+
+		int n = Math.min(len, current.length - position);
+		System.arraycopy(current, position, b, off, n);
+		position += n;
+
+		return n;
+	}
+
+	@Override
+	public int available() {
+
+		return current.length - position;
+	}
+
+	@Override
+	public void close() {
+
+		for(Pending p : pending) {
+
+			p.future.cancel(true);
+		}
+		pending.clear();
+		nextBlock = blocks.size();
+		current = new byte[0];
+		position = 0;
+	}
+}
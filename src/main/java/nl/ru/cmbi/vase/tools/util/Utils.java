@@ -19,6 +19,7 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -35,9 +36,13 @@ import org.mortbay.log.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.ru.cmbi.vase.data.StructureCache;
+import nl.ru.cmbi.vase.data.VASEDataObject;
+import nl.ru.cmbi.vase.data.VASEDataSource;
+import nl.ru.cmbi.vase.parse.StockholmIndex;
 import nl.ru.cmbi.vase.parse.StockholmParser;
+import nl.ru.cmbi.vase.parse.StructureCatalogue;
 import nl.ru.cmbi.vase.web.WicketApplication;
-import nl.ru.cmbi.vase.web.rest.JobRestResource;
 
 public class Utils {
 	
@@ -91,10 +96,11 @@ public class Utils {
 		return is;
 	}
 	
-	private static JobRestResource getRest() {
+	public static String getRestPath() {
+		
 		WicketApplication vase = (WicketApplication)WicketApplication.get();
 		
-		return (JobRestResource)vase.getRestReference().getResource();
+		return vase.getServletContext().getContextPath() + "/rest";
 	}
 	
 	public static String getPDBPath(String structureID) {
@@ -103,11 +109,7 @@ public class Utils {
 		 * The rcsb website doesn't host the pdb files over http, so
 		 * for jsmol to work, VASE must provide the file itself.
 		 */
-		WicketApplication vase = (WicketApplication)WicketApplication.get();
-		
-		String path = vase.getServletContext().getContextPath();
-		
-		return path + "/rest/structure/" + structureID;
+		return getRestPath() + "/structure/" + structureID;
 	}
 	public static InputStream getStockholmInputStream(String structureID)
 		throws MalformedURLException, IOException {
@@ -118,7 +120,7 @@ public class Utils {
 			{
 				File file = new File(Config.getHsspMountDir(), structureID + ".hssp.bz2");
 				
-				return new BZip2CompressorInputStream(new FileInputStream(file));
+				return ParallelBZip2InputStream.open(file);
 			}
 			else
 			{				
@@ -133,17 +135,137 @@ public class Utils {
 		
 			if(hsspFile.isFile()) {
 				
-				return new BZip2CompressorInputStream(
-					new FileInputStream(hsspFile) );
+				return ParallelBZip2InputStream.open(hsspFile);
 			}
 		}
-		return new ByteArrayInputStream(getRest().hsspResult(structureID).getBytes());
+		// a custom job that hasn't succeeded (yet)
+		return new ByteArrayInputStream(new byte[0]);
+	}
+	/**
+	 * @return the local .hssp.bz2 file for the given structure, or null if it's not on this machine
+	 */
+	public static File getStockholmFile(String structureID) {
+
+		File hsspFile = null;
+		if(structureID.matches(StockholmParser.pdbAcPattern)) {
+			
+			if (Config.hasHsspMount())
+				hsspFile = new File(Config.getHsspMountDir(), structureID + ".hssp.bz2");
+		}
+		else if(Config.hsspPdbCacheEnabled()) {
+			
+			hsspFile = new File(Config.getHSSPCacheDir(), structureID + ".hssp.bz2");
+		}
+		
+		if(hsspFile!=null && hsspFile.isFile())
+			return hsspFile;
+		else
+			return null;
+	}
+	
+	/**
+	 * @return the chain index of the structure's stockholm file, or null if the file isn't on this machine
+	 */
+	public static StockholmIndex getStockholmIndex(String structureID) throws IOException {
+		
+		File hsspFile = getStockholmFile(structureID);
+		if(hsspFile==null)
+			return null;
+		
+		return StockholmIndex.get(hsspFile, StockholmIndex.getIndexFile(hsspFile));
+	}
+	
+	/**
+	 * @return the catalogue entry of the structure's stockholm file, or null if the file isn't on this machine
+	 */
+	public static StructureCatalogue.Entry getCatalogueEntry(String structureID) throws IOException {
+		
+		File hsspFile = getStockholmFile(structureID);
+		if(hsspFile==null)
+			return null;
+		
+		return StructureCatalogue.getInstance().get(structureID, hsspFile, StockholmIndex.getIndexFile(hsspFile));
+	}
+	
+	/**
+	 * Fast alternative to reading the entire stockholm file:
+	 * if the file is on this machine, only the requested chain's blocks are decompressed.
+	 */
+	public static InputStream getStockholmInputStream(String structureID, char chain)
+		throws MalformedURLException, IOException {
+		
+		File hsspFile = getStockholmFile(structureID);
+		if(hsspFile!=null) {
+			
+			InputStream chainIn = StockholmIndex.get(hsspFile, StockholmIndex.getIndexFile(hsspFile))
+										.openChain(hsspFile, chain);
+			if(chainIn!=null)
+				return chainIn;
+		}
+		
+		return getStockholmInputStream(structureID);
+	}
+	
+	/**
+	 * @return the pdb id that the structure's xml file refers to, or null if there's no such xml file
+	 */
+	private static String getXmlPdbID(String structureID) throws IOException {
+		
+		try {
+			VASEDataObject data = VASEDataSource.getXmlData(structureID);
+			
+			return data==null ? null : data.getPdbID();
+			
+		} catch(IOException e) {
+			
+			throw e;
+			
+		} catch(Exception e) {
+			
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * @return the local gzipped pdb file for the given structure, or null if it's not on this machine
+	 * @throws FileNotFoundException if the structure cache knows that there's no such pdb entry
+	 */
+	public static File getPdbFile(String structureID) throws IOException {
+		
+		if(structureID.matches(StockholmParser.pdbAcPattern)) {
+			
+			if(StructureCache.getInstance()!=null)
+				return StructureCache.getInstance().getFile(structureID);
+			else
+				return null;
+		}
+		
+		if(Config.hsspPdbCacheEnabled()) {
+			
+			File pdbFile = new File(Config.getHSSPCacheDir(), structureID + ".pdb.gz");
+			if(pdbFile.isFile())
+				return pdbFile;
+		}
+		
+		String pdbID = getXmlPdbID(structureID);
+		if(pdbID!=null)
+			return getPdbFile(pdbID);
+		
+		return null;
 	}
+	
+	/**
+	 * @return the structure's pdb contents, or null if there's no such structure
+	 */
 	public static InputStream getPdbInputStream(String structureID)
 			throws MalformedURLException, IOException {
 
 			if(structureID.matches(StockholmParser.pdbAcPattern))
 			{
+				if(StructureCache.getInstance()!=null)
+					
+					return StructureCache.getInstance().open(structureID);
+				
 				log.info("returning inputstream from " + getRcsbURL(structureID).toString());
 				
 				return getRcsbURL(structureID).openStream();
@@ -160,12 +282,21 @@ public class Utils {
 						new FileInputStream(pdbFile) );
 				}
 			}
-			return new ByteArrayInputStream(getRest().structure(structureID).getBytes());
+			
+			String pdbID = getXmlPdbID(structureID);
+			if(pdbID!=null)
+				return getPdbInputStream(pdbID);
+			
+			return null;
 		}
 
 	public static String getPdbContents(String structureID) throws IOException {
 		StringBuffer buf = new StringBuffer();
-		BufferedReader reader = new BufferedReader(new InputStreamReader(getPdbInputStream(structureID)));
+		InputStream pdbIn = getPdbInputStream(structureID);
+		if(pdbIn==null)
+			throw new FileNotFoundException("no structure file for " + structureID);
+		
+		BufferedReader reader = new BufferedReader(new InputStreamReader(pdbIn));
 		String line;
 		while ((line = reader.readLine()) != null)
 		{
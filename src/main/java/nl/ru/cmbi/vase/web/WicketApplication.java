@@ -15,6 +15,9 @@
  */
 package nl.ru.cmbi.vase.web;
 
+import nl.ru.cmbi.vase.data.VASEDiskCache;
+import nl.ru.cmbi.vase.job.JobManager;
+import nl.ru.cmbi.vase.parse.HsspMountCrawler;
 import nl.ru.cmbi.vase.tools.util.Config;
 import nl.ru.cmbi.vase.web.page.AboutPage;
 import nl.ru.cmbi.vase.web.page.AlignmentPage;
@@ -23,7 +26,10 @@ import nl.ru.cmbi.vase.web.page.HomePage;
 import nl.ru.cmbi.vase.web.page.XmlListingPage;
 import nl.ru.cmbi.vase.web.page.InputPage;
 import nl.ru.cmbi.vase.web.page.SearchResultsPage;
+import nl.ru.cmbi.vase.web.rest.AlignmentResource;
+import nl.ru.cmbi.vase.web.rest.HsspResultResource;
 import nl.ru.cmbi.vase.web.rest.JobRestResource;
+import nl.ru.cmbi.vase.web.rest.StructureResource;
 
 import org.apache.wicket.injection.Injector;
 import org.apache.wicket.markup.html.WebPage;
@@ -102,9 +108,62 @@ public class WicketApplication extends WebApplication
 		}
 		
 		mountResource("/rest", this.restReference);
+		
+		// being more specific, these win over "/rest" for their urls
+		mountResource("/rest/structure/${id}", new ResourceReference("structureReference") {
+			
+			StructureResource resource = new StructureResource();
+			
+			@Override
+			public IResource getResource() {
+				return resource;
+			}
+		});
+		mountResource("/rest/hsspresult/${id}", new ResourceReference("hsspResultReference") {
+			
+			HsspResultResource resource = new HsspResultResource();
+			
+			@Override
+			public IResource getResource() {
+				return resource;
+			}
+		});
+		mountResource("/rest/alignment/${id}/${chain}", new ResourceReference("alignmentReference") {
+			
+			AlignmentResource resource = new AlignmentResource();
+			
+			@Override
+			public IResource getResource() {
+				return resource;
+			}
+		});
+		
+		if(VASEDiskCache.getInstance()!=null)
+			VASEDiskCache.getInstance().startCleaner();
+		
+		if(HsspMountCrawler.getInstance()!=null)
+			HsspMountCrawler.getInstance().start();
+		
+		if(JobManager.getInstance()!=null)
+			JobManager.getInstance().start(Config.getJobPollInterval());
 
 		mountResource("/jobs.js", new PackageResourceReference(AlignmentPage.class, "jobs.js"		));
 		mountResource("/align.js", new PackageResourceReference(AlignmentPage.class, "align.js"	));
 		mountResource("/align.css", new PackageResourceReference(AlignmentPage.class, "align.css"	));
 	}
+	
+	@Override
+	protected void onDestroy()
+	{
+		if(VASEDiskCache.getInstance()!=null)
+			VASEDiskCache.getInstance().stopCleaner();
+		
+		if(HsspMountCrawler.getInstance()!=null)
+			HsspMountCrawler.getInstance().stop();
+		
+		if(JobManager.getInstance()!=null)
+			JobManager.getInstance().stop();
+		
+		super.onDestroy();
+	}
 }
@@ -15,63 +15,32 @@
  */
 package nl.ru.cmbi.vase.web.page;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.StringBufferInputStream;
-import java.io.StringWriter;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.zip.GZIPInputStream;
 
-import nl.ru.cmbi.vase.analysis.Calculator;
-import nl.ru.cmbi.vase.analysis.MutationDataObject;
 import nl.ru.cmbi.vase.data.VASEDataObject;
+import nl.ru.cmbi.vase.data.VASEDataSource;
 import nl.ru.cmbi.vase.data.VASEDataObject.PlotDescription;
-import nl.ru.cmbi.vase.data.stockholm.Alignment;
-import nl.ru.cmbi.vase.data.stockholm.AlignmentSet;
-import nl.ru.cmbi.vase.data.stockholm.ResidueInfo;
-import nl.ru.cmbi.vase.data.stockholm.ResidueInfoSet;
 import nl.ru.cmbi.vase.parse.StockholmParser;
-import nl.ru.cmbi.vase.parse.VASEXMLParser;
+import nl.ru.cmbi.vase.parse.StructureCatalogue;
 import nl.ru.cmbi.vase.tools.util.Config;
 import nl.ru.cmbi.vase.tools.util.Utils;
-import nl.ru.cmbi.vase.web.WicketApplication;
 import nl.ru.cmbi.vase.web.panel.align.AlignmentDisplayPanel;
-import nl.ru.cmbi.vase.web.panel.align.AlignmentLinkedPlotPanel;
 import nl.ru.cmbi.vase.web.panel.align.AlignmentTablePanel;
 import nl.ru.cmbi.vase.web.panel.align.StructurePanel;
-import nl.ru.cmbi.vase.web.rest.JobRestResource;
 
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
-import org.apache.commons.io.IOUtils;
 import org.apache.wicket.AttributeModifier;
 import org.apache.wicket.Component;
 import org.apache.wicket.RestartResponseAtInterceptPageException;
 import org.apache.wicket.markup.html.WebMarkupContainer;
-import org.apache.wicket.markup.html.WebPage;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.list.ListItem;
 import org.apache.wicket.markup.html.list.ListView;
 import org.apache.wicket.markup.html.panel.Fragment;
 import org.apache.wicket.markup.repeater.RepeatingView;
-import org.apache.wicket.model.IModel;
-import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.model.Model;
-import org.apache.wicket.protocol.http.RequestUtils;
 import org.apache.wicket.request.Url;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
@@ -110,21 +79,10 @@ public class AlignmentPage extends BasePage {
 			}
 
 			try {	
-				File	xmlFile = new File(Config.getCacheDir(), structureID+".xml"),
-						gzXmlFile = new File(Config.getCacheDir(), structureID+".xml.gz");
-				if(xmlFile.isFile()) {
+				VASEDataObject xmlData = VASEDataSource.getXmlData(structureID);
+				if(xmlData!=null) {
 					
-					VASEDataObject data = 
-						VASEXMLParser.parse( new FileInputStream(xmlFile) );
-					
-					this.initPageWith( data );
-				}
-				else if(gzXmlFile.isFile()) {
-					
-					VASEDataObject data = 
-						VASEXMLParser.parse( new GZIPInputStream( new FileInputStream(xmlFile) ) );
-					
-					this.initPageWith( data );
+					this.initPageWith( xmlData );
 				}
 				else {
 					
@@ -134,22 +92,24 @@ public class AlignmentPage extends BasePage {
 							new ErrorPage( "VASE is running in xml-only mode, so only xml-entries can be accessed. (see homepage)") );
 					}
 					
-					InputStream pdbIn = Utils.getPdbInputStream(structureID);
-					if(pdbIn == null) {
-
-						throw new RestartResponseAtInterceptPageException(
-							new ErrorPage("Unable to resolve PDB URL for: "+structureID));
-					}
+					Set<Character> stockholmChainIDs;
 					
-					InputStream stockholmInputStream = Utils.getStockholmInputStream(structureID);
-					if(stockholmInputStream==null) {
+					StructureCatalogue.Entry catalogueEntry = Utils.getCatalogueEntry(structureID);
+					if(catalogueEntry!=null) {
 						
-						throw new RestartResponseAtInterceptPageException(
-								new ErrorPage("No alignment data for: "+structureID));
+						stockholmChainIDs = catalogueEntry.getChains();
+					}
+					else {
+						
+						InputStream stockholmInputStream = Utils.getStockholmInputStream(structureID);
+						if(stockholmInputStream==null) {
+							
+							throw new RestartResponseAtInterceptPageException(
+									new ErrorPage("No alignment data for: "+structureID));
+						}
+						
+						stockholmChainIDs = StockholmParser.listChainsInStockholm(stockholmInputStream);
 					}
-					
-					Set<Character> stockholmChainIDs =
-						StockholmParser.listChainsInStockholm(stockholmInputStream);
 										
 					if ( chainID==null ) {
 						
@@ -176,10 +136,7 @@ public class AlignmentPage extends BasePage {
 							new ErrorPage("No such chain in " + structureID + ": " + chainID));
 					}
 					
-					stockholmInputStream = Utils.getStockholmInputStream(structureID);
-					
-					VASEDataObject data =
-						StockholmParser.parseStockHolm(stockholmInputStream, pdbIn, structureID, chainID);
+					VASEDataObject data = VASEDataSource.getStockholmData(structureID, chainID);
 					if (data == null)
 						log.error("data is null");
 					
@@ -206,15 +163,19 @@ public class AlignmentPage extends BasePage {
 		setPageTitle(data.getTitle());
 		add(new Label("alignment-header",data.getTitle()));
 		
-		final AlignmentDisplayPanel alignmentPanel = new AlignmentDisplayPanel("alignment",data);
-		add(alignmentPanel);
+		if(chainID==null) {
+			
+			chainID = data.getAlignment().getChainID();
+		}
+		
+		add(new AlignmentDisplayPanel("alignment"));
 		
-		add(new JSDefinitions("js-definitions", alignmentPanel));
+		add(new JSDefinitions("js-definitions"));
 		
 		final RepeatingView tabs = new RepeatingView("tabs");
 		
 		addToTabs( "data-table", "Table", 
-				new AlignmentTablePanel("data-table",alignmentPanel,data),
+				new AlignmentTablePanel("data-table"),
 				tabs);
 		
 		add(new ListView<PlotDescription>("plots", data.getPlots()){
@@ -227,7 +188,9 @@ public class AlignmentPage extends BasePage {
 				PlotDescription pd = item.getModelObject();
 				plotCount++;
 				
-				Component plot = new AlignmentLinkedPlotPanel("plot",alignmentPanel,pd,data.getTable());
+				// align.js draws the plot in here, it finds it by its index
+				Component plot = new WebMarkupContainer("plot");
+				plot.add(new AttributeModifier("data-plot", String.valueOf(item.getIndex())));
 				
 				String id="plot"+plotCount; // must be unique
 				
@@ -290,12 +253,8 @@ public class AlignmentPage extends BasePage {
 	
 	private class JSDefinitions extends Component {
 		
-		private AlignmentDisplayPanel alignmentPanel;
-		
-		public JSDefinitions(String id, AlignmentDisplayPanel a) {
+		public JSDefinitions(String id) {
 			super(id);
-			
-			alignmentPanel = a;
 		}
 
 		@Override
@@ -327,16 +286,16 @@ public class AlignmentPage extends BasePage {
 			getResponse().write("var palignmentposclass=/"
 					+ AlignmentDisplayPanel.alignmentPositionPrefix+"([0-9]+)/;\n");
 			
-			getResponse().write("var pTableCellClass=/"
-					+ AlignmentTablePanel.tableCellClassPrefix+"([^\\s]+)/;\n");
-
 			getResponse().write("var alignment_columnheader_classname='"
 					+ AlignmentDisplayPanel.columnHeaderClassname+"';\n");
 			
+			// everything else comes from here, see align.js
 			getResponse().write( String.format(
-					"var plotHeightDefault = %f,plotWidthDefault = %f;\n",
-					AlignmentLinkedPlotPanel.plotImageHeight,
-					AlignmentLinkedPlotPanel.plotImageWidth ));
+					"var alignmentDataURL = '%s/alignment/%s/' + encodeURIComponent('%s'),\n"
+					+ "alignmentTileURL = alignmentDataURL + '/tile/';\n",
+					JavaScriptUtils.escapeQuotes(Utils.getRestPath()),
+					JavaScriptUtils.escapeQuotes(AlignmentPage.this.structureID),
+					JavaScriptUtils.escapeQuotes(String.valueOf(AlignmentPage.this.chainID)) ));
 			
 			//////////////////////////////////////////////////
 					
@@ -16,7 +16,6 @@
 package nl.ru.cmbi.vase.web.page;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -27,10 +26,10 @@ import java.util.Set;
 
 import nl.ru.cmbi.vase.data.VASEDataObject;
 import nl.ru.cmbi.vase.parse.StockholmParser;
+import nl.ru.cmbi.vase.parse.StructureCatalogue;
 import nl.ru.cmbi.vase.tools.util.Config;
 import nl.ru.cmbi.vase.tools.util.Utils;
 
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.wicket.AttributeModifier;
 import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.markup.html.basic.Label;
@@ -106,16 +105,16 @@ public class SearchResultsPage extends BasePage {
 			
 		try {
 			
-			File hsspFile = new File(Config.getHSSPCacheDir(), structureID+".hssp.bz2");
-			if(hsspFile.isFile()) {
+			// Local files are in the catalogue, once they've been indexed.
+			StructureCatalogue.Entry entry = Utils.getCatalogueEntry(structureID);
+			if(entry!=null) {
 				
-				for(Character chain : StockholmParser.listChainsInStockholm(new BZip2CompressorInputStream( new FileInputStream(hsspFile) ))) {
+				for(Character chain : entry.getChains()) {
 					
 					results.add( new SearchResult(structureID,chain) );
 				}
 			}
-			
-			if(structureID.matches(StockholmParser.pdbAcPattern)) {
+			else if(structureID.matches(StockholmParser.pdbAcPattern)) {
 				
 				for(Character chain : StockholmParser.listChainsInStockholm(Utils.getStockholmInputStream(structureID))) {
 					
@@ -31,182 +31,475 @@ if( !Modernizr.flexbox || !Modernizr.inlinesvg ) {
 }
 
 
-// Because JQuery doesn't work on all tag types/class names,
-// some custom functions are required to perform JQuery-like actions.
-function findElements( tagname, classname ) {
+function addClass( element, classname ) {
 	
-	var tags = document.getElementsByTagName(tagname);
-	var classtags = [];
-	for (var i = 0; i < tags.length; i++) {
+	var classString = element.getAttribute("class");
+	if(classString==null) {
 		
-		if( hasClass(tags[i], classname) ) {
-
-			classtags.push(tags[i]);
-		}
+		classString = "";
 	}
 	
-	return classtags
+	if( classString.indexOf(classname) == -1 ) {
+		
+		element.setAttribute('class', classString +" "+ classname );
+	}
 }
 
-function hasClass( element, classname ) {
+function removeClass( element, classname ) {
 	
-	if(element != null && element.getAttribute("class")!=null) {
-
-		var classes = element.getAttribute("class").split(/\s+/);
+	var classString = element.getAttribute("class");
+	if(classString!=null) {
 
-		for(var i=0; i<classes.length; i++) {
+		element.setAttribute('class',classString.replace(classname,"").trim() );
+	}
+}
 
-			if( classes[i] == classname ) {
+/*
+ * The column headers, the table and the plots are made here, from the data at alignmentDataURL.
+ * Residue numbers start at 1, they're the alignment's column numbers.
+ */
+var alignmentData = null,
+	alignmentRowCount = 0,
+	alignmentColumnCount = 0,
+	alignmentMaxLabelLength = 0,
+	alignmentTileRows = 1,
+	alignmentTileColumns = 1,
+	
+	columnHeaderElements = [],		// by residue number - 1
+	tableRowElements = {},			// by residue number
+	plotDotElements = {},			// lists of dots, by residue number
+	residueNumbersByPDBResidue = {},
+	highlightedResidues = {};		// residue numbers that are highlighted
+
+var svgNamespace = "http://www.w3.org/2000/svg";
+
+function loadAlignmentData() {
+	
+	$.ajax({
+		url: alignmentDataURL,
+		dataType: 'json',
+		success: function(data) {
+			
+			alignmentData = data;
+			alignmentRowCount = data.rowCount;
+			alignmentColumnCount = data.columnCount;
+			alignmentMaxLabelLength = data.maxLabelLength;
+			alignmentTileRows = data.tileRows;
+			alignmentTileColumns = data.tileColumns;
+			
+			for(var i = 0; i < data.pdbResidues.length; i++) {
 				
-				return true;
+				if(data.pdbResidues[i]) {
+					
+					residueNumbersByPDBResidue[data.pdbResidues[i]] = i + 1;
+				}
 			}
+			
+			renderColumnHeaders();
+			renderTable();
+			renderPlots();
+			
+			setAlignmentPageSizes();
+		},
+		error: function(xhr, status, error) {
+			
+			window.location=baseURL+'/error?message='+encodeURIComponent("Cannot get the alignment data: " + error);
 		}
-	}
-	return false;
+	});
 }
 
-function addClass( element, classname ) {
+function getColumn(columnID) {
 	
-	var classString = element.getAttribute("class");
-	if(classString==null) {
+	for(var i = 0; i < alignmentData.columns.length; i++) {
 		
-		classString = "";
+		if(alignmentData.columns[i].id == columnID) {
+			
+			return alignmentData.columns[i];
+		}
 	}
+	return null;
+}
+
+function formatTableValue(column, value) {
 	
-	if( classString.indexOf(classname) == -1 ) {
+	if(value == null) {
 		
-		element.setAttribute('class', classString +" "+ classname );
+		return "";
 	}
+	else if(column.type == "DOUBLE") {
+		
+		return value.toFixed(2);
+	}
+	else return String(value);
 }
 
-function removeClass( element, classname ) {
+function renderColumnHeaders() {
 	
-	var classString = element.getAttribute("class");
-	if(classString!=null) {
-
-		element.setAttribute('class',classString.replace(classname,"").trim() );
+	var container = document.getElementById("alignment-positions"),
+		mouseOverColumns = [],
+		rowIndices = {};
+	
+	for(var i = 0; i < alignmentData.columns.length; i++) {
+		
+		if(alignmentData.columns[i].mouseOver) {
+			
+			mouseOverColumns.push(alignmentData.columns[i]);
+		}
+	}
+	for(var row = 0; row < alignmentData.residueNumbers.length; row++) {
+		
+		rowIndices[alignmentData.residueNumbers[row]] = row;
+	}
+	
+	var fragment = document.createDocumentFragment();
+	for(var residueNumber = 1; residueNumber <= alignmentData.columnCount; residueNumber++) {
+		
+		var header = document.createElement("a"),
+			row = rowIndices[residueNumber],
+			title = "";
+		
+		if(row != null) {
+			
+			for(var i = 0; i < mouseOverColumns.length; i++) {
+				
+				title += mouseOverColumns[i].title + ":"
+					+ formatTableValue(mouseOverColumns[i], mouseOverColumns[i].values[row]) + "\n";
+			}
+		}
+		
+		header.setAttribute("href", "#");
+		header.setAttribute("class", alignment_columnheader_classname);
+		header.setAttribute("data-placements", "top");
+		header.setAttribute("title", title.trim());
+		header.setAttribute("onclick", "toggleResidue(" + residueNumber + "); return false;");
+		header.textContent = "#";
+		
+		columnHeaderElements.push(header);
+		fragment.appendChild(header);
 	}
+	container.appendChild(fragment);
+	
+	$(columnHeaderElements).tooltip();
 }
 
-function compareTableValues( string1, string2 ) {
+var tableColumnImages = {},		// the sort direction images, by column id
+	tableOrderColumnID = null;
+
+function renderTable() {
 	
-	var f1 = parseFloat(string1), f2 = parseFloat( string2 );
+	var headerRow = document.getElementById("data-table-header"),
+		lastHeader = headerRow.lastElementChild,
+		body = document.getElementById("data-table-body"),
+		columns = [];
 	
-	if(isNaN(f1) && isNaN(f2) ) {
+	for(var i = 0; i < alignmentData.columns.length; i++) {
 		
-		return string1.localeCompare(string2);
+		if(!alignmentData.columns[i].hidden) {
+			
+			columns.push(alignmentData.columns[i]);
+		}
+	}
 	
-	} else if(isNaN(f1)) {
+	for(var i = 0; i < columns.length; i++) {
 		
-		return -1;
+		var th = document.createElement("th"),
+			div = document.createElement("div"),
+			title = document.createElement("span"),
+			image = document.createElement("span");
 		
-	} else if(isNaN(f2)) {
+		th.setAttribute("class", "header-sort-button");
+		div.setAttribute("class", "data_table_title data-column-width");
+		div.setAttribute("onclick", "orderTableBy(" + JSON.stringify(columns[i].id) + ");");
+		title.textContent = columns[i].title;
+		image.setAttribute("class", data_toggle_image_classname + " glyphicon");
 		
-		return 1;
+		tableColumnImages[columns[i].id] = image;
 		
-	} else {
+		div.appendChild(title);
+		div.appendChild(document.createTextNode(" "));
+		div.appendChild(image);
+		th.appendChild(div);
+		headerRow.insertBefore(th, lastHeader);
+	}
+	
+	var fragment = document.createDocumentFragment();
+	for(var row = 0; row < alignmentData.residueNumbers.length; row++) {
+		
+		var residueNumber = alignmentData.residueNumbers[row],
+			tr = document.createElement("tr");
+		
+		tr.setAttribute("class", data_row_classname);
+		tr.setAttribute("onclick", "toggleResidue(" + residueNumber + ");");
+		tr.setAttribute("data-row", row);
+		
+		for(var i = 0; i < columns.length; i++) {
+			
+			var td = document.createElement("td"),
+				cell = document.createElement("div");
+			
+			cell.setAttribute("class", data_cell_classname + " data-column-width");
+			cell.textContent = formatTableValue(columns[i], columns[i].values[row]);
+			
+			td.appendChild(cell);
+			tr.appendChild(td);
+		}
+		
+		tableRowElements[residueNumber] = tr;
+		fragment.appendChild(tr);
+	}
+	body.appendChild(fragment);
+}
+
+function compareTableValues( value1, value2 ) {
+	
+	// empty cells go first
+	if(value1 == null || value2 == null) {
 		
-		return f1 - f2 ;
+		return (value1 == null ? 0 : 1) - (value2 == null ? 0 : 1);
 	}
+	else if(typeof value1 == "number" && typeof value2 == "number") {
+		
+		return value1 - value2;
+	}
+	else return String(value1).localeCompare(String(value2));
 }
 
 var upImageClass = "glyphicon-chevron-up", downImageClass = "glyphicon-chevron-down";
 
-function toggleColumnImage(varID, up ) {
+function toggleColumnImage(columnID, up ) {
 
-	var svgs = document.getElementsByTagName("span");
-	for (var i = 0; i < svgs.length; i++) {
+	for(var id in tableColumnImages) {
 		
-		var classString = svgs[i].getAttribute("class");
+		var image = $(tableColumnImages[id]);
 		
-		if(null != classString && classString.indexOf(data_toggle_image_classname) != -1 ) {
-			
-			var m = pTableCellClass.exec( classString );
+		image.removeClass(toggle_classname + " " + upImageClass + " " + downImageClass);
+		if( id == columnID ) {
 			
-			classString = classString.replace(toggle_classname,"")
-									.replace(upImageClass,"")
-									.replace(downImageClass,"")
-									.trim();
-			
-			if( m && m[1] == varID ) { // it's the one we need to make visible
-								
-				var imageclass = up? upImageClass : downImageClass;
-				
-				svgs[i].setAttribute("class",classString+" "+toggle_classname + " " + imageclass);
-				
-			} else { // it's one of the other's that needs to be hidden
-				
-				svgs[i].setAttribute("class",classString);
-			}
+			image.addClass(toggle_classname + " " + (up? upImageClass : downImageClass));
+		}
+	}
+}
+
+/*
+ * The first time, the smallest values go on top. Ordering by the same column again reverses the order.
+ */
+function orderTableBy(columnID) {
+	
+	var column = getColumn(columnID),
+		body = document.getElementById("data-table-body"),
+		rows = [];
+	
+	for(var row = 0; row < alignmentData.residueNumbers.length; row++) {
+		
+		rows.push(row);
+	}
+	
+	rows.sort(
+		function( row1, row2 ) {
+
+			return compareTableValues( column.values[ row1 ], column.values[ row2 ]);
 		}
+	);
+	
+	var up = tableOrderColumnID == columnID;
+	if(up) {
+		
+		rows.reverse();
+		tableOrderColumnID = null;
 	}
+	else tableOrderColumnID = columnID;
 	
+	toggleColumnImage(columnID, up);
+	
+	var fragment = document.createDocumentFragment();
+	for(var i = 0; i < rows.length; i++) {
+		
+		fragment.appendChild( tableRowElements[ alignmentData.residueNumbers[ rows[i] ] ] );
+	}
+	body.appendChild(fragment);
 }
 
-function orderTableBy(varID) {
+function determineStepSize(smallestValue, largestValue) {
 	
-	/*	Here 'getElementsByClassName' only finds half of the elements in some browsers,
-		so use the custom function instead.
-	*/
+	var initial = (largestValue - smallestValue) / 10, stepSize = initial, s = 1.0;
 	
-	var divs = findElements("div",data_cell_classname);
+	if(!(initial > 0) || !isFinite(initial)) {
+		
+		return 1.0;
+	}
 	
-	var dataCells = [];
-	for (var i = 0; i < divs.length; i++) {
+	// Round the number to appropriate significance
+	if( initial > 1.0 ) {
 		
-		var classString = divs[i].getAttribute("class");
+		while ( s < initial ) {
 			
-		var m = pTableCellClass.exec( classString );
-		if( m && m[1] == varID ) {
-
-			dataCells.push(divs[i]);
+			stepSize = s * Math.floor(initial / s);
+			
+			s *= 10.0;
+		}
+	} else {
+		
+		while ( s > initial ) {
+			
+			s *= 0.1;
+			
+			stepSize = s * Math.floor(initial / s);
 		}
 	}
 	
-	var body;
-	var values = [];
-	var positions = []
-	var rows = [];
-	for (var i = 0; i < dataCells.length; i++) {
+	return stepSize;
+}
+
+function plotScaleRepresentation(column, value) {
+	
+	if(column.type == "INTEGER")
+		return String(value < 0 ? Math.ceil(value) : Math.floor(value));
+	else
+		return value.toFixed(1);
+}
+
+function svgElement(tagname, attributes, parent) {
+	
+	var element = document.createElementNS(svgNamespace, tagname);
+	for(var name in attributes) {
+		
+		element.setAttribute(name, attributes[name]);
+	}
+	if(parent) {
+		
+		parent.appendChild(element);
+	}
+	return element;
+}
+
+var scatter_dot_classname = "scatter-dot",
+	plotWidthDefault = 800, plotHeightDefault = 400;
 
-		var value = dataCells[i].innerHTML;
+function renderPlot(container, xColumn, yColumn) {
+	
+	var xTitle = xColumn.title || "",
+		yTitle = yColumn.title || "";
+	
+	var smallestX = 0, largestX = 0, smallestY = 0, largestY = 0;
+	for(var row = 0; row < alignmentData.residueNumbers.length; row++) {
 		
-		var e = dataCells[i].parentNode;
-		while( null == e.getAttribute("class")
-			|| e.getAttribute("class").indexOf(data_row_classname) == -1 ) {
+		var x = xColumn.values[row], y = yColumn.values[row];
+		if(typeof x == "number" && typeof y == "number") {
 			
-			e=e.parentNode;
+			smallestX = Math.min(smallestX, x);
+			largestX = Math.max(largestX, x);
+			smallestY = Math.min(smallestY, y);
+			largestY = Math.max(largestY, y);
 		}
+	}
+	
+	var minX = smallestX * 1.1, maxX = largestX * 1.1,
+		minY = smallestY * 1.1, maxY = largestY * 1.1;
+	if(maxX <= minX) {
 		
-		// for some reason, the associative array didn't work with rows as keys
-		// so we use a list of list positions
-		rows.push( e );
-		values.push( value );
-		positions.push( rows.length - 1 );
+		maxX = minX + 1;
+	}
+	if(maxY <= minY) {
 		
-		body = e.parentNode;
-		body.removeChild( e );
+		maxY = minY + 1;
 	}
 	
-	positions.sort(
-		function( pos1, pos2 ) {
-
-			return compareTableValues( values[ pos1 ], values[ pos2 ]);
-		}
-	);
+	// space between plot and edge of the svg, extra for titles
+	var pixTitleSpacing = 40.0,
+		pixMargeLeft = xTitle ? 60.0 : 30.0,
+		pixMargeRight = 10.0,
+		pixMargeUp = 20.0,
+		pixMargeDown = yTitle ? 50.0 : 30.0,
+		
+		plotPixWidth = plotWidthDefault - pixMargeLeft - pixMargeRight,
+		plotPixHeight = plotHeightDefault - pixMargeDown - pixMargeUp,
+		
+		// data-to-pixels ratio
+		pixXScaling = plotPixWidth / (maxX - minX),
+		pixYScaling = plotPixHeight / (maxY - minY),
+		
+		// position of the origin in pixels
+		pixOriginYPos = plotHeightDefault + minY * pixYScaling,
+		pixOriginXPos = -minX * pixXScaling;
+	
+	var svg = svgElement("svg", { "class": "plot", width: plotWidthDefault, height: plotHeightDefault }),
+		resize = svgElement("g", { "class": "plot-resize" }, svg),
+		group = svgElement("g", { transform: "translate(" + pixMargeLeft + " " + (-pixMargeDown) + ")" }, resize),
+		axisStyle = "stroke:#000000;fill:none;stroke-width:2",
+		titleStyle = "text-anchor: left; font-size: 16px;";
+	
+	svgElement("line", { x1: 0, x2: plotPixWidth, y1: pixOriginYPos, y2: pixOriginYPos, style: axisStyle }, group);
+	svgElement("text", { style: titleStyle }, svgElement("g", {
+		transform: "translate(" + (pixOriginXPos + pixTitleSpacing) + " " + (pixOriginYPos + pixTitleSpacing) + ")"
+	}, group)).textContent = xTitle;
+	
+	svgElement("line", { x1: pixOriginXPos, x2: pixOriginXPos, y1: pixOriginYPos - plotPixHeight, y2: pixOriginYPos, style: axisStyle }, group);
+	svgElement("text", { style: titleStyle }, svgElement("g", {
+		transform: "translate(" + (pixOriginXPos - pixTitleSpacing) + " " + (pixOriginYPos - pixTitleSpacing) + ") rotate(-90)"
+	}, group)).textContent = yTitle;
+	
+	var xStep = determineStepSize(minX, maxX);
+	for(var x = minX; x < maxX; x += xStep) {
+		
+		var scale = svgElement("g", { transform: "translate(" + (x * pixXScaling + pixOriginXPos) + " " + pixOriginYPos + ")" }, group);
+		svgElement("line", { x1: 0, x2: 0, y1: 0, y2: 7, style: "stroke:#000000;stroke-width:2" }, scale);
+		svgElement("text", { x: 0, y: 20, style: "text-anchor: middle; font-size: 12px;" }, scale)
+			.textContent = plotScaleRepresentation(xColumn, x);
+	}
 	
-	if(values[ positions[0] ] == values[0] ) {
-
-		// means the smallest one is already on top in the browser
+	var yStep = determineStepSize(minY, maxY);
+	for(var y = minY; y < maxY; y += yStep) {
 		
-		positions.reverse();
-		toggleColumnImage(varID, true ); // make it point up
+		var scale = svgElement("g", { transform: "translate(" + pixOriginXPos + " " + (pixOriginYPos - y * pixYScaling) + ")" }, group);
+		svgElement("line", { x1: -7, x2: 0, y1: 0, y2: 0, style: "stroke:#000000;stroke-width:2" }, scale);
+		svgElement("text", { x: -10, y: 0, style: "text-anchor: end; font-size: 12px;" }, scale)
+			.textContent = plotScaleRepresentation(yColumn, y);
 	}
-	else toggleColumnImage(varID, false ); // make it point down
 	
-	for(var i = 0; i<rows.length; i++) {
+	for(var row = 0; row < alignmentData.residueNumbers.length; row++) {
 		
-		body.appendChild( rows[ positions[i] ] );
+		var x = xColumn.values[row], y = yColumn.values[row],
+			residueNumber = alignmentData.residueNumbers[row];
+		if(typeof x != "number" || typeof y != "number") {
+			
+			continue;
+		}
+		
+		var dot = svgElement("circle", {
+			"class": scatter_dot_classname, r: 4, stroke: "black", fill: "", "stroke-width": 1,
+			cx: x * pixXScaling + pixOriginXPos,
+			cy: pixOriginYPos - y * pixYScaling,
+			onmouseover: "evt.target.setAttribute('r', '6');",
+			onmouseout: "evt.target.setAttribute('r', '4');",
+			onclick: "toggleResidue(" + residueNumber + ");"
+		}, group);
+		
+		svgElement("title", {}, dot).textContent = xTitle + ":" + plotScaleRepresentation(xColumn, x)
+			+ ", " + yTitle + ":" + plotScaleRepresentation(yColumn, y);
+		
+		if(!plotDotElements[residueNumber]) {
+			
+			plotDotElements[residueNumber] = [];
+		}
+		plotDotElements[residueNumber].push(dot);
+	}
+	
+	container.appendChild(svg);
+}
+
+// the plot containers are in the page already, with their index in data-plot
+function renderPlots() {
+	
+	for(var i = 0; i < alignmentData.plots.length; i++) {
+		
+		var container = $('[data-plot="' + i + '"]')[0],
+			xColumn = getColumn(alignmentData.plots[i].x),
+			yColumn = getColumn(alignmentData.plots[i].y);
+		
+		if(container && xColumn && yColumn) {
+			
+			renderPlot(container, xColumn, yColumn);
+		}
 	}
 }
 
@@ -215,60 +508,73 @@ var	table_highlighted_classname = "danger",
 
 /* 
  * For performance reasons, we don't place every aligned residue in a tag.
- * Instead, place only the header hashtags in tags. This allows control over the columns in the alignment.
- * We just make the following function copy any highlighting from the header elements.
+ * We just make the following function copy the highlighting of the columns.
 */
-function updateSequenceHighlighting () {
-	
-	var headerElements = document.getElementsByClassName(alignment_columnheader_classname);
-	var highLightedHeaderElements = document.getElementsByClassName(alignment_columnheader_classname+" "+"label-danger");
+function getHighlightedColumns() {
 	
-	// Make a boolean list that knows which columns (indices) haven been highlighted:
+	// residue numbers: 1,2,3,4, ..
+	// indices: 0,1,2,3, ..
 	var columnsHighlighted= [];
-	for (var i = 0; i < highLightedHeaderElements.length; i++) {
+	for(var residueNumber in highlightedResidues) {
 		
-		var m = palignmentposclass.exec( highLightedHeaderElements[i].getAttribute("class") );
-		if(m) {
-			
-			// residue numbers: 1,2,3,4, ..
-			// indices: 0,1,2,3, ..
-			columnsHighlighted.push( parseInt(m[1]) - 1 ) ;
-		}
+		columnsHighlighted.push( parseInt(residueNumber) - 1 );
 	}
+	columnsHighlighted.sort(function(a, b) { return a - b; });
+	
+	return columnsHighlighted;
+}
+
+/*
+ * The sequence elements are pieces of the sequences, from tiles.
+ * Their data-column attribute tells which column they start at.
+ */
+function highlightSequenceElements (sequenceElements, columnsHighlighted) {
 	
-	var sequenceElements = document.getElementsByClassName("alignedseq");
 	for (var j = 0; j < sequenceElements.length; j++) {
 		
-		var tagLess = sequenceElements[j].textContent;
+		var tagLess = sequenceElements[j].textContent,
+			offset = parseInt(sequenceElements[j].getAttribute("data-column") || "0");
+		
+		// highlighted columns within this piece, relative to its start
+		var columns = [];
+		for (var i = 0; i < columnsHighlighted.length; i++) {
+			
+			var column = columnsHighlighted[i] - offset;
+			if(column >= 0 && column < tagLess.length) {
+				
+				columns.push(column);
+			}
+		}
+		
 		var tagged;
-		if(columnsHighlighted.length>0) {
+		if(columns.length>0) {
 
-			tagged = tagLess.substring(0,columnsHighlighted[0]);
+			tagged = tagLess.substring(0,columns[0]);
 		} else {
 			tagged = tagLess;
 		}
 		
 		var i=0;
-		while (i<columnsHighlighted.length) { // iterates over highlighted areas
+		while (i<columns.length) { // iterates over highlighted areas
 
 			// Determine start and end position of highlighted area.
-			var start = columnsHighlighted[i];
+			var start = columns[i];
 
-			while ( (i+1) < columnsHighlighted.length
-				&& columnsHighlighted[i+1]==(columnsHighlighted[i]+1) ) {
+			while ( (i+1) < columns.length
+				&& columns[i+1]==(columns[i]+1) ) {
 
 				i+=1;
 			}
-			var end = columnsHighlighted[i] + 1;
+			var end = columns[i] + 1;
 
 			// Write html code for highlighted area.
 			tagged += "<span class='"+"label-danger"+"'>"
 				+ tagLess.substring(start, end) + "</span>";
 
 			// Write html code for are between this highlight and the next.
-			if( (i+1) < columnsHighlighted.length ) {
+			if( (i+1) < columns.length ) {
 
-				tagged += tagLess.substring(end,columnsHighlighted[i+1]);
+				tagged += tagLess.substring(end,columns[i+1]);
 			}
 			else if( end < tagLess.length ) {
 
@@ -282,128 +588,309 @@ function updateSequenceHighlighting () {
 	}
 }
 
-function findColumnElement(classname) {
+function updateSequenceHighlighting () {
+	
+	highlightSequenceElements( document.getElementsByClassName("alignedseq"), getHighlightedColumns() );
+}
+
+/*
+ * The aligned sequences aren't in the page. They're fetched in tiles of alignmentTileRows by
+ * alignmentTileColumns residues, only the tiles that are in view. The most recently shown tiles
+ * are kept, the others are removed from the page again.
+ */
+var maxAlignmentTiles = 200,
+	alignmentTiles = {},		// elements by tile key
+	alignmentTileOrder = [],	// tile keys, least recently shown first
+	alignmentTilesLoading = {},
+	alignmentRowHeight = null,
+	alignmentCharWidth = null,
+	showTilesTimeout = null;
+
+function measureAlignmentFont() {
+	
+	var container = document.getElementById("alignment-tiles"),
+		probe = document.createElement("span");
+	
+	probe.style.whiteSpace = "pre";
+	probe.textContent = "XXXXXXXXXX";
+	container.appendChild(probe);
+	
+	var rect = probe.getBoundingClientRect();
+	alignmentCharWidth = rect.width / 10;
+	alignmentRowHeight = rect.height;
+	
+	container.removeChild(probe);
+	
+	// room for all of it, so that the scrollbars are right
+	container.style.width = '' + (alignmentColumnCount * alignmentCharWidth) + 'px';
+	container.style.height = '' + (alignmentRowCount * alignmentRowHeight) + 'px';
+	
+	var labels = document.getElementById("alignment-label-tiles");
+	labels.style.width = '' + ((alignmentMaxLabelLength + 1) * alignmentCharWidth) + 'px';
+	labels.style.height = '' + (alignmentRowCount * alignmentRowHeight) + 'px';
+}
+
+function touchAlignmentTile(key, elements) {
+	
+	if(!elements && !alignmentTiles[key]) {
+		
+		return;
+	}
+	
+	var index = alignmentTileOrder.indexOf(key);
+	if(index != -1) {
+		
+		alignmentTileOrder.splice(index, 1);
+	}
+	alignmentTileOrder.push(key);
+	
+	if(elements) {
+		
+		alignmentTiles[key] = elements;
+	}
 	
-	var columnElements = findElements( "*", alignment_columnheader_classname ) ;
-	for(var i =0; i<columnElements.length ; i++) {
+	while(alignmentTileOrder.length > maxAlignmentTiles) {
 		
-		if( hasClass( columnElements[i], classname) ) {
+		var oldKey = alignmentTileOrder.shift(),
+			oldElements = alignmentTiles[oldKey];
+		
+		for(var i = 0; i < oldElements.length; i++) {
 			
-			return columnElements[i];
+			oldElements[i].parentNode.removeChild(oldElements[i]);
 		}
+		delete alignmentTiles[oldKey];
 	}
-	return null;
 }
 
-function findAlignmentPosClassname(classname) {
+function placeTileElement(element, row, column) {
 	
-	var m = palignmentposclass.exec(classname);
-	if(m)
-		return classname;
-	else {
+	element.style.position = "absolute";
+	element.style.top = '' + (row * alignmentRowHeight) + 'px';
+	element.style.left = '' + (column * alignmentCharWidth) + 'px';
+	element.style.whiteSpace = "pre";
+}
+
+function addAlignmentTile(tileRow, tileColumn, tile) {
+	
+	var tileElement = document.createElement("div");
+	placeTileElement(tileElement, tile.row, tile.column);
+	
+	for(var i = 0; i < tile.sequences.length; i++) {
 		
-		var element = findColumnElement(classname);
-		if(element==null || element.getAttribute("class")==null)
-			return null;
+		var line = document.createElement("div"),
+			seq = document.createElement("span");
 		
-		m = palignmentposclass.exec(element.getAttribute("class"));
-		if(m)
-			return m[0];
+		seq.setAttribute("class", "alignedseq");
+		seq.setAttribute("data-column", tile.column);
+		seq.textContent = tile.sequences[i];
+		
+		line.style.height = '' + alignmentRowHeight + 'px';
+		line.appendChild(seq);
+		tileElement.appendChild(line);
 	}
 	
-	return null;
-}
-
-function updateJmol(classname) {
+	document.getElementById("alignment-tiles").appendChild(tileElement);
+	highlightSequenceElements( tileElement.getElementsByClassName("alignedseq"), getHighlightedColumns() );
 	
-	// If the column was highlighted, highlight the residue in the jmol; otherwise
-	// unhighlight it.
-	var columnElement = $('.' + alignment_columnheader_classname + '.' + classname);
-	var columnClass = columnElement.attr('class');
+	touchAlignmentTile(tileRow + ',' + tileColumn, [tileElement]);
 	
-	if (columnElement.hasClass(alignment_highlighted_classname)) {
-		var color = 'red';
-	} else {
-		var color = jmolSelectableAtomColor;
+	// the labels go with the first tile of the row that's shown
+	var labelsKey = 'labels' + tileRow;
+	if(!alignmentTiles[labelsKey]) {
+		
+		var labelsElement = document.createElement("div");
+		placeTileElement(labelsElement, tile.row, 0);
+		
+		for(var i = 0; i < tile.labels.length; i++) {
+			
+			var line = document.createElement("div");
+			line.style.height = '' + alignmentRowHeight + 'px';
+			
+			if(tile.references[i] && tile.labels[i]) {
+				
+				var link = document.createElement("a");
+				link.setAttribute("href", tile.references[i]);
+				link.setAttribute("target", "new");
+				link.textContent = tile.labels[i];
+				line.appendChild(link);
+			}
+			else line.textContent = tile.labels[i] || ' ';
+			
+			labelsElement.appendChild(line);
+		}
+		
+		document.getElementById("alignment-label-tiles").appendChild(labelsElement);
+		touchAlignmentTile(labelsKey, [labelsElement]);
 	}
-
-	var m = pPDBresclass.exec(columnClass);
-	if(m) {
-    	Jmol.script(jmolApplet0, 'select ' + m[1] + ';color ' + color + ';');
-    }
+	else touchAlignmentTile(labelsKey);
 }
 
-function updateTable(classname) {
-
-	var columnElement = $('.' + alignment_columnheader_classname + '.' + classname);
+function showAlignmentTile(tileRow, tileColumn) {
 	
-	if( columnElement.hasClass( alignment_highlighted_classname) ) {
-
-		$('.' + data_row_classname + '.' + classname).addClass(table_highlighted_classname);
-	} else {
-		$('.' + data_row_classname + '.' + classname).removeClass(table_highlighted_classname);
+	var key = tileRow + ',' + tileColumn;
+	if(alignmentTiles[key]) {
+		
+		touchAlignmentTile(key);
+		touchAlignmentTile('labels' + tileRow);
+		return;
 	}
+	if(alignmentTilesLoading[key]) {
+		
+		return;
+	}
+	
+	alignmentTilesLoading[key] = true;
+	$.ajax({
+		url: alignmentTileURL + tileRow + '/' + tileColumn,
+		dataType: 'json',
+		success: function(tile) {
+			
+			delete alignmentTilesLoading[key];
+			if(!alignmentTiles[key]) {
+				
+				addAlignmentTile(tileRow, tileColumn, tile);
+			}
+		},
+		error: function(xhr, status, error) {
+			
+			delete alignmentTilesLoading[key];
+			console.log("cannot get alignment tile " + key + ": " + error);
+		}
+	});
 }
 
-var scatter_dot_classname = "scatter-dot";
+function showVisibleTiles() {
+	
+	var contents = document.getElementById("alignment-contents");
+	if(contents == null || alignmentRowCount == 0) {
+		
+		return;
+	}
+	
+	if(alignmentRowHeight == null) {
+		
+		measureAlignmentFont();
+	}
+	
+	var firstRow = Math.floor(contents.scrollTop / alignmentRowHeight),
+		lastRow = Math.min(alignmentRowCount - 1,
+			Math.floor((contents.scrollTop + contents.clientHeight) / alignmentRowHeight)),
+		firstColumn = Math.floor(contents.scrollLeft / alignmentCharWidth),
+		lastColumn = Math.min(alignmentColumnCount - 1,
+			Math.floor((contents.scrollLeft + contents.clientWidth) / alignmentCharWidth));
+	
+	for(var tileRow = Math.floor(firstRow / alignmentTileRows);
+			tileRow <= Math.floor(lastRow / alignmentTileRows); tileRow++) {
+		
+		for(var tileColumn = Math.floor(firstColumn / alignmentTileColumns);
+				tileColumn <= Math.floor(lastColumn / alignmentTileColumns); tileColumn++) {
+			
+			showAlignmentTile(tileRow, tileColumn);
+		}
+	}
+}
 
-function updatePlots(classname) {
+// scroll events come fast, only look once they've calmed down a bit
+function scheduleShowVisibleTiles() {
 	
-	// jquery doesn't work on svg elements !
-	var dots = findElements( 'circle', scatter_dot_classname ) ;
+	if(showTilesTimeout != null) {
+		
+		clearTimeout(showTilesTimeout);
+	}
+	showTilesTimeout = setTimeout(function() {
+		
+		showTilesTimeout = null;
+		showVisibleTiles();
+	}, 50);
+}
 
-	var columnElement = $('.' + alignment_columnheader_classname + '.' + classname);
-	var toggled = columnElement.hasClass(alignment_highlighted_classname) ;
+function setResidueHighlighted(residueNumber, highlighted, updateJmol) {
 	
+	if(highlighted) {
+		
+		highlightedResidues[residueNumber] = true;
+	}
+	else delete highlightedResidues[residueNumber];
+	
+	var header = columnHeaderElements[residueNumber - 1];
+	if(header) {
+		
+		$(header).toggleClass(alignment_highlighted_classname, highlighted);
+	}
+	
+	var row = tableRowElements[residueNumber];
+	if(row) {
+		
+		$(row).toggleClass(table_highlighted_classname, highlighted);
+	}
+	
+	// jquery doesn't work on svg elements !
+	var dots = plotDotElements[residueNumber] || [];
 	for(var i=0; i<dots.length; i++) {
 		
-		if( hasClass(dots[i],classname) ) {
+		if( highlighted ) {
 			
-			if( toggled ) {
-		
-				addClass( dots[i], table_highlighted_classname );
-			} else {
-				removeClass( dots[i], table_highlighted_classname );
-			}
+			addClass( dots[i], table_highlighted_classname );
+		} else {
+			removeClass( dots[i], table_highlighted_classname );
 		}
 	}
+	
+	var pdbResidue = alignmentData.pdbResidues[residueNumber - 1];
+	if(updateJmol && pdbResidue) {
+		
+		Jmol.script(jmolApplet0, 'select ' + pdbResidue + ';color ' + (highlighted ? 'red' : jmolSelectableAtomColor) + ';');
+	}
 }
 
-function clearPlotsHighlighting() {
-
-	// jquery doesn't work on svg elements !
-	var dots = findElements( 'circle', scatter_dot_classname ) ;
+function toggleResidue(residueNumber) {
 	
-	for(var i=0; i<dots.length; i++) {
+	if(alignmentData == null) {
 		
-		removeClass( dots[i], table_highlighted_classname );
+		return;
 	}
+	
+	setResidueHighlighted(residueNumber, !highlightedResidues[residueNumber], true);
+	updateSequenceHighlighting();
 }
 
+/*
+ * For the structure panel: the classname is an alignment position or a pdb residue.
+ */
 function toggleColumn(classname) {
 	
-	console.log("toggle column "+classname);
-	
-	// jquery doesn't find the classes with jmol syntax in it,
-	// so find the alignmentpos classname first:
-	var classname = findAlignmentPosClassname(classname);
+	if(alignmentData == null) {
+		
+		return;
+	}
 	
-	// Always update the column header first as the sequence highlighting and jmol
-	// highlighting depend on it.
-	$('.' + alignment_columnheader_classname + '.' + classname).toggleClass("label-danger");
+	var residueNumber = null,
+		m = palignmentposclass.exec(classname);
+	if(m) {
+		
+		residueNumber = parseInt(m[1]);
+	}
+	else {
+		m = pPDBresclass.exec(classname);
+		if(m) {
+			
+			residueNumber = residueNumbersByPDBResidue[m[1]];
+		}
+	}
 	
-	updateTable(classname);
-	updatePlots(classname);
-	updateJmol(classname);
-    updateSequenceHighlighting();
+	if(residueNumber) {
+		
+		toggleResidue(residueNumber);
+	}
 }
 
 function unHighlightAll() {
 	
-	$('.'+table_highlighted_classname).removeClass(table_highlighted_classname);
-	$('.'+alignment_highlighted_classname).removeClass(alignment_highlighted_classname);
+	for(var residueNumber in highlightedResidues) {
+		
+		setResidueHighlighted(parseInt(residueNumber), false, false);
+	}
     
-	clearPlotsHighlighting();
     Jmol.script(jmolApplet0, jmolClearColors);
     updateSequenceHighlighting();
 }
@@ -450,6 +937,8 @@ function setAlignmentSizes() {
 			- headerY - headerHeight - distanceAlignmentBottom;
 	
 	$(".alignment-content-height").css('height','' + newAlignmentHeight + 'px');
+	
+	showVisibleTiles();
 }
 
 function setDataPlotSizes() {
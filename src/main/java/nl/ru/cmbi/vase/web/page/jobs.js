@@ -92,6 +92,8 @@ function jobRemove( jobid ) {
 		
 		saveJobIDs();
 	}
+	
+	watchJobs();
 }
 
 function jobAdd( job ) {
@@ -116,6 +118,8 @@ function jobAdd( job ) {
 	}
 	
 	updateJobListingRow(jobs[ jobIndex ]); // adds it if not yet in table
+	
+	watchJobs();
 }
 
 var pJobID = /^[0-9a-zA-Z\-]+$/ ;
@@ -148,38 +152,89 @@ function submitJob(structure) {
 	});
 }
 
-function pollJobs() {
+function isFinished( status ) {
+	
+	var s = status.toUpperCase();
+	
+	return s == "SUCCESS" || s == "FAILURE" || s == "REVOKED" || s == "UNKNOWN";
+}
+
+function statusText( status ) {
 	
-	for(var i=0; i<jobs.length;i++) {
+	if( status.toUpperCase() == "FAILURE" ) {
+		
+		return "FAILURE (not yet possible to retrieve a reason)" ;
+	}
+	return status;
+}
+
+var watchRequest = null;
+
+/*
+ * Asks the server about all unfinished jobs at once. The server answers when one of them
+ * changes, or after a while if none does, and then the next request is made.
+ * Calling it again replaces the running request, so that added or removed jobs are included.
+ */
+function watchJobs() {
+	
+	if( watchRequest != null ) {
+		
+		var previous = watchRequest;
+		watchRequest = null;
+		previous.abort();
+	}
+	
+	var known = "";
+	for(var i=0; i<jobs.length; i++) {
+		
+		if( isFinished( jobs[i].status ) ) continue;
+		
+		if(known.length>0) known += ',' ;
+		
+		known += jobs[i].id ;
 		
-		$.ajax( {
-			  type: "GET",
-			  url: restURL+"/status/"+jobs[i].id,
-			  data: '',
+		if( jobs[i].status != 'NEW' ) known += ':' + jobs[i].status ;
+	}
+	
+	if(known.length==0) return; // nothing to wait for
+	
+	var request = $.ajax( {
+		  type: "GET",
+		  url: restURL+"/jobs/stream",
+		  data: { jobs: known },
+		  dataType: "json",
+		  
+		  success: function(data, status, jqXHR) {
 			  
-			  beforeSend: function(jqXHR, settings) {
-				  
-				  jqXHR.url = settings.url;
-			  },
-			  success: function(data, status, jqXHR) {
+			  if( request != watchRequest ) return; // replaced
+			  
+			  for(var i=0; i<jobs.length;i++) {
 				  
-				  for(var i=0; i<jobs.length;i++) {
+				  if( data.hasOwnProperty( jobs[i].id ) ) {
 					  
-					  if( endswith( jqXHR.url, "/"+jobs[i].id ) ) {
-						  
-						  jobs[i].status = data;
-						  
-						  if( data.toUpperCase() == "FAILURE") {
-							  
-							  jobs[i].status = "FAILURE (not yet possible to retrieve a reason)" ;
-						  }
-						  
-						  updateJobListingRow(jobs[i]);
-					  }
+					  jobs[i].status = data[ jobs[i].id ];
+					  
+					  updateJobListingRow(jobs[i]);
 				  }
 			  }
-		} );
-	}
+			  
+			  watchRequest = null;
+			  watchJobs();
+		  },
+		  
+		  error: function( jqXHR, status, errorThrown ) {
+			  
+			  if( request != watchRequest ) return; // replaced
+			  
+			  watchRequest = null;
+			  
+			  // the server might be restarting or too busy, try again later
+			  var retryAfter = parseInt( jqXHR.getResponseHeader("Retry-After") );
+			  setTimeout(watchJobs, isNaN(retryAfter) ? 5000 : 1000 * retryAfter);
+		  }
+	} );
+	
+	watchRequest = request;
 }
 
 function initJobPage() {
@@ -211,8 +266,8 @@ function initJobPage() {
 			}
 		}
 		
-		// Do an initial poll to get rid of the status 'new'
-		pollJobs();
+		// the first answer gets rid of the status 'new'
+		watchJobs();
 	}
 }
 
@@ -245,7 +300,7 @@ function addJobRow( table, job) {
 	idCell.innerHTML = job.id;
 	
 	var statusCell= row.insertCell(2);
-	statusCell.innerHTML = job.status ;
+	statusCell.innerHTML = statusText( job.status ) ;
 	
 	var deleteCell= row.insertCell(3);
 	deleteCell.setAttribute("title","Remove from List");
@@ -278,7 +333,7 @@ function updateJobListingRow(job) {
 				list.rows[i].cells[1].innerHTML="<a href='"+alignURL+"/"+job.id+"'>"+job.id+"</a>"
 			}
 			
-			list.rows[i].cells[2].innerHTML=job.status;
+			list.rows[i].cells[2].innerHTML=statusText( job.status );
 			present=true;
 		}
 	}
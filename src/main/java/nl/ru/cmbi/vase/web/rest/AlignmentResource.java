@@ -0,0 +1,214 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.web.rest;
+
+import java.io.FileNotFoundException;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.ru.cmbi.vase.data.AlignmentPayload;
+import nl.ru.cmbi.vase.data.AlignmentTile;
+import nl.ru.cmbi.vase.data.VASEDataObject;
+import nl.ru.cmbi.vase.data.VASEDataSource;
+import nl.ru.cmbi.vase.tools.util.CacheFiles;
+
+import org.apache.wicket.request.http.WebRequest;
+import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+/**
+ * The data that the alignment page is rendered from, as json:
+ *
+ * /rest/alignment/{id}/{chain} gives the {@link AlignmentPayload},
+ * /rest/alignment/{id}/{chain}/tile/{row}/{column} gives an {@link AlignmentTile}.
+ *
+ * The chain is ignored for xml entries. The ETag is a hash of the json, so browsers
+ * only get it again when the result changed. The json of the most recently asked payloads
+ * is kept, for as long as the data it was made from is what {@link VASEDataSource} gives.
+ */
+public class AlignmentResource extends AbstractResource {
+
+	private static final Logger log = LoggerFactory.getLogger(AlignmentResource.class);
+
+	// after this, browsers ask whether it changed
+	private static final Duration cacheDuration = Duration.minutes(1);
+
+	private static final int maxStoredPayloads = 32;
+
+	private final Gson gson = new Gson();
+
+	private static class Json {
+
+		// what it was made from, weakly, so that it can still leave the VASEDataCache
+		private final WeakReference<VASEDataObject> data;
+
+		private final byte[] bytes;
+
+		private final String etag;
+
+		public Json(VASEDataObject data, byte[] bytes) {
+
+			this.data = new WeakReference<VASEDataObject>(data);
+			this.bytes = bytes;
+			this.etag = "\"" + CacheFiles.sha1Hex(bytes) + "\"";
+		}
+	}
+
+	// by id and chain, least recently used first
+	private final Map<String,Json> payloads = new LinkedHashMap<String,Json>(16, 0.75f, true) {
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Json> eldest) {
+
+			return size() > maxStoredPayloads;
+		}
+	};
+
+	private Json toJson(VASEDataObject data, Object content) {
+
+		return new Json(data, gson.toJson(content).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Only made again when the data changed.
+	 */
+	private Json getPayloadJson(String key, VASEDataObject data) {
+
+		synchronized(payloads) {
+
+			Json json = payloads.get(key);
+			if(json!=null && json.data.get()==data)
+				return json;
+		}
+
+		Json json = toJson(data, AlignmentPayload.get(data));
+
+		synchronized(payloads) {
+
+			payloads.put(key, json);
+		}
+		return json;
+	}
+
+	/**
+	 * @return null if the parameters don't point at anything
+	 */
+	private Json getJson(String key, PageParameters parameters, VASEDataObject data) {
+
+		if(parameters.getIndexedCount()==0)
+			return getPayloadJson(key, data);
+
+		if(parameters.getIndexedCount()==3 && "tile".equals(parameters.get(0).toString())) {
+
+			AlignmentTile tile = AlignmentTile.get(data, parameters.get(1).toInt(-1), parameters.get(2).toInt(-1));
+
+			return tile==null ? null : toJson(data, tile);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Entries from xml files don't have a chain, their pages use '-' instead.
+	 */
+	static boolean isChainOf(String id, char chain) {
+
+		if(chain=='-')
+			return VASEDataSource.getXmlFile(id)!=null;
+
+		return Character.isLetterOrDigit(chain);
+	}
+
+	@Override
+	protected ResourceResponse newResourceResponse(Attributes attributes) {
+
+		ResourceResponse response = new ResourceResponse();
+		response.setContentType("application/json");
+		response.setTextEncoding("UTF-8");
+
+		PageParameters parameters = attributes.getParameters();
+		String	id = parameters.get("id").toString(),
+				chain = parameters.get("chain").toString();
+		if(id==null || !GzippedFileResource.idPattern.matcher(id).matches()
+				|| chain==null || chain.length()!=1 || !isChainOf(id.toLowerCase(), chain.charAt(0))) {
+
+			response.setError(HttpURLConnection.HTTP_NOT_FOUND);
+			return response;
+		}
+
+		final Json json;
+		try {
+			id = id.toLowerCase();
+			VASEDataObject data = VASEDataSource.get(id, chain.charAt(0));
+
+			json = data==null ? null : getJson(id + "/" + chain, parameters, data);
+
+		} catch(FileNotFoundException e) {
+
+			response.setError(HttpURLConnection.HTTP_NOT_FOUND);
+			return response;
+
+		} catch(Exception e) {
+
+			log.error("alignment " + id + "/" + chain + ": " + e.getMessage(), e);
+			response.setError(HttpURLConnection.HTTP_INTERNAL_ERROR);
+			return response;
+		}
+
+		if(json==null) {
+
+			response.setError(HttpURLConnection.HTTP_NOT_FOUND);
+			return response;
+		}
+
+		response.getHeaders().addHeader("ETag", json.etag);
+		response.setCacheDuration(cacheDuration);
+		response.setCacheScope(WebResponse.CacheScope.PRIVATE);
+
+		String ifNoneMatch = ((WebRequest) attributes.getRequest()).getHeader("If-None-Match");
+		if(ifNoneMatch!=null && GzippedFileResource.matches(ifNoneMatch, json.etag)) {
+
+			response.setStatusCode(HttpURLConnection.HTTP_NOT_MODIFIED);
+			response.setWriteCallback(new WriteCallback() {
+
+				@Override
+				public void writeData(Attributes attributes) {
+				}
+			});
+			return response;
+		}
+
+		response.setContentLength(json.bytes.length);
+		response.setWriteCallback(new WriteCallback() {
+
+			@Override
+			public void writeData(Attributes attributes) {
+
+				attributes.getResponse().write(json.bytes);
+			}
+		});
+		return response;
+	}
+}
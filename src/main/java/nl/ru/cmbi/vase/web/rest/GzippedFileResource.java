@@ -0,0 +1,276 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.web.rest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.wicket.request.http.WebRequest;
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.util.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends a text file that's stored gzipped, without reading it into memory.
+ *
+ * Clients that accept gzip get the stored bytes as they are, copied straight from the file's
+ * channel, and can ask for a range of them. Other clients get the file decompressed on the fly.
+ * An ETag and Last-Modified date are sent along, so that clients can ask whether the file changed.
+ *
+ * The id of the file is the "id" parameter, mount it like "/rest/structure/${id}".
+ */
+public abstract class GzippedFileResource extends AbstractResource {
+
+	private static final Logger log = LoggerFactory.getLogger(GzippedFileResource.class);
+
+	// ids end up in file names, so only these
+	static final Pattern idPattern = Pattern.compile("^[0-9a-zA-Z\\-_]+$");
+
+	private static final Pattern rangePattern = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
+	/**
+	 * @return the gzipped file, or null if the contents aren't on this machine
+	 * @throws FileNotFoundException if there's no such thing
+	 */
+	protected abstract File getGzippedFile(String id) throws Exception;
+
+	/**
+	 * For when {@link #getGzippedFile(String)} returns null.
+	 *
+	 * @return the decompressed contents, or null if there's no such thing
+	 */
+	protected InputStream openElsewhere(String id) throws Exception {
+
+		return null;
+	}
+
+	private static boolean acceptsGzip(String acceptEncoding) {
+
+		if(acceptEncoding==null)
+			return false;
+
+		for(String coding : acceptEncoding.split(",")) {
+
+			String[] parts = coding.trim().split(";");
+			if(parts[0].trim().equalsIgnoreCase("gzip")) {
+
+				return parts.length<2 || !parts[1].trim().matches("q=0(\\.0*)?");
+			}
+		}
+		return false;
+	}
+
+	static boolean matches(String ifNoneMatch, String etag) {
+
+		for(String tag : ifNoneMatch.split(",")) {
+
+			if(tag.trim().equals(etag) || tag.trim().equals("*"))
+				return true;
+		}
+		return false;
+	}
+
+	private static WriteCallback writeNothing() {
+
+		return new WriteCallback() {
+
+			@Override
+			public void writeData(Attributes attributes) throws IOException {
+			}
+		};
+	}
+
+	@Override
+	protected ResourceResponse newResourceResponse(Attributes attributes) {
+
+		ResourceResponse response = new ResourceResponse();
+		response.setContentType("text/plain");
+
+		String id = attributes.getParameters().get("id").toString();
+		if(id==null || !idPattern.matcher(id).matches()) {
+
+			response.setError(HttpURLConnection.HTTP_NOT_FOUND);
+			return response;
+		}
+
+		final File file;
+		try {
+			file = getGzippedFile(id);
+			if(file==null) {
+
+				final InputStream in = openElsewhere(id);
+				if(in==null) {
+
+					response.setError(HttpURLConnection.HTTP_NOT_FOUND);
+					return response;
+				}
+
+				response.setWriteCallback(new WriteCallback() {
+
+					@Override
+					public void writeData(Attributes attributes) throws IOException {
+
+						try {
+							IOUtils.copy(in, attributes.getResponse().getOutputStream());
+						}
+						finally {
+							in.close();
+						}
+					}
+				});
+				return response;
+			}
+
+		} catch(FileNotFoundException e) {
+
+			response.setError(HttpURLConnection.HTTP_NOT_FOUND);
+			return response;
+
+		} catch(Exception e) {
+
+			log.error(id + ": " + e.getMessage(), e);
+			response.setError(HttpURLConnection.HTTP_INTERNAL_ERROR);
+			return response;
+		}
+
+		WebRequest request = (WebRequest) attributes.getRequest();
+
+		boolean gzip = acceptsGzip(request.getHeader("Accept-Encoding"));
+		long length = file.length(), lastModified = file.lastModified();
+
+		// the encodings are different representations, so they need different tags
+		String etag = String.format("\"%x-%x%s\"", length, lastModified, gzip ? "-gz" : "");
+
+		response.getHeaders().addHeader("ETag", etag);
+		response.getHeaders().addHeader("Vary", "Accept-Encoding");
+		response.getHeaders().addDateHeader("Last-Modified", Time.millis(lastModified));
+
+		// If-Modified-Since only counts without If-None-Match
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		Time ifModifiedSince = request.getIfModifiedSinceHeader();
+		if(ifNoneMatch!=null ? matches(ifNoneMatch, etag)
+				: ifModifiedSince!=null && lastModified / 1000 <= ifModifiedSince.getMilliseconds() / 1000) {
+
+			response.setStatusCode(HttpURLConnection.HTTP_NOT_MODIFIED);
+			response.setWriteCallback(writeNothing());
+			return response;
+		}
+
+		if(!gzip) {
+
+			response.setWriteCallback(new WriteCallback() {
+
+				@Override
+				public void writeData(Attributes attributes) throws IOException {
+
+					InputStream in = new GZIPInputStream(new FileInputStream(file));
+					try {
+						IOUtils.copy(in, attributes.getResponse().getOutputStream());
+					}
+					finally {
+						in.close();
+					}
+				}
+			});
+			return response;
+		}
+
+		response.getHeaders().addHeader("Content-Encoding", "gzip");
+		response.getHeaders().addHeader("Accept-Ranges", "bytes");
+
+		long start = 0, end = length - 1;
+
+		String range = request.getHeader("Range"),
+			   ifRange = request.getHeader("If-Range");
+		if(range!=null && (ifRange==null || ifRange.equals(etag))) {
+
+			Matcher m = rangePattern.matcher(range.trim());
+			if(m.matches() && !(m.group(1).isEmpty() && m.group(2).isEmpty())) {
+
+				if(m.group(1).isEmpty()) {
+
+					// the last n bytes
+					start = Math.max(0, length - Long.parseLong(m.group(2)));
+				}
+				else {
+					start = Long.parseLong(m.group(1));
+					if(!m.group(2).isEmpty())
+						end = Math.min(end, Long.parseLong(m.group(2)));
+				}
+
+				if(start > end) {
+
+					response.setStatusCode(416); // range not satisfiable
+					response.getHeaders().addHeader("Content-Range", "bytes */" + length);
+					response.setContentLength(0);
+					response.setWriteCallback(writeNothing());
+					return response;
+				}
+
+				response.setStatusCode(HttpURLConnection.HTTP_PARTIAL);
+				response.getHeaders().addHeader("Content-Range", String.format("bytes %d-%d/%d", start, end, length));
+			}
+			// else: multiple ranges or nonsense, send it all
+		}
+
+		final long position = start, count = end - start + 1;
+		response.setContentLength(count);
+		response.setWriteCallback(new WriteCallback() {
+
+			@Override
+			public void writeData(Attributes attributes) throws IOException {
+
+				transfer(file, position, count, attributes.getResponse().getOutputStream());
+			}
+		});
+		return response;
+	}
+
+	private static void transfer(File file, long position, long count, OutputStream out) throws IOException {
+
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			WritableByteChannel outChannel = Channels.newChannel(out);
+
+			while(count > 0) {
+
+				long n = channel.transferTo(position, count, outChannel);
+				if(n <= 0)
+					break;
+
+				position += n;
+				count -= n;
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.web.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+import nl.ru.cmbi.vase.job.Job;
+import nl.ru.cmbi.vase.job.JobManager;
+import nl.ru.cmbi.vase.tools.util.Config;
+
+/**
+ * Serves the stockholm file of a custom job, or an empty text if the job hasn't succeeded (yet).
+ */
+public class HsspResultResource extends GzippedFileResource {
+
+	@Override
+	protected File getGzippedFile(String id) throws Exception {
+
+		JobManager jobManager = JobManager.getInstance();
+		if(Config.isXmlOnly() || jobManager==null)
+			throw new FileNotFoundException("custom jobs are not enabled");
+
+		Job job = jobManager.get(id);
+		if(job==null || !job.getStatus().equals(Job.SUCCESS))
+			return null;
+
+		return jobManager.getGzippedHsspFile(id);
+	}
+
+	@Override
+	protected InputStream openElsewhere(String id) throws Exception {
+
+		return new ByteArrayInputStream(new byte[0]);
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.web.rest;
+
+import java.io.File;
+import java.io.InputStream;
+
+import nl.ru.cmbi.vase.tools.util.Utils;
+
+/**
+ * Serves the pdb file of a structure, for jsmol.
+ *
+ * Files that are in the structure cache or the hssp cache are sent as they are stored.
+ * Without a structure cache, pdb entries are passed on from the rcsb while they're downloaded.
+ */
+public class StructureResource extends GzippedFileResource {
+
+	@Override
+	protected File getGzippedFile(String id) throws Exception {
+
+		return Utils.getPdbFile(id);
+	}
+
+	@Override
+	protected InputStream openElsewhere(String id) throws Exception {
+
+		return Utils.getPdbInputStream(id);
+	}
+}
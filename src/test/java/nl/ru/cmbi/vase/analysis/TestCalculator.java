@@ -0,0 +1,147 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.analysis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import nl.ru.cmbi.vase.data.stockholm.Alignment;
+
+import org.junit.Test;
+
+/**
+ */
+public class TestCalculator
+{
+	private static final String residueTypes = "ACDEFGHIKLMNPQRSTVWYacdefghiklmnpqrstvwyXZBJUO.-";
+
+	/**
+	 * Random sequences with a bias, so that some columns are well conserved.
+	 */
+	private Alignment getRandomAlignment(int nseqs, int ncolumns, long seed) {
+
+		Random random = new Random(seed);
+
+		String consensus = "";
+		for(int i=0; i<ncolumns; i++) {
+
+			consensus += residueTypes.charAt(random.nextInt(20));
+		}
+
+		Map<String,String> seqs = new LinkedHashMap<String,String>();
+		for(int row=0; row<nseqs; row++) {
+
+			StringBuilder seq = new StringBuilder();
+			for(int i=0; i<ncolumns; i++) {
+
+				if(random.nextInt(i % 4 + 1)==0)
+					seq.append(consensus.charAt(i));
+				else
+					seq.append(residueTypes.charAt(random.nextInt(residueTypes.length())));
+			}
+			seqs.put("seq" + row, seq.toString());
+		}
+		return new Alignment(seqs);
+	}
+
+	@Test
+	public void testEntropyVariability() throws Exception
+	{
+		for(int nseqs : new int[] {1, 7, 250}) {
+
+			Alignment alignment = getRandomAlignment(nseqs, 120, nseqs);
+
+			MutationDataObject scores = Calculator.generateCorrelatedMutationAndEntropyVariabilityData(alignment);
+
+			for(int i=0; i<alignment.countColumns(); i++) {
+
+				// straightforward calculation, per column
+				Map<Character,Integer> counts = new HashMap<Character,Integer>();
+				int n=0;
+				for(String seq : alignment.getMap().values()) {
+
+					char c = Character.toUpperCase(seq.charAt(i));
+					if(Character.isLetter(c) && "XZBJUO".indexOf(c)==-1) {
+
+						counts.put(c, counts.containsKey(c) ? counts.get(c) + 1 : 1);
+						n++;
+					}
+				}
+				double entropy = 0.0;
+				int variability = 0;
+				for(int count : counts.values()) {
+
+					double p = count / (1.0 * n);
+					entropy -= p * Math.log(p);
+					if(p > 0.005) variability++;
+				}
+
+				assertEquals(entropy, scores.getEntropyScores()[i], 1e-12);
+				assertEquals(variability, scores.getVariabilityScores()[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testParallel() throws Exception
+	{
+		Alignment alignment = getRandomAlignment(300, 1000, 42);
+
+		MutationDataObject	sequential = Calculator.generateCorrelatedMutationAndEntropyVariabilityData(alignment, -1),
+							parallel = Calculator.generateCorrelatedMutationAndEntropyVariabilityData(alignment, 0);
+
+		assertArrayEquals(sequential.getEntropyScores(), parallel.getEntropyScores(), 0.0);
+		assertArrayEquals(sequential.getVariabilityScores(), parallel.getVariabilityScores());
+	}
+
+	@Test
+	public void testSequenceWeights() throws Exception
+	{
+		Map<String,String> seqs = new LinkedHashMap<String,String>();
+		seqs.put("a1", "ACDE");
+		seqs.put("a2", "ACDE");
+		seqs.put("b", "GCDW");
+		seqs.put("c", "GH--");
+
+		Alignment alignment = new Alignment(seqs);
+		double[] weights = alignment.getSequenceWeights();
+
+		// column 1: 2 types, a1 and a2 share 1/2, b and c share 1/2
+		// column 2: 2 types, 1/6 for a1, a2 and b, 1/2 for c
+		// column 3: 1 type, 1/3 each for a1, a2 and b
+		// column 4: 2 types, 1/4 for a1 and a2, 1/2 for b
+		double[] expected = {1.0/4 + 1.0/6 + 1.0/3 + 1.0/4, 1.0/4 + 1.0/6 + 1.0/3 + 1.0/4,
+							 1.0/4 + 1.0/6 + 1.0/3 + 1.0/2, 1.0/4 + 1.0/2};
+		for(int row=0; row<4; row++) {
+
+			assertEquals(expected[row] / 4, weights[row], 1e-12);
+		}
+		assertSame(weights, alignment.getSequenceWeights());
+
+		// identical sequences count as one
+		MutationDataObject scores = Calculator.generateCorrelatedMutationAndEntropyVariabilityData(alignment);
+
+		double pA = weights[0] + weights[1], pG = weights[2] + weights[3];
+		assertEquals(-pA * Math.log(pA) - pG * Math.log(pG), scores.getWeightedEntropyScores()[0], 1e-12);
+		assertEquals(0.0, scores.getWeightedEntropyScores()[2], 0.0);
+	}
+}
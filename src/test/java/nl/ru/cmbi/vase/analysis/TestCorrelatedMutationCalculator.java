@@ -0,0 +1,69 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import nl.ru.cmbi.vase.data.stockholm.Alignment;
+
+import org.junit.Test;
+
+/**
+ */
+public class TestCorrelatedMutationCalculator
+{
+	@Test
+	public void testTopScores() throws Exception
+	{
+		Random random = new Random(7);
+		String aminoAcids = "ACDEFGHIKLMNPQRSTVWY";
+
+		// Column 10 follows column 75, the other columns are random.
+		Map<String,String> seqs = new LinkedHashMap<String,String>();
+		for(int row=0; row<200; row++) {
+
+			char[] seq = new char[100];
+			for(int i=0; i<seq.length; i++) {
+
+				seq[i] = aminoAcids.charAt(random.nextInt(aminoAcids.length()));
+			}
+			seq[9] = aminoAcids.charAt((aminoAcids.indexOf(seq[74]) + 3) % aminoAcids.length());
+
+			seqs.put("seq" + row, new String(seq));
+		}
+		Alignment alignment = new Alignment(seqs);
+
+		List<CmaScore> scores = CorrelatedMutationCalculator.getTopScores(alignment, 20);
+
+		assertEquals(20, scores.size());
+		assertEquals(10, scores.get(0).getResidue1());
+		assertEquals(75, scores.get(0).getResidue2());
+
+		for(int i=1; i<scores.size(); i++) {
+
+			assertTrue(scores.get(i - 1).getScore() >= scores.get(i).getScore());
+		}
+
+		// well above the best of the random pairs
+		assertTrue(scores.get(0).getScore() > 2 * scores.get(1).getScore());
+	}
+}
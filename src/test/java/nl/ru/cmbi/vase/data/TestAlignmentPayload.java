@@ -0,0 +1,142 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.ru.cmbi.vase.data.TableData.ColumnInfo;
+import nl.ru.cmbi.vase.data.stockholm.Alignment;
+import nl.ru.cmbi.vase.parse.StockholmParser;
+import nl.ru.cmbi.vase.parse.VASEXMLParser;
+
+import org.junit.Test;
+
+/**
+ */
+public class TestAlignmentPayload
+{
+	@Test
+	public void testPayload() throws Exception
+	{
+		Map<String,String> seqs = new LinkedHashMap<String,String>();
+		seqs.put("1crn", "TT-CC");
+		seqs.put("seq1", "TTPC");
+
+		// the table has no row for the gap
+		TableData table = new TableData(new ArrayList<ColumnInfo>());
+		int[] residueNumbers = {1, 2, 4, 5};
+		for(int row=0; row<residueNumbers.length; row++) {
+
+			table.setValue("residue_number", row, residueNumbers[row]);
+			table.setValue("pdb_residue", row, "[THR]" + residueNumbers[row] + ":A");
+		}
+		table.setValue("entropy", 0, "0.5");
+		table.setValue("entropy", 1, Double.NaN);
+		table.setValue("entropy", 3, "1.5");
+
+		VASEDataObject data = new VASEDataObject(new Alignment(seqs), table, "1crn");
+
+		VASEDataObject.PlotDescription pd = new VASEDataObject.PlotDescription();
+		pd.setPlotTitle("entropy");
+		pd.setXAxisColumnID("residue_number");
+		pd.setYAxisColumnID("entropy");
+		data.getPlots().add(pd);
+
+		AlignmentPayload payload = AlignmentPayload.get(data);
+
+		assertEquals("1crn", payload.getPdbID());
+		assertEquals(2, payload.getRowCount());
+		assertEquals(5, payload.getColumnCount());
+		assertEquals(4, payload.getMaxLabelLength());
+
+		assertEquals(5, payload.getPdbResidues().size());
+		assertEquals("[THR]2:A", payload.getPdbResidues().get(1));
+		assertEquals("", payload.getPdbResidues().get(2));
+		assertEquals(Integer.valueOf(4), payload.getResidueNumbers().get(2));
+
+		AlignmentPayload.Column entropy = null;
+		for(AlignmentPayload.Column column : payload.getColumns()) {
+
+			if(column.getId().equals("entropy"))
+				entropy = column;
+		}
+		assertEquals("DOUBLE", entropy.getType());
+		assertFalse(entropy.isHidden());
+		assertEquals(4, entropy.getValues().size());
+		assertEquals(0.5, (Double) entropy.getValues().get(0), 0.0);
+
+		// json has no NaN, and the third cell was never filled
+		assertNull(entropy.getValues().get(1));
+		assertNull(entropy.getValues().get(2));
+
+		assertEquals(1, payload.getPlots().size());
+		assertEquals("residue_number", payload.getPlots().get(0).getX());
+		assertEquals("entropy", payload.getPlots().get(0).getY());
+		assertTrue(payload.getTileRows() > 0);
+	}
+
+	/**
+	 * The page draws the plots from the columns, so every axis must be a numeric column.
+	 */
+	private void assertPlotsReferToColumns(AlignmentPayload payload)
+	{
+		Map<String,AlignmentPayload.Column> columns = new HashMap<String,AlignmentPayload.Column>();
+		for(AlignmentPayload.Column column : payload.getColumns()) {
+
+			columns.put(column.getId(), column);
+		}
+
+		assertFalse(payload.getPlots().isEmpty());
+		for(AlignmentPayload.Plot plot : payload.getPlots()) {
+
+			for(String id : new String[] {plot.getX(), plot.getY()}) {
+
+				AlignmentPayload.Column column = columns.get(id);
+				assertNotNull(plot.getTitle() + " refers to a missing column " + id, column);
+				assertTrue(plot.getTitle() + " has a non-numeric axis " + id,
+						"INTEGER".equals(column.getType()) || "DOUBLE".equals(column.getType()));
+			}
+		}
+	}
+
+	@Test
+	public void testStockholmPlots() throws Exception
+	{
+		VASEDataObject data = StockholmParser.parseStockHolm(
+				this.getClass().getResourceAsStream("/1crn.hssp"),
+				new ByteArrayInputStream(new byte[0]), "1CRN", 'A');
+
+		assertPlotsReferToColumns(AlignmentPayload.get(data));
+	}
+
+	@Test
+	public void testXmlPlots() throws Exception
+	{
+		VASEDataObject data = VASEXMLParser.parse(this.getClass().getResourceAsStream("/1crn.xml"));
+
+		assertPlotsReferToColumns(AlignmentPayload.get(data));
+	}
+}
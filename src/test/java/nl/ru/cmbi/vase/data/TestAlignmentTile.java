@@ -0,0 +1,73 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.ru.cmbi.vase.data.stockholm.Alignment;
+
+import org.junit.Test;
+
+/**
+ */
+public class TestAlignmentTile
+{
+	@Test
+	public void testTiles() throws Exception
+	{
+		// more rows and columns than fit in one tile, the last sequence is shorter
+		Map<String,String> seqs = new LinkedHashMap<String,String>();
+		StringBuilder seq = new StringBuilder();
+		for(int i=0; i<AlignmentTile.COLUMNS + 10; i++) {
+
+			seq.append("ACDEFGHIKLMNPQRSTVWY".charAt(i % 20));
+		}
+		for(int i=0; i<AlignmentTile.ROWS + 5; i++) {
+
+			seqs.put("seq" + i, i < AlignmentTile.ROWS + 4 ? seq.toString() : seq.substring(0, AlignmentTile.COLUMNS - 1));
+		}
+
+		VASEDataObject data = new VASEDataObject(new Alignment(seqs), null, "1crn");
+		data.getSequenceReferenceURLs().put("seq1", new URL("http://www.uniprot.org/uniprot/P01542"));
+
+		assertEquals(2, AlignmentTile.countTileRows(data.getAlignment()));
+		assertEquals(2, AlignmentTile.countTileColumns(data.getAlignment()));
+
+		AlignmentTile first = AlignmentTile.get(data, 0, 0);
+		assertEquals(0, first.getRow());
+		assertEquals(0, first.getColumn());
+		assertEquals(AlignmentTile.ROWS, first.getSequences().size());
+		assertEquals(seq.substring(0, AlignmentTile.COLUMNS), first.getSequences().get(0));
+		assertEquals("seq1", first.getLabels().get(1));
+		assertEquals("http://www.uniprot.org/uniprot/P01542", first.getReferences().get(1));
+		assertNull(first.getReferences().get(0));
+
+		AlignmentTile last = AlignmentTile.get(data, 1, 1);
+		assertEquals(AlignmentTile.ROWS, last.getRow());
+		assertEquals(AlignmentTile.COLUMNS, last.getColumn());
+		assertEquals(5, last.getSequences().size());
+		assertEquals(seq.substring(AlignmentTile.COLUMNS), last.getSequences().get(0));
+		assertEquals("", last.getSequences().get(4));
+
+		assertNull(AlignmentTile.get(data, 2, 0));
+		assertNull(AlignmentTile.get(data, 0, -1));
+	}
+}
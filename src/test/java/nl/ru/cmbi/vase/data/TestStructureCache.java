@@ -0,0 +1,253 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ */
+public class TestStructureCache
+{
+	/**
+	 * Counts the calls and takes a while, so that threads can come together.
+	 */
+	private static class SlowUpstream extends StructureCache.DirectoryUpstream
+	{
+		final AtomicInteger fetches = new AtomicInteger();
+
+		SlowUpstream(File dir)
+		{
+			super(dir);
+		}
+
+		@Override
+		public StructureCache.Download fetch(String pdbID, String etag, long lastModified) throws IOException
+		{
+			fetches.incrementAndGet();
+			try {
+				Thread.sleep(100);
+
+			} catch(InterruptedException e) {
+
+				throw new IOException(e);
+			}
+			return super.fetch(pdbID, etag, lastModified);
+		}
+	}
+
+	private String read(StructureCache cache, String pdbID) throws Exception
+	{
+		InputStream in = cache.open(pdbID);
+		try {
+			return IOUtils.toString(in);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testCache() throws Exception
+	{
+		File upstreamDir = Files.createTempDirectory("vase-test").toFile(),
+			 cacheDir = Files.createTempDirectory("vase-test").toFile();
+		try {
+			File pdbFile = new File(upstreamDir, "1crn.pdb");
+			FileUtils.writeStringToFile(pdbFile, "HEADER    1CRN\n", "UTF-8");
+
+			SlowUpstream upstream = new SlowUpstream(upstreamDir);
+			final StructureCache cache = new StructureCache(cacheDir, upstream, 1024 * 1024, 60000);
+
+			// only one of the threads downloads it
+			final List<Exception> errors = new ArrayList<Exception>();
+			List<Thread> threads = new ArrayList<Thread>();
+			for(int i=0; i<4; i++) {
+
+				threads.add(new Thread() {
+
+					@Override
+					public void run() {
+
+						try {
+							read(cache, "1crn");
+
+						} catch(Exception e) {
+
+							synchronized(errors) {
+								errors.add(e);
+							}
+						}
+					}
+				});
+			}
+			for(Thread thread : threads) thread.start();
+			for(Thread thread : threads) thread.join();
+
+			assertTrue(errors.isEmpty());
+			assertEquals(1, upstream.fetches.get());
+			assertEquals(1, cache.getDownloads());
+
+			// stored gzipped, used without asking the upstream
+			assertTrue(new File(cacheDir, "1crn.pdb.gz").isFile());
+			assertEquals("HEADER    1CRN\n", read(cache, "1CRN"));
+			assertEquals(1, upstream.fetches.get());
+
+			// too old, so the upstream is asked, but it didn't change
+			StructureCache revalidating = new StructureCache(cacheDir, upstream, 1024 * 1024, 0);
+			assertEquals("HEADER    1CRN\n", read(revalidating, "1crn"));
+			assertEquals(2, upstream.fetches.get());
+			assertEquals(0, revalidating.getDownloads());
+
+			// it changed
+			FileUtils.writeStringToFile(pdbFile, "HEADER    1CRN, NEW\n", "UTF-8");
+			pdbFile.setLastModified(pdbFile.lastModified() - 60000);
+			assertEquals("HEADER    1CRN, NEW\n", read(revalidating, "1crn"));
+			assertEquals(1, revalidating.getDownloads());
+
+			try {
+				read(cache, "2crn");
+				fail("a structure that's not in the upstream was found");
+
+			} catch(FileNotFoundException e) {
+
+				// expected
+			}
+		}
+		finally {
+			FileUtils.deleteDirectory(upstreamDir);
+			FileUtils.deleteDirectory(cacheDir);
+		}
+	}
+
+	@Test
+	public void testHttpUpstream() throws Exception
+	{
+		final AtomicInteger requests = new AtomicInteger(), notModified = new AtomicInteger();
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+
+				requests.incrementAndGet();
+
+				if("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+
+					notModified.incrementAndGet();
+					exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+				}
+				else if(exchange.getRequestURI().getPath().equals("/1crn.pdb")) {
+
+					byte[] body = "HEADER    1CRN\n".getBytes("UTF-8");
+					exchange.getResponseHeaders().add("ETag", "\"v1\"");
+					exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+					exchange.getResponseBody().write(body);
+				}
+				else exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+
+				exchange.close();
+			}
+		});
+		server.start();
+
+		File cacheDir = Files.createTempDirectory("vase-test").toFile();
+		try {
+			StructureCache.Upstream upstream = StructureCache.createUpstream(
+					"http://localhost:" + server.getAddress().getPort());
+
+			// always checks
+			StructureCache cache = new StructureCache(cacheDir, upstream, 1024 * 1024, 0);
+
+			assertEquals("HEADER    1CRN\n", read(cache, "1crn"));
+			assertEquals("HEADER    1CRN\n", read(cache, "1crn"));
+			assertEquals(2, requests.get());
+			assertEquals(1, notModified.get());
+			assertEquals(1, cache.getDownloads());
+
+			try {
+				read(cache, "2crn");
+				fail("a structure that's not in the upstream was found");
+
+			} catch(FileNotFoundException e) {
+
+				// expected
+			}
+		}
+		finally {
+			server.stop(0);
+			FileUtils.deleteDirectory(cacheDir);
+		}
+	}
+
+	@Test
+	public void testCapacity() throws Exception
+	{
+		File upstreamDir = Files.createTempDirectory("vase-test").toFile(),
+			 cacheDir = Files.createTempDirectory("vase-test").toFile();
+		try {
+			StringBuilder contents = new StringBuilder();
+			for(int i=0; i<1000; i++) {
+
+				contents.append(String.format("ATOM  %5d\n", i));
+			}
+			for(String pdbID : new String[] {"1crn", "2crn", "3crn"}) {
+
+				FileUtils.writeStringToFile(new File(upstreamDir, pdbID + ".pdb"), contents.toString(), "UTF-8");
+			}
+
+			StructureCache cache = new StructureCache(cacheDir, new StructureCache.DirectoryUpstream(upstreamDir), 1024 * 1024, 60000);
+			long size = cache.getFile("1crn").length();
+
+			// room for two
+			cache = new StructureCache(cacheDir, new StructureCache.DirectoryUpstream(upstreamDir), 2 * size, 60000);
+			cache.getFile("1crn").setLastModified(System.currentTimeMillis() - 60000);
+			cache.getFile("2crn");
+			cache.getFile("3crn");
+
+			// the least recently used one is gone
+			assertFalse(new File(cacheDir, "1crn.pdb.gz").exists());
+			assertTrue(new File(cacheDir, "2crn.pdb.gz").exists());
+			assertTrue(new File(cacheDir, "3crn.pdb.gz").exists());
+		}
+		finally {
+			FileUtils.deleteDirectory(upstreamDir);
+			FileUtils.deleteDirectory(cacheDir);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.ru.cmbi.vase.data.TableData.ColumnDataType;
+import nl.ru.cmbi.vase.data.TableData.ColumnInfo;
+
+import org.junit.Test;
+
+/**
+ */
+public class TestTableData
+{
+	@Test
+	public void testTypeDetection() throws Exception
+	{
+		TableData table = new TableData(new ArrayList<ColumnInfo>());
+
+		table.setValue("residue_number", 0, "1");
+		table.setValue("residue_number", 1, new Integer(2));
+		table.setValue("entropy", 0, " 3 ");
+		table.setValue("entropy", 1, "0.25e-1");
+		table.setValue("pdb_residue", 1, "[THR]1:A");
+
+		assertEquals(2, table.getNumberOfRows());
+
+		assertTrue(table.columnIsOfType("residue_number", ColumnDataType.INTEGER));
+		assertEquals(2, table.getResidueNumber(1));
+
+		// became a double column when the second value came in
+		assertTrue(table.columnIsOfType("entropy", ColumnDataType.DOUBLE));
+		assertEquals(3.0, table.getDouble(table.getColumnIndexByID("entropy"), 0), 0.0);
+		assertEquals("0.03", table.getValueAsString("entropy", 1));
+
+		// the first cell is empty
+		assertTrue(table.columnIsOfType("pdb_residue", ColumnDataType.STRING));
+		assertEquals("", table.getPDBResidue(0));
+		assertEquals("[THR]1:A", table.getPDBResidueForResidueNumber(2));
+
+		table.setValue("entropy", 1, "high");
+		assertFalse(table.columnIsNumber("entropy"));
+		assertEquals("3.0", table.getValueAsString("entropy", 0));
+
+		assertEquals(ColumnDataType.INTEGER, ColumnDataType.detect("-12"));
+		assertEquals(ColumnDataType.DOUBLE, ColumnDataType.detect("1.5e3"));
+		assertEquals(ColumnDataType.STRING, ColumnDataType.detect("1."));
+		assertEquals(ColumnDataType.STRING, ColumnDataType.detect("-"));
+		assertEquals(ColumnDataType.STRING, ColumnDataType.detect(""));
+	}
+
+	@Test
+	public void testDeclaredTypes() throws Exception
+	{
+		ColumnInfo weight = new ColumnInfo();
+		weight.setId("weight");
+		weight.setType(ColumnDataType.DOUBLE);
+
+		TableData table = new TableData(Arrays.asList(weight));
+
+		table.setValue("weight", 0, new Integer(1));
+		table.setValue("weight", 2, new Double(0.5));
+
+		assertEquals(new Double(1.0), table.getValue(0, 0));
+		assertFalse(table.hasValue(0, 1));
+		assertTrue(Double.isNaN(table.getDouble(0, 1)));
+		assertFalse(table.columnIsNumber("weight"));
+
+		table.setValue("weight", 1, "0.5");
+		assertTrue(table.columnIsNumber("weight"));
+		assertEquals(Arrays.asList((Object) new Double(0.5)), table.listDuplicateValues("weight"));
+	}
+
+	@Test
+	public void testIndices() throws Exception
+	{
+		TableData table = new TableData(new ArrayList<ColumnInfo>());
+
+		for(int row=0; row<1000; row++) {
+
+			table.setValue(TableData.residueNumberID, row, new Integer(row + 1));
+			if(row % 2 == 0)
+				table.setValue(TableData.pdbResidueID, row, "[GLY]" + row + ":A");
+		}
+
+		assertTrue(table.getColumnByID(TableData.residueNumberID).isIndexed());
+		assertEquals(499, table.getRowIndexForResidueNumber(500));
+		assertEquals(-1, table.getRowIndexForResidueNumber(1001));
+		assertEquals(10, table.getRowIndexForPDBResidue("[GLY]10:A"));
+		assertEquals(-1, table.getRowIndexForPDBResidue("[GLY]11:A"));
+		assertEquals(1, table.getRowIndex(TableData.pdbResidueID, ""));
+
+		// changing values keeps the index up to date
+		table.setValue(TableData.residueNumberID, 499, new Integer(2000));
+		assertEquals(-1, table.getRowIndexForResidueNumber(500));
+		assertEquals(499, table.getRowIndexForResidueNumber(2000));
+
+		table.setValue(TableData.residueNumberID, 0, new Integer(2000));
+		assertEquals(0, table.getRowIndexForResidueNumber(2000));
+		table.setValue(TableData.residueNumberID, 0, new Integer(1));
+		assertEquals(499, table.getRowIndexForResidueNumber(2000));
+
+		table.setValue(TableData.residueNumberID, 1000, "1001");
+		assertEquals(1000, table.getRowIndexForResidueNumber(1001));
+		assertEquals("", table.getPDBResidueForResidueNumber(1001));
+
+		// becomes a string column
+		table.setValue(TableData.residueNumberID, 1001, "1002A");
+		assertEquals(1001, table.getRowIndex(TableData.residueNumberID, "1002A"));
+		assertEquals(-1, table.getRowIndexForResidueNumber(3));
+		assertEquals(2, table.getRowIndex(TableData.residueNumberID, "3"));
+	}
+
+	@Test
+	public void testConcurrentLookups() throws Exception
+	{
+		final TableData table = new TableData(new ArrayList<ColumnInfo>());
+		for(int row=0; row<10000; row++) {
+
+			table.setValue(TableData.residueNumberID, row, new Integer(row + 1));
+		}
+
+		// the index isn't built yet, all threads ask for it at once
+		final AtomicInteger wrong = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for(int i=0; i<threads.length; i++) {
+
+			threads[i] = new Thread() {
+
+				@Override
+				public void run()
+				{
+					for(int row=0; row<10000; row++) {
+
+						if(table.getRowIndexForResidueNumber(row + 1)!=row)
+							wrong.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for(Thread thread : threads) {
+
+			thread.join();
+		}
+		assertEquals(0, wrong.get());
+	}
+}
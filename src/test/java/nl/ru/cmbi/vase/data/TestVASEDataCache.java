@@ -0,0 +1,163 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.ru.cmbi.vase.data.TableData.ColumnInfo;
+import nl.ru.cmbi.vase.data.stockholm.Alignment;
+
+import org.junit.Test;
+
+/**
+ */
+public class TestVASEDataCache
+{
+	private static VASEDataObject makeData() {
+		
+		Map<String,String> seqs = new LinkedHashMap<String,String>();
+		seqs.put("a", "ACDEFGHIKL");
+		seqs.put("b", "ACDEFGHIKM");
+		
+		TableData table = new TableData(new ArrayList<ColumnInfo>());
+		for(int i=0; i<10; i++) {
+			
+			table.setValue(TableData.residueNumberID, i, i + 1);
+		}
+		
+		return new VASEDataObject(new Alignment(seqs), table, "test");
+	}
+	
+	private static class CountingLoader implements VASEDataCache.Loader {
+		
+		final AtomicInteger loads = new AtomicInteger();
+		
+		@Override
+		public VASEDataObject load() throws Exception {
+			
+			loads.incrementAndGet();
+			return makeData();
+		}
+	}
+	
+	@Test
+	public void testHitsAndEviction() throws Exception
+	{
+		long entrySize = VASEDataCache.estimateSize(makeData());
+		VASEDataCache cache = new VASEDataCache(2 * entrySize);
+		CountingLoader loader = new CountingLoader();
+		
+		VASEDataCache.Key	a = new VASEDataCache.Key("1crn", 'A', 1),
+							b = new VASEDataCache.Key("1crn", 'B', 1),
+							c = new VASEDataCache.Key("1crn", 'C', 1);
+		
+		VASEDataObject dataA = cache.get(a, loader);
+		assertSame(dataA, cache.get(a, loader));
+		assertEquals(1, loader.loads.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		
+		cache.get(b, loader);
+		cache.get(a, loader); // now b is the least recently used
+		cache.get(c, loader);
+		
+		assertEquals(2, cache.countEntries());
+		assertEquals(1, cache.getEvictions());
+		assertSame(dataA, cache.get(a, loader));
+		
+		cache.get(b, loader);
+		assertEquals(4, loader.loads.get());
+		
+		// a changed source file replaces the old entry
+		VASEDataCache.Key newA = new VASEDataCache.Key("1crn", 'A', 2);
+		cache.get(newA, loader);
+		assertEquals(5, loader.loads.get());
+		assertEquals(2, cache.countEntries());
+		assertEquals(2 * entrySize, cache.getSize());
+	}
+	
+	@Test
+	public void testSingleFlight() throws Exception
+	{
+		final VASEDataCache cache = new VASEDataCache(Long.MAX_VALUE);
+		final VASEDataCache.Key key = new VASEDataCache.Key("1crn", null, 0);
+		
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger();
+		final VASEDataCache.Loader slowLoader = new VASEDataCache.Loader() {
+			
+			@Override
+			public VASEDataObject load() throws Exception {
+				
+				loads.incrementAndGet();
+				release.await();
+				return makeData();
+			}
+		};
+		
+		final List<VASEDataObject> results = new ArrayList<VASEDataObject>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i=0; i<8; i++) {
+			
+			Thread thread = new Thread() {
+				
+				@Override
+				public void run() {
+					
+					try {
+						VASEDataObject data = cache.get(key, slowLoader);
+						synchronized(results) {
+							
+							results.add(data);
+						}
+					} catch(Exception e) {
+						
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		
+		// let every thread reach the cache before the load finishes
+		while(cache.getMisses() + cache.getWaits() < threads.size()) {
+			
+			Thread.sleep(1);
+		}
+		release.countDown();
+		
+		for(Thread thread : threads) {
+			
+			thread.join();
+		}
+		
+		assertEquals(1, loads.get());
+		assertEquals(threads.size(), results.size());
+		for(VASEDataObject data : results) {
+			
+			assertSame(results.get(0), data);
+		}
+	}
+}
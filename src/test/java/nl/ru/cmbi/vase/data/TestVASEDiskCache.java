@@ -0,0 +1,113 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import nl.ru.cmbi.vase.parse.VASEXMLParser;
+
+import org.junit.Test;
+
+/**
+ */
+public class TestVASEDiskCache
+{
+	private File createTempDir() throws IOException {
+		
+		File dir = File.createTempFile("vase-test", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		return dir;
+	}
+	
+	private File createSource(File dir, String name) throws IOException {
+		
+		File source = new File(dir, name);
+		FileOutputStream out = new FileOutputStream(source);
+		out.write(name.getBytes());
+		out.close();
+		source.deleteOnExit();
+		return source;
+	}
+	
+	@Test
+	public void testInvalidation() throws Exception
+	{
+		File dir = createTempDir();
+		File source = createSource(dir, "1crn.hssp.bz2");
+		VASEDiskCache cache = new VASEDiskCache(dir, Long.MAX_VALUE);
+		
+		assertNull(cache.get("1crn", 'A', source));
+		
+		VASEDataObject data = VASEXMLParser.parse(this.getClass().getResourceAsStream("/1crn.xml"));
+		cache.put("1crn", 'A', source, data);
+		
+		File stored = cache.getFile("1crn", 'A', source);
+		assertTrue(stored.isFile());
+		stored.deleteOnExit();
+		
+		VASEDataObject read = cache.get("1crn", 'A', source);
+		assertNotNull(read);
+		assertEquals(data.getAlignment().getMap(), read.getAlignment().getMap());
+		assertNull(cache.get("1crn", 'B', source));
+		
+		// the source changes
+		source.setLastModified(source.lastModified() - 60000);
+		assertNull(cache.get("1crn", 'A', source));
+		
+		cache.put("1crn", 'A', source, data);
+		cache.getFile("1crn", 'A', source).deleteOnExit();
+		assertFalse(stored.isFile());
+	}
+	
+	@Test
+	public void testCleanUp() throws Exception
+	{
+		File dir = createTempDir();
+		File source = createSource(dir, "1crn.hssp.bz2");
+		VASEDataObject data = VASEXMLParser.parse(this.getClass().getResourceAsStream("/1crn.xml"));
+		
+		VASEDiskCache cache = new VASEDiskCache(dir, Long.MAX_VALUE);
+		cache.put("1crn", 'A', source, data);
+		File file = cache.getFile("1crn", 'A', source);
+		file.deleteOnExit();
+		
+		// room for two entries
+		cache = new VASEDiskCache(dir, 2 * file.length() + file.length() / 2);
+		for(char chain='A'; chain<='C'; chain++) {
+			
+			cache.put("1crn", chain, source, data);
+			cache.getFile("1crn", chain, source).setLastModified(1000000000000L + chain * 1000L);
+			cache.getFile("1crn", chain, source).deleteOnExit();
+		}
+		
+		cache.get("1crn", 'A', source); // A is now the most recently used
+		cache.cleanUp();
+		
+		assertTrue(cache.getFile("1crn", 'A', source).isFile());
+		assertFalse(cache.getFile("1crn", 'B', source).isFile());
+		assertTrue(cache.getFile("1crn", 'C', source).isFile());
+	}
+}
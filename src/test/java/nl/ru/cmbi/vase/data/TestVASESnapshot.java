@@ -0,0 +1,103 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+import nl.ru.cmbi.vase.data.TableData.ColumnDataType;
+import nl.ru.cmbi.vase.parse.VASEXMLParser;
+
+import org.junit.Test;
+
+/**
+ */
+public class TestVASESnapshot
+{
+	private VASEDataObject getData() throws Exception {
+		
+		VASEDataObject data = VASEXMLParser.parse(this.getClass().getResourceAsStream("/1crn.xml"));
+		data.setTitle("Crambin");
+		
+		// an empty cell
+		data.getTable().setValue("comment", 2, "nice");
+		
+		return data;
+	}
+	
+	@Test
+	public void testWriteRead() throws Exception
+	{
+		VASEDataObject data = getData();
+		
+		File file = File.createTempFile("vase-test", VASESnapshot.extension);
+		file.deleteOnExit();
+		VASESnapshot.write(data, file);
+		
+		VASEDataObject read = VASESnapshot.read(file);
+		
+		assertEquals(data.getTitle(), read.getTitle());
+		assertEquals(data.getPdbID(), read.getPdbID());
+		assertEquals(data.getAlignment().getMap(), read.getAlignment().getMap());
+		assertEquals(data.getAlignment().getLabels(), read.getAlignment().getLabels());
+		assertEquals(data.getSequenceReferenceURLs(), read.getSequenceReferenceURLs());
+		assertEquals(data.getPlots().size(), read.getPlots().size());
+		assertEquals(data.getPlots().get(0).getPlotTitle(), read.getPlots().get(0).getPlotTitle());
+		
+		TableData table = data.getTable(), readTable = read.getTable();
+		assertEquals(table.getNumberOfRows(), readTable.getNumberOfRows());
+		assertEquals(table.getColumnInfos().size(), readTable.getColumnInfos().size());
+		for(int i=0; i<table.getNumberOfRows(); i++) {
+			
+			assertEquals(table.getRowValues(i), readTable.getRowValues(i));
+		}
+		
+		assertTrue(readTable.columnIsOfType(TableData.residueNumberID, ColumnDataType.INTEGER));
+		assertEquals(table.getRowIndexForResidueNumber(10), readTable.getRowIndexForResidueNumber(10));
+		assertEquals("", readTable.getValueAsString("comment", 1));
+	}
+	
+	@Test
+	public void testDamaged() throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		VASESnapshot.write(getData(), out);
+		byte[] bytes = out.toByteArray();
+		
+		bytes[bytes.length / 2] ^= 1;
+		try {
+			VASESnapshot.read(ByteBuffer.wrap(bytes));
+			assertTrue(false);
+		}
+		catch(IOException e) {
+			
+			assertEquals("snapshot checksum mismatch", e.getMessage());
+		}
+		
+		try {
+			VASESnapshot.read(ByteBuffer.wrap(bytes, 0, bytes.length - 20));
+			assertTrue(false);
+		}
+		catch(IOException e) {
+		}
+	}
+}
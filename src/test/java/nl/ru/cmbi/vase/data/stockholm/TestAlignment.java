@@ -0,0 +1,63 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.data.stockholm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ */
+public class TestAlignment
+{
+	@Test
+	public void testViews() throws Exception
+	{
+		Map<String,String> seqs = new LinkedHashMap<String,String>();
+		seqs.put("1CRN/A", "TTCC.PS");
+		seqs.put("P01542/1-46", "TTcCAP");
+		seqs.put("Q9S979/9-52", "..CC-PN");
+		
+		Alignment alignment = new Alignment(seqs);
+		
+		assertEquals(7, alignment.countColumns());
+		assertEquals(3, alignment.countAlignedSeqs());
+		assertEquals(Arrays.asList("1CRN/A", "P01542/1-46", "Q9S979/9-52"), alignment.getLabels());
+		assertEquals(seqs, alignment.getMap());
+		assertEquals("TTcCAP", alignment.getAlignedSeq("P01542/1-46"));
+		assertEquals(1, alignment.getRow("P01542/1-46"));
+		assertEquals(-1, alignment.getRow("P07504/2-47"));
+		
+		assertEquals('c', alignment.getResidue(1, 2));
+		assertEquals('-', alignment.getResidue(2, 4));
+		
+		byte[] column = new byte[3];
+		alignment.getColumn(4, column);
+		assertEquals(".A-", new String(column, "ISO-8859-1"));
+		
+		byte[] columns = alignment.getColumnMajorResidues();
+		for(int row=0; row<3; row++) {
+			for(int i=0; i<6; i++) {
+				
+				assertEquals(alignment.getResidue(row, i), (char) columns[i * 3 + row]);
+			}
+		}
+	}
+}
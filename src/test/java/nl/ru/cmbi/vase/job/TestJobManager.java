@@ -0,0 +1,281 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ */
+public class TestJobManager
+{
+	/**
+	 * Stands in for the xssp service: jobs succeed after being asked about a few times.
+	 */
+	private class StubService implements XsspService
+	{
+		final AtomicInteger submits = new AtomicInteger(), statusCalls = new AtomicInteger();
+
+		final CountDownLatch submitAllowed;
+
+		StubService(CountDownLatch submitAllowed)
+		{
+			this.submitAllowed = submitAllowed;
+		}
+
+		@Override
+		public String submit(String pdbContents) throws Exception
+		{
+			submitAllowed.await();
+			return "upstream-" + submits.incrementAndGet();
+		}
+
+		@Override
+		public String getStatus(String jobID) throws Exception
+		{
+			return statusCalls.incrementAndGet() < 3 ? "STARTED" : Job.SUCCESS;
+		}
+
+		@Override
+		public String getResult(String jobID) throws Exception
+		{
+			return IOUtils.toString(TestJobManager.class.getResourceAsStream("/1crn.hssp"));
+		}
+	}
+
+	private void waitForStatus(JobManager manager, Job job, String status) throws Exception
+	{
+		for(int i=0; i<500; i++) {
+
+			if(job.getStatus().equals(status))
+				return;
+
+			manager.poll();
+			Thread.sleep(10);
+		}
+		fail("job " + job.getId() + " is still " + job.getStatus());
+	}
+
+	@Test
+	public void testJob() throws Exception
+	{
+		File dir = Files.createTempDirectory("vase-test").toFile();
+
+		StubService stub = new StubService(new CountDownLatch(0));
+		JobManager manager = new JobManager(stub, dir, 2, 10, 10);
+		try {
+			Job job = manager.submit("ATOM");
+			assertEquals(Job.PENDING, job.getStatus());
+			assertSame(job, manager.get(job.getId()));
+
+			waitForStatus(manager, job, Job.SUCCESS);
+			assertEquals(1, stub.submits.get());
+			assertTrue(manager.getHsspFile(job.getId()).isFile());
+
+			// the gzipped copy has the same contents
+			InputStream gzIn = new GZIPInputStream(new FileInputStream(manager.getGzippedHsspFile(job.getId())));
+			try {
+				assertEquals(stub.getResult(null), IOUtils.toString(gzIn));
+			}
+			finally {
+				gzIn.close();
+			}
+
+			// a new manager finds it from the files
+			JobManager restarted = new JobManager(stub, dir, 1, 1, 1);
+			assertEquals(Job.SUCCESS, restarted.get(job.getId()).getStatus());
+			restarted.stop();
+
+			assertNull(manager.get("no-such-job"));
+			assertNull(manager.get("../1crn"));
+		}
+		finally {
+			manager.stop();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void testFailedSubmit() throws Exception
+	{
+		File dir = Files.createTempDirectory("vase-test").toFile();
+
+		StubService failing = new StubService(new CountDownLatch(0)) {
+
+			@Override
+			public String submit(String pdbContents) throws Exception
+			{
+				throw new Exception("service unavailable");
+			}
+		};
+		JobManager manager = new JobManager(failing, dir, 1, 10, 10);
+		try {
+			Job job = manager.submit("ATOM");
+			waitForStatus(manager, job, Job.FAILURE);
+
+			// once it's forgotten, it's still failed and the service isn't asked about it
+			JobManager restarted = new JobManager(failing, dir, 1, 1, 1);
+			try {
+				Job reloaded = restarted.get(job.getId());
+				assertEquals(Job.FAILURE, reloaded.getStatus());
+				assertNull(reloaded.getUpstreamID());
+			}
+			finally {
+				restarted.stop();
+			}
+		}
+		finally {
+			manager.stop();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void testRestartWhileSending() throws Exception
+	{
+		File dir = Files.createTempDirectory("vase-test").toFile();
+
+		CountDownLatch submitAllowed = new CountDownLatch(1);
+		StubService stub = new StubService(submitAllowed);
+		JobManager manager = new JobManager(stub, dir, 1, 10, 10);
+		try {
+			Job job = manager.submit("ATOM");
+
+			// a restart while it's being sent, as after a crash: nothing will send it anymore
+			JobManager restarted = new JobManager(stub, dir, 1, 1, 1);
+			try {
+				Job reloaded = restarted.get(job.getId());
+				assertEquals(Job.FAILURE, reloaded.getStatus());
+				assertNull(reloaded.getUpstreamID());
+			}
+			finally {
+				restarted.stop();
+			}
+		}
+		finally {
+			submitAllowed.countDown();
+			manager.stop();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void testWaitForChanges() throws Exception
+	{
+		File dir = Files.createTempDirectory("vase-test").toFile();
+
+		JobManager manager = new JobManager(new StubService(new CountDownLatch(0)), dir, 2, 10, 10);
+		try {
+			Job job = manager.submit("ATOM");
+
+			Map<String,String> known = new HashMap<String,String>();
+			known.put(job.getId(), Job.PENDING);
+
+			// nothing happens without the poller
+			assertTrue(manager.waitForChanges(known, 100).isEmpty());
+
+			manager.start(1);
+
+			Map<String,String> changed = manager.waitForChanges(known, 10000);
+			assertEquals("STARTED", changed.get(job.getId()));
+
+			// a client that doesn't know the status gets it right away
+			known.put(job.getId(), null);
+			known.put("no-such-job", null);
+			changed = manager.waitForChanges(known, 10000);
+			assertEquals(job.getStatus(), changed.get(job.getId()));
+			assertEquals(Job.UNKNOWN, changed.get("no-such-job"));
+		}
+		finally {
+			manager.stop();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void testTooManyWaiters() throws Exception
+	{
+		File dir = Files.createTempDirectory("vase-test").toFile();
+
+		// nobody may wait
+		JobManager manager = new JobManager(new StubService(new CountDownLatch(0)), dir, 1, 10, 0);
+		try {
+			Job job = manager.submit("ATOM");
+
+			Map<String,String> known = new HashMap<String,String>();
+			known.put(job.getId(), Job.PENDING);
+
+			// must come back later
+			assertNull(manager.waitForChanges(known, 10000));
+
+			// but changes are told right away
+			known.put(job.getId(), null);
+			assertEquals(Job.PENDING, manager.waitForChanges(known, 10000).get(job.getId()));
+		}
+		finally {
+			manager.stop();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void testQueueFull() throws Exception
+	{
+		File dir = Files.createTempDirectory("vase-test").toFile();
+
+		// the submissions hang, so the one worker and the queue fill up
+		CountDownLatch submitAllowed = new CountDownLatch(1);
+		JobManager manager = new JobManager(new StubService(submitAllowed), dir, 1, 1, 1);
+		try {
+			// one for the worker, one for the queue
+			assertNotNull(manager.submit("ATOM"));
+			assertNotNull(manager.submit("ATOM"));
+
+			try {
+				manager.submit("ATOM");
+				fail("a job was accepted while the queue was full");
+
+			} catch(RejectedExecutionException e) {
+
+				// expected
+			}
+		}
+		finally {
+			submitAllowed.countDown();
+			manager.stop();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ */
+public class TestHsspMountCrawler
+{
+	private void writeHssp(File hsspFile) throws Exception
+	{
+		OutputStream out = new BZip2CompressorOutputStream(new FileOutputStream(hsspFile));
+		IOUtils.copy(this.getClass().getResourceAsStream("/1crn.hssp"), out);
+		out.close();
+	}
+
+	@Test
+	public void testScan() throws Exception
+	{
+		File dir = Files.createTempDirectory("vase-test").toFile();
+		try {
+			writeHssp(new File(dir, "1crn.hssp.bz2"));
+			writeHssp(new File(dir, "2crn.hssp.bz2"));
+			new File(dir, "readme.txt").createNewFile();
+
+			StructureCatalogue catalogue = new StructureCatalogue(null);
+			HsspMountCrawler crawler = new HsspMountCrawler(dir, catalogue);
+
+			assertEquals(2, crawler.scan());
+			assertEquals(2, catalogue.size());
+
+			StructureCatalogue.Entry entry = catalogue.get("1crn");
+			assertNotNull(entry);
+			assertEquals(5, entry.getChains().size());
+
+			// chain E is the same as chain A
+			assertEquals(6, entry.getAlignmentDepth('A'));
+			assertEquals(6, entry.getAlignmentDepth('E'));
+			assertEquals(47, entry.getAlignmentLength('A'));
+			assertEquals(0, entry.getAlignmentLength('Z'));
+
+			new File(dir, "2crn.hssp.bz2").delete();
+
+			assertEquals(1, crawler.scan());
+			assertNull(catalogue.get("2crn"));
+			assertNotNull(catalogue.get("1crn"));
+		}
+		finally {
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void testOtherDirectory() throws Exception
+	{
+		File dir = Files.createTempDirectory("vase-test").toFile(),
+			 otherDir = Files.createTempDirectory("vase-test").toFile();
+		try {
+			writeHssp(new File(dir, "1crn.hssp.bz2"));
+
+			// not in the mount, like the result of a custom job
+			File otherFile = new File(otherDir, "3crn.hssp.bz2");
+			writeHssp(otherFile);
+
+			StructureCatalogue catalogue = new StructureCatalogue(null);
+			catalogue.get("3crn", otherFile, null);
+
+			HsspMountCrawler crawler = new HsspMountCrawler(dir, catalogue);
+			assertEquals(1, crawler.scan());
+			assertEquals(2, catalogue.size());
+			assertEquals(otherFile.getAbsoluteFile(), catalogue.get("3crn").getSourceFile());
+		}
+		finally {
+			FileUtils.deleteDirectory(dir);
+			FileUtils.deleteDirectory(otherDir);
+		}
+	}
+}
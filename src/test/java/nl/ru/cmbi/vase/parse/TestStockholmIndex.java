@@ -0,0 +1,140 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nl.ru.cmbi.vase.tools.util.BZip2Blocks;
+import nl.ru.cmbi.vase.tools.util.ParallelBZip2InputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ */
+public class TestStockholmIndex
+{
+	private String getSection(String text, char chain) {
+
+		int idLine = text.indexOf("#=GF ID 1CRN/" + chain);
+		int start = text.lastIndexOf("//\n", idLine) + 3;
+		if(start < 3) start = 0;
+
+		return text.substring(start, text.indexOf("//\n", idLine) + 3);
+	}
+
+	/**
+	 * The test file, followed by copies of chain D under other chain IDs.
+	 * Compressed with the smallest block size, it spans several blocks.
+	 */
+	private String getLargeStockholm() throws IOException {
+
+		String text = IOUtils.toString(this.getClass().getResourceAsStream("/1crn.hssp"));
+		String sectionD = getSection(text, 'D');
+
+		StringBuilder sb = new StringBuilder(text);
+		for(char chain='F'; chain<='Z'; chain++) {
+
+			String copy = sectionD.replace("/D ", "/"+chain+" ").replace("1CRN/D", "1CRN/"+chain)
+					.replaceAll("(#=GF (RI|PR) [0-9]+ +[0-9]+.)D", "$1"+chain)
+					.replace("DBREF 1CRN D", "DBREF 1CRN "+chain);
+			sb.append(copy);
+		}
+		return sb.toString();
+	}
+
+	private File compress(String text, int blockSize) throws IOException {
+
+		File file = File.createTempFile("vase-test", ".hssp.bz2");
+		file.deleteOnExit();
+
+		OutputStream out = new BZip2CompressorOutputStream(new FileOutputStream(file), blockSize);
+		out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+		out.close();
+
+		return file;
+	}
+
+	@Test
+	public void testBlocks() throws Exception
+	{
+		String text = getLargeStockholm();
+		File file = compress(text, 1);
+
+		List<BZip2Blocks.Block> blocks = BZip2Blocks.scan(file);
+		assertTrue(blocks.size() > 1);
+
+		String decompressed = IOUtils.toString(BZip2Blocks.open(file, blocks), "ISO-8859-1");
+		assertEquals(text, decompressed);
+	}
+
+	@Test
+	public void testOpenChain() throws Exception
+	{
+		String text = getLargeStockholm();
+		File file = compress(text, 1);
+		File indexFile = File.createTempFile("vase-test", ".idx");
+		indexFile.deleteOnExit();
+
+		StockholmIndex.get(file, indexFile);
+		StockholmIndex index = StockholmIndex.get(file, indexFile); // from the file this time
+
+		assertEquals(StockholmParser.listChainsInStockholm(IOUtils.toInputStream(text)), index.listChains());
+
+		String pdbIDLine = "#=GF CC PDBID 1CRN\n",
+			   equalChainsLine = "#=GF CC Chain A is considered to be the same as B, C and E\n";
+
+		assertEquals(equalChainsLine + getSection(text, 'A'), IOUtils.toString(index.openChain(file, 'A')));
+		assertEquals(equalChainsLine + getSection(text, 'A'), IOUtils.toString(index.openChain(file, 'E')));
+
+		for(char chain='F'; chain<='Z'; chain++) {
+
+			assertEquals(pdbIDLine + getSection(text, chain), IOUtils.toString(index.openChain(file, chain)));
+		}
+
+		assertNull(index.openChain(file, '0'));
+	}
+	
+	@Test
+	public void testParallelDecompression() throws Exception
+	{
+		String text = getLargeStockholm();
+		File file = compress(text, 1);
+		
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			InputStream in = new ParallelBZip2InputStream(file, pool, 2);
+			assertEquals(text, IOUtils.toString(in, "ISO-8859-1"));
+			in.close();
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nl.ru.cmbi.vase.data.VASEDataObject;
+import nl.ru.cmbi.vase.data.pdb.PDBStructure;
+import nl.ru.cmbi.vase.parse.StockholmTokenizer.LineType;
+
+import org.junit.Test;
+
+/**
+ */
+public class TestStockholmParser
+{
+	@Test
+	public void testTokenizerAgreesWithPatterns() throws Exception
+	{
+		Pattern	vp = Pattern.compile(StockholmParser.variabilityLinePattern),
+				pp = Pattern.compile(StockholmParser.profileLinePattern),
+				sp = Pattern.compile(StockholmParser.seqLinePattern),
+				cp = Pattern.compile(StockholmParser.chainLinePattern);
+
+		StockholmTokenizer tokenizer = new StockholmTokenizer();
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				this.getClass().getResourceAsStream("/1crn.hssp")));
+		String line;
+		while((line=reader.readLine())!=null) {
+
+			LineType type = tokenizer.next(line);
+
+			Matcher vm = vp.matcher(line),
+					pm = pp.matcher(line),
+					sm = sp.matcher(line),
+					cm = cp.matcher(line);
+
+			if(line.trim().equals("//")) {
+
+				assertEquals(LineType.END_OF_CHAIN, type);
+			}
+			else if(line.matches(StockholmParser.pdbIDLinePattern)) {
+
+				assertEquals(LineType.PDBID, type);
+				assertEquals("1CRN", tokenizer.getId());
+			}
+			else if(cm.matches()) {
+
+				assertEquals(LineType.CHAIN, type);
+				assertEquals(cm.group(1), tokenizer.getId());
+				assertEquals(cm.group(2).charAt(0), tokenizer.getChain());
+			}
+			else if(line.matches(StockholmParser.dbRefLinePattern)) {
+
+				assertEquals(LineType.DBREF, type);
+			}
+			else if(vm.matches()) {
+
+				assertEquals(LineType.RESIDUE_INFO, type);
+				assertEquals(Integer.parseInt(vm.group(1)), tokenizer.getSeqNo());
+				assertEquals(vm.group(2).trim(), tokenizer.getPdbNumber());
+				assertEquals(vm.group(3).charAt(0), tokenizer.getChain());
+				assertEquals(vm.group(4).charAt(0), tokenizer.getAa());
+				assertEquals(Integer.parseInt(vm.group(10)), tokenizer.getVar());
+			}
+			else if(pm.matches()) {
+
+				assertEquals(LineType.PROFILE, type);
+				assertEquals(Integer.parseInt(pm.group(1)), tokenizer.getSeqNo());
+				assertEquals(pm.group(3).charAt(0), tokenizer.getChain());
+				assertEquals(Double.parseDouble(pm.group(8)), tokenizer.getEntropy(), 0.0);
+				assertEquals(Integer.parseInt(pm.group(9)), tokenizer.getRelent());
+				assertEquals(Double.parseDouble(pm.group(10)), tokenizer.getWeight(), 0.0);
+			}
+			else if(line.matches(StockholmParser.equalchainsLinePattern)) {
+
+				assertEquals(LineType.EQUAL_CHAINS, type);
+				assertEquals('A', tokenizer.getChain());
+				assertEquals(3, tokenizer.countEqualChains());
+				assertEquals('E', tokenizer.getEqualChain(2));
+			}
+			else if(sm.matches()) {
+
+				assertEquals(LineType.SEQUENCE, type);
+				assertEquals(sm.group(1), tokenizer.getId());
+				assertEquals(sm.group(2), tokenizer.getSequence());
+			}
+			else assertEquals(LineType.OTHER, type);
+		}
+		reader.close();
+	}
+
+	@Test
+	public void testListChains() throws Exception
+	{
+		Set<Character> chains = StockholmParser.listChainsInStockholm(
+				this.getClass().getResourceAsStream("/1crn.hssp"));
+
+		assertEquals(new HashSet<Character>(Arrays.asList('A','B','C','D','E')), chains);
+	}
+
+	private String getPDBAtoms(char chain, int number, String resName) {
+		
+		StringBuilder sb = new StringBuilder();
+		for(String atom : new String[] {"N","CA","C","O"}) {
+			
+			sb.append(String.format("ATOM  %5d  %-3s %3s %c%4d    %8.3f%8.3f%8.3f  1.00  0.00\n",
+					1, atom, resName, chain, number, 0.0, 0.0, 0.0));
+		}
+		return sb.toString();
+	}
+	
+	@Test
+	public void testParseAllChains() throws Exception
+	{
+		String pdb = getPDBAtoms('A', 1, "THR") + getPDBAtoms('D', 1, "LYS");
+		
+		Map<Character,VASEDataObject> data = StockholmParser.parseStockHolm(
+				this.getClass().getResourceAsStream("/1crn.hssp"),
+				new ByteArrayInputStream(pdb.getBytes()), "1CRN");
+		
+		assertEquals(new HashSet<Character>(Arrays.asList('A','B','C','D','E')), data.keySet());
+		
+		// every chain must see the pdb residues, not just the first one
+		assertEquals("[THR]1:A", data.get('A').getTable().getPDBResidueForResidueNumber(1));
+		assertEquals("[LYS]1:D", data.get('D').getTable().getPDBResidueForResidueNumber(1));
+	}
+
+	@Test
+	public void testRepeatedResidueNumber() throws Exception
+	{
+		// the second residue 1 of chain A, an alternative, is skipped
+		String pdb = getPDBAtoms('A', 1, "THR") + getPDBAtoms('A', 2, "CYS") + getPDBAtoms('A', 1, "SER");
+		
+		PDBStructure structure = PDBParser.parseStructure(new ByteArrayInputStream(pdb.getBytes()));
+		
+		assertEquals(2, structure.getResidues('A').size());
+		assertEquals("THR", structure.getResidues('A').get(0).getResidueName());
+		assertSame(structure.getResidues('A').get(0), structure.getResidue('A', "1"));
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ */
+public class TestStructureCatalogue
+{
+	@Test
+	public void testStoreAndLoad() throws Exception
+	{
+		File hsspFile = File.createTempFile("vase-test", ".hssp.bz2");
+		hsspFile.deleteOnExit();
+		
+		OutputStream out = new BZip2CompressorOutputStream(new FileOutputStream(hsspFile));
+		IOUtils.copy(this.getClass().getResourceAsStream("/1crn.hssp"), out);
+		out.close();
+		
+		File storeFile = File.createTempFile("vase-test", ".catalogue");
+		storeFile.delete();
+		storeFile.deleteOnExit();
+		
+		StructureCatalogue catalogue = new StructureCatalogue(storeFile);
+		assertNull(catalogue.get("1CRN"));
+		
+		StructureCatalogue.Entry entry = catalogue.get("1CRN", hsspFile, null);
+		assertEquals(new HashSet<Character>(Arrays.asList('A','B','C','D','E')), entry.getChains());
+		assertEquals(new Character('A'), entry.getAliases().get('E'));
+		assertTrue(entry.isUpToDate(hsspFile));
+		assertEquals(hsspFile.getAbsoluteFile(), entry.getSourceFile());
+		
+		// no second index build when it's up to date
+		assertSame(entry, catalogue.get("1crn", hsspFile, null));
+		
+		// another instance reads it from the store file
+		StructureCatalogue loaded = new StructureCatalogue(storeFile);
+		assertEquals(1, loaded.size());
+		assertEquals(entry, loaded.get("1crn"));
+		
+		hsspFile.setLastModified(hsspFile.lastModified() - 60000);
+		assertFalse(loaded.get("1crn").isUpToDate(hsspFile));
+		loaded.get("1crn", hsspFile, null);
+		
+		// the newest line counts
+		assertTrue(new StructureCatalogue(storeFile).get("1crn").isUpToDate(hsspFile));
+	}
+}
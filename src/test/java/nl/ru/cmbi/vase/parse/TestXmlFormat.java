@@ -15,10 +15,12 @@
  */
 package nl.ru.cmbi.vase.parse;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -28,6 +30,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import nl.ru.cmbi.vase.data.TableData;
 import nl.ru.cmbi.vase.data.VASEDataObject;
 import nl.ru.cmbi.vase.parse.VASEXMLParser;
 
@@ -61,5 +64,74 @@ public class TestXmlFormat
 		VASEXMLParser.write(data, outputStream);
 		
 		log.info(new String( outputStream.toByteArray(),StandardCharsets.UTF_8 ));
+		
+		// what was written must read back the same
+		VASEDataObject reread = VASEXMLParser.parse(new ByteArrayInputStream(outputStream.toByteArray()));
+		
+		assertEquals(data.getAlignment().getMap(), reread.getAlignment().getMap());
+		assertEquals(data.getPdbID(), reread.getPdbID());
+		assertEquals(data.getPlots(), reread.getPlots());
+		assertEquals(data.getTable().getColumnInfos(), reread.getTable().getColumnInfos());
+		assertEquals(data.getTable().getNumberOfRows(), reread.getTable().getNumberOfRows());
+		for(int i=0; i<data.getTable().getNumberOfRows(); i++) {
+			
+			assertEquals(data.getTable().getRowValues(i), reread.getTable().getRowValues(i));
+		}
+	}
+	
+	@Test
+	public void testParseContents() throws Exception
+	{
+		String xml = IOUtils.toString(this.getClass().getResourceAsStream("/1crn.xml"), "UTF-8");
+		
+		VASEDataObject data = VASEXMLParser.parse(IOUtils.toInputStream(xml, "UTF-8"));
+		
+		Map<String,String> fasta = FastaParser.parseFasta(IOUtils.toInputStream(
+				xml.substring(xml.indexOf("<fasta>") + 7, xml.indexOf("</fasta>")), "UTF-8"));
+		assertEquals(fasta, data.getAlignment().getMap());
+		
+		assertEquals(data.getAlignment().countColumns(), data.getTable().getNumberOfRows());
+		assertEquals(1, data.getSequenceReferenceURLs().size());
+		assertEquals("Entropy vs Position", data.getPlots().get(0).getPlotTitle());
+	}
+	
+	@Test
+	public void testFastaInPieces() throws Exception
+	{
+		String text = " >a\r\nAC.D \n\n>b\nAC\nGD\n>a\nWW";
+		
+		// every way to cut the text in two must give the same sequences
+		for(int i=0; i<=text.length(); i++) {
+			
+			FastaParser.Builder builder = new FastaParser.Builder();
+			builder.append(text.toCharArray(), 0, i);
+			builder.append(text.toCharArray(), i, text.length() - i);
+			
+			Map<String,String> seqs = new HashMap<String,String>();
+			for(Map.Entry<String,StringBuilder> e : builder.finish().entrySet()) {
+				
+				seqs.put(e.getKey(), e.getValue().toString());
+			}
+			assertEquals(FastaParser.parseFasta(IOUtils.toInputStream(text, "UTF-8")), seqs);
+		}
+	}
+	
+	@Test
+	public void testMissingPosition() throws Exception
+	{
+		String xml = IOUtils.toString(this.getClass().getResourceAsStream("/1crn.xml"), "UTF-8");
+		
+		// leave out the last row
+		int lastRow = xml.lastIndexOf("<row>");
+		xml = xml.substring(0, lastRow) + xml.substring(xml.indexOf("</row>", lastRow) + 6);
+		
+		try {
+			VASEXMLParser.parse(IOUtils.toInputStream(xml, "UTF-8"));
+			assertTrue(false);
+		}
+		catch(Exception e) {
+			
+			assertTrue(e.getMessage().startsWith("column " + TableData.pdbResidueID + " has missing values"));
+		}
 	}
 }
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2014 CMBI (contact: <Coos.Baakman@radboudumc.nl>)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.ru.cmbi.vase.web.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.nio.file.Files;
+
+import nl.ru.cmbi.vase.tools.util.Config;
+import nl.ru.cmbi.vase.web.WicketApplication;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ */
+public class TestAlignmentResource
+{
+	private WicketTester tester;
+
+	private File cacheDir;
+
+	private String previousCacheDir;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		// the xml entry is found in the cache dir
+		cacheDir = Files.createTempDirectory("vase-test").toFile();
+		FileUtils.copyFile(new File("src/test/resources/1crn.xml"), new File(cacheDir, "1crn.xml"));
+
+		previousCacheDir = Config.properties.getProperty("cache");
+		Config.properties.setProperty("cache", cacheDir.getPath());
+
+		tester = new WicketTester(new WicketApplication());
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		tester.destroy();
+
+		Config.properties.setProperty("cache", previousCacheDir);
+		FileUtils.deleteDirectory(cacheDir);
+	}
+
+	@Test
+	public void testXmlEntry()
+	{
+		// the alignment page of an xml entry asks for chain '-'
+		tester.executeUrl("rest/alignment/1crn/-");
+		assertEquals(HttpURLConnection.HTTP_OK, tester.getLastResponse().getStatus());
+		assertTrue(tester.getLastResponseAsString().contains("\"columns\""));
+
+		tester.executeUrl("rest/alignment/1crn/-/tile/0/0");
+		assertEquals(HttpURLConnection.HTTP_OK, tester.getLastResponse().getStatus());
+	}
+
+	@Test
+	public void testNoXmlEntry()
+	{
+		tester.executeUrl("rest/alignment/2crn/-");
+		assertEquals(HttpURLConnection.HTTP_NOT_FOUND, tester.getLastResponse().getStatus());
+	}
+
+	@Test
+	public void testIsChainOf()
+	{
+		assertTrue(AlignmentResource.isChainOf("1crn", '-'));
+		assertTrue(AlignmentResource.isChainOf("1crn", 'A'));
+		assertFalse(AlignmentResource.isChainOf("2crn", '-'));
+		assertFalse(AlignmentResource.isChainOf("1crn", '*'));
+	}
+}